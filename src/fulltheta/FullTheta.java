@@ -24,14 +24,10 @@
 package fulltheta;
 
 import fulltheta.algos.Cones;
-import fulltheta.algos.SpannerBuilder;
-import fulltheta.data.graph.Graph;
-import fulltheta.data.graph.GraphVertex;
+import fulltheta.experiments.SpannerPipeline;
 import fulltheta.gui.MainFrame;
-import fulltheta.ipe.IPEExporter;
 import java.io.File;
 import java.io.IOException;
-import java.util.Random;
 
 public class FullTheta {
 
@@ -50,20 +46,7 @@ public class FullTheta {
         int nCones = 6;
         boolean theta = true;
 
-        Random rand = new Random();
-        Cones cones = new Cones(theta, nCones);
-        IPEExporter exp = new IPEExporter();
-
-        for (int i = 0; i < nGraphs; i++) {
-            Graph graph = new Graph();
-
-            for (int j = 0; j < nVertices; j++) {
-                graph.addVertex(new GraphVertex(rand.nextDouble(), rand.nextDouble()));
-            }
-
-            SpannerBuilder.buildConeSpanner(graph, cones);
-
-            exp.exportGraph(new File("forsale/tSpanner_" + i + ".ipe"), graph, false);
-        }
+        SpannerPipeline pipeline = new SpannerPipeline(nGraphs, nVertices, new Cones(theta, nCones), new File("forsale"));
+        pipeline.run();
     }
 }
@@ -0,0 +1,390 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.CompactGraph;
+import fulltheta.data.graph.Edge;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * All-pairs shortest paths with a cache-blocked version of Floyd's algorithm.
+ * This takes O(n^3) time regardless of the number of edges, so it is only the
+ * right choice for dense graphs.
+ *
+ * The distance matrix is a single flat array, split into square tiles that
+ * are stored one after the other. Each round of the algorithm first updates
+ * the tile on the diagonal, then the other tiles in its row and column, and
+ * finally all remaining tiles. Within the last two phases, tiles are
+ * independent and are processed by several threads.
+ *
+ * Distances are stored as doubles, or as floats in single precision mode.
+ * Paths are stored by their last intermediate vertex, which fits in a char
+ * for every graph this class can handle. Single precision mode uses half the
+ * memory of a <code>double[n][n]</code> and <code>int[n][n]</code> pair.
+ */
+public class BlockedFloydWarshall {
+
+    /**
+     * The width and height of a tile. A tile of doubles is 32KB.
+     */
+    public static final int BLOCK_SIZE = 64;
+    /**
+     * The largest number of vertices this class can handle, so that the whole
+     * matrix fits in one array.
+     */
+    public static final int MAX_VERTICES = 46336;
+    private static final char NO_PATH = 0, DIRECT_EDGE = 1; // Other values are the intermediate vertex + 2
+    private final CompactGraph graph;
+    private final int n;
+    private final int nBlocks;
+    private final boolean singlePrecision;
+    private final double[] dist;
+    private final float[] distF;
+    private final char[] via;
+
+    public BlockedFloydWarshall(CompactGraph graph, boolean singlePrecision) {
+        this(graph, singlePrecision, Parallel.getDefaultThreadCount());
+    }
+
+    /**
+     * Computes the distances between all pairs of vertices of the given graph,
+     * using the given number of threads.
+     *
+     * @param graph
+     * @param singlePrecision
+     * @param nThreads
+     */
+    public BlockedFloydWarshall(CompactGraph graph, boolean singlePrecision, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        if (graph.getVertexCount() > MAX_VERTICES) {
+            throw new IllegalArgumentException("Graphs with more than " + MAX_VERTICES + " vertices are not supported.");
+        }
+
+        this.graph = graph;
+        this.n = graph.getVertexCount();
+        this.singlePrecision = singlePrecision;
+
+        nBlocks = (n + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        int size = nBlocks * nBlocks * BLOCK_SIZE * BLOCK_SIZE;
+
+        dist = (singlePrecision ? null : new double[size]);
+        distF = (singlePrecision ? new float[size] : null);
+        via = new char[size];
+
+        initialize();
+        run(nThreads);
+    }
+
+    /**
+     * Returns the approximate number of bytes needed for a graph with n
+     * vertices.
+     *
+     * @param n
+     * @param singlePrecision
+     * @return
+     */
+    public static long getMemoryUse(int n, boolean singlePrecision) {
+        long padded = ((n + BLOCK_SIZE - 1) / BLOCK_SIZE) * (long) BLOCK_SIZE;
+        return padded * padded * ((singlePrecision ? 4 : 8) + 2);
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public boolean isSinglePrecision() {
+        return singlePrecision;
+    }
+
+    /**
+     * Returns the length of the shortest path from i to j, or infinity if
+     * there is none.
+     *
+     * @param i
+     * @param j
+     * @return
+     */
+    public double getDistance(int i, int j) {
+        int index = indexOf(i, j);
+        return (singlePrecision ? distF[index] : dist[index]);
+    }
+
+    /**
+     * Returns the edges on the shortest path from i to j, or
+     * <code>null</code> if there is no such path.
+     *
+     * @param i
+     * @param j
+     * @return
+     */
+    public List<Edge> getPath(int i, int j) {
+        if (i != j && via[indexOf(i, j)] == NO_PATH) {
+            return null;
+        }
+
+        // Expand intermediate vertices with an explicit stack, as paths can be long
+        List<Edge> path = new ArrayList<Edge>();
+        int[] stack = new int[16];
+        int size = 0;
+
+        if (i != j) {
+            stack[size++] = i;
+            stack[size++] = j;
+        }
+
+        while (size > 0) {
+            int b = stack[--size];
+            int a = stack[--size];
+            char v = via[indexOf(a, b)];
+
+            if (v == DIRECT_EDGE) {
+                path.add(getShortestEdge(a, b));
+            } else {
+                int k = v - 2;
+
+                if (size + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                }
+
+                // The first half of the path goes on top
+                stack[size++] = k;
+                stack[size++] = b;
+                stack[size++] = a;
+                stack[size++] = k;
+            }
+        }
+
+        return path;
+    }
+
+    private Edge getShortestEdge(int i, int j) {
+        int best = -1;
+
+        for (int arc = graph.getFirstArc(i); arc < graph.getFirstArc(i + 1); arc++) {
+            if (graph.getArcTarget(arc) == j && (best < 0 || graph.getArcLength(arc) < graph.getArcLength(best))) {
+                best = arc;
+            }
+        }
+
+        return graph.getEdge(graph.getArcEdge(best));
+    }
+
+    /**
+     * Returns the position of entry (i, j) in the tiled matrix.
+     */
+    private int indexOf(int i, int j) {
+        int tile = (i / BLOCK_SIZE) * nBlocks + (j / BLOCK_SIZE);
+        return tile * BLOCK_SIZE * BLOCK_SIZE + (i % BLOCK_SIZE) * BLOCK_SIZE + (j % BLOCK_SIZE);
+    }
+
+    /**
+     * Fills the matrix with the direct cost of every pair. Padding rows and
+     * columns are unreachable and never improve a path.
+     */
+    private void initialize() {
+        if (singlePrecision) {
+            Arrays.fill(distF, Float.POSITIVE_INFINITY);
+        } else {
+            Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        }
+
+        for (int i = 0; i < n; i++) {
+            int ii = indexOf(i, i);
+
+            if (singlePrecision) {
+                distF[ii] = 0;
+            } else {
+                dist[ii] = 0;
+            }
+
+            for (int arc = graph.getFirstArc(i); arc < graph.getFirstArc(i + 1); arc++) {
+                int j = graph.getArcTarget(arc);
+
+                if (j == i) {
+                    continue;
+                }
+
+                int ij = indexOf(i, j);
+                double length = graph.getArcLength(arc);
+
+                if (singlePrecision) {
+                    if (length < distF[ij]) {
+                        distF[ij] = (float) length;
+                        via[ij] = DIRECT_EDGE;
+                    }
+                } else {
+                    if (length < dist[ij]) {
+                        dist[ij] = length;
+                        via[ij] = DIRECT_EDGE;
+                    }
+                }
+            }
+        }
+    }
+
+    private void run(int nThreads) {
+        final int tileSize = BLOCK_SIZE * BLOCK_SIZE;
+
+        for (int kb = 0; kb < nBlocks; kb++) {
+            final int k = kb;
+            final int diagonal = (k * nBlocks + k) * tileSize;
+
+            // Phase 1: the tile on the diagonal only depends on itself
+            relax(diagonal, diagonal, diagonal, k);
+
+            // Phase 2: the tiles in row k and column k depend on themselves and the diagonal tile
+            final AtomicInteger nextCross = new AtomicInteger(0);
+            List<Runnable> workers = new ArrayList<Runnable>(nThreads);
+
+            for (int t = 0; t < Math.min(nThreads, 2 * (nBlocks - 1)); t++) {
+                workers.add(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        for (int c = nextCross.getAndIncrement(); c < 2 * (nBlocks - 1); c = nextCross.getAndIncrement()) {
+                            int other = c / 2;
+
+                            if (other >= k) {
+                                other++;
+                            }
+
+                            if (c % 2 == 0) {
+                                int rowTile = (k * nBlocks + other) * tileSize;
+                                relax(rowTile, diagonal, rowTile, k);
+                            } else {
+                                int columnTile = (other * nBlocks + k) * tileSize;
+                                relax(columnTile, columnTile, diagonal, k);
+                            }
+                        }
+                    }
+                });
+            }
+
+            Parallel.run(workers);
+
+            // Phase 3: every other tile (i, j) depends on tiles (i, k) and (k, j)
+            final int nRest = (nBlocks - 1) * (nBlocks - 1);
+            final AtomicInteger nextTile = new AtomicInteger(0);
+            workers.clear();
+
+            for (int t = 0; t < Math.min(nThreads, nRest); t++) {
+                workers.add(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        for (int c = nextTile.getAndIncrement(); c < nRest; c = nextTile.getAndIncrement()) {
+                            int bi = c / (nBlocks - 1);
+                            int bj = c % (nBlocks - 1);
+
+                            if (bi >= k) {
+                                bi++;
+                            }
+
+                            if (bj >= k) {
+                                bj++;
+                            }
+
+                            relax((bi * nBlocks + bj) * tileSize, (bi * nBlocks + k) * tileSize, (k * nBlocks + bj) * tileSize, k);
+                        }
+                    }
+                });
+            }
+
+            Parallel.run(workers);
+        }
+    }
+
+    /**
+     * Improves every entry (i, j) of the target tile using the paths through
+     * the intermediate vertices of block kb, where (i, k) comes from tile
+     * <code>left</code> and (k, j) from tile <code>right</code>. The tiles may
+     * coincide: in the round for k, row k and column k do not change, so the
+     * result is the same as with separate copies.
+     */
+    private void relax(int target, int left, int right, int kb) {
+        if (singlePrecision) {
+            relaxSingle(target, left, right, kb);
+        } else {
+            relaxDouble(target, left, right, kb);
+        }
+    }
+
+    private void relaxDouble(int target, int left, int right, int kb) {
+        for (int k = 0; k < BLOCK_SIZE; k++) {
+            char viaK = (char) (kb * BLOCK_SIZE + k + 2);
+            int rowK = right + k * BLOCK_SIZE;
+
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                double dik = dist[left + i * BLOCK_SIZE + k];
+
+                if (dik == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+
+                int rowI = target + i * BLOCK_SIZE;
+
+                for (int j = 0; j < BLOCK_SIZE; j++) {
+                    double d = dik + dist[rowK + j];
+
+                    if (d < dist[rowI + j]) {
+                        dist[rowI + j] = d;
+                        via[rowI + j] = viaK;
+                    }
+                }
+            }
+        }
+    }
+
+    private void relaxSingle(int target, int left, int right, int kb) {
+        for (int k = 0; k < BLOCK_SIZE; k++) {
+            char viaK = (char) (kb * BLOCK_SIZE + k + 2);
+            int rowK = right + k * BLOCK_SIZE;
+
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                float dik = distF[left + i * BLOCK_SIZE + k];
+
+                if (dik == Float.POSITIVE_INFINITY) {
+                    continue;
+                }
+
+                int rowI = target + i * BLOCK_SIZE;
+
+                for (int j = 0; j < BLOCK_SIZE; j++) {
+                    float d = dik + distF[rowK + j];
+
+                    if (d < distF[rowI + j]) {
+                        distF[rowI + j] = d;
+                        via[rowI + j] = viaK;
+                    }
+                }
+            }
+        }
+    }
+}
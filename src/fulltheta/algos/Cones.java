@@ -31,6 +31,7 @@ public class Cones {
     private final boolean simple; // Is it possible to generate these with the simple tab of the ConesDialog?
     private final boolean theta;
     private final Cone[] cones; // Sorted by bisctor angle
+    private final double spacing; // Angle between the bisectors of consecutive cones if they are evenly spaced, 0 otherwise
     private Map<Cone, List<GraphVertex>> sortedVertices;
 
     /**
@@ -45,6 +46,7 @@ public class Cones {
         this.simple = false;
         this.theta = theta;
         this.cones = cones;
+        this.spacing = 0;
         Collections.sort(Arrays.asList(this.cones));
         sortedVertices = null;
     }
@@ -76,6 +78,8 @@ public class Cones {
         for (int i = 0; i < cones.length; i++) {
             cones[i] = new Cone(t, i * delta);
         }
+
+        spacing = delta;
     }
 
     /**
@@ -89,6 +93,22 @@ public class Cones {
         this(theta, false, nCones);
     }
 
+    /**
+     * Creates a copy of the given set of cones without any pre-processed
+     * vertices. The cones themselves are shared. Since pre-processing stores
+     * the vertices in the set, each thread that builds spanners needs its own
+     * copy.
+     *
+     * @param other
+     */
+    public Cones(Cones other) {
+        this.simple = other.simple;
+        this.theta = other.theta;
+        this.cones = other.cones;
+        this.spacing = other.spacing;
+        sortedVertices = null;
+    }
+
     /**
      * Were these cones generated by the simple tab of ConesDialog?
      * @return 
@@ -107,6 +127,17 @@ public class Cones {
         return theta;
     }
 
+    /**
+     * Returns true if every direction lies in exactly one cone, apart from the
+     * borders between consecutive cones. This is the case for full Theta- and
+     * Yao-graphs.
+     *
+     * @return
+     */
+    public boolean isPartition() {
+        return spacing > 0 && spacing == cones[0].getAperture();
+    }
+
     /**
      * Returns the cones in this set.
      *
@@ -131,6 +162,50 @@ public class Cones {
         }
     }
 
+    /**
+     * Pre-processes the given vertex set for cone queries, using orderings
+     * that were computed before, for example by an earlier call to
+     * <code>setVertices</code> on the same vertices. Ordering i lists the
+     * indices of the vertices sorted by their projection onto the bisector of
+     * the i-th cone of <code>getCones</code>. This takes linear time, but the
+     * orderings are only checked for their length.
+     *
+     * @param vertices
+     * @param orders
+     */
+    public void setVertices(List<GraphVertex> vertices, int[][] orders) {
+        if (orders.length != cones.length) {
+            throw new IllegalArgumentException("Expected " + cones.length + " orderings, but got " + orders.length + ".");
+        }
+
+        sortedVertices = new HashMap<Cone, List<GraphVertex>>(cones.length * 2);
+
+        for (int i = 0; i < cones.length; i++) {
+            if (orders[i].length != vertices.size()) {
+                throw new IllegalArgumentException("Ordering " + i + " has " + orders[i].length + " vertices instead of " + vertices.size() + ".");
+            }
+
+            List<GraphVertex> sortedCone = new ArrayList<GraphVertex>(vertices.size());
+
+            for (int index : orders[i]) {
+                sortedCone.add(vertices.get(index));
+            }
+
+            sortedVertices.put(cones[i], sortedCone);
+        }
+    }
+
+    /**
+     * Returns the vertices sorted by their projection onto the bisector of the
+     * given cone, or <code>null</code> if no vertices have been set.
+     *
+     * @param cone
+     * @return
+     */
+    public List<GraphVertex> getSortedVertices(Cone cone) {
+        return (sortedVertices == null ? null : sortedVertices.get(cone));
+    }
+
     /**
      * Returns the cone from this set that contains the given vertex if
      * translated to the given apex, or
@@ -142,6 +217,21 @@ public class Cones {
      * @return
      */
     public Cone getCone(GraphVertex apex, GraphVertex v) {
+        int i = getConeIndex(apex, v);
+        return (i < 0 ? null : cones[i]);
+    }
+
+    /**
+     * Returns the index in <code>getCones()</code> of the cone that
+     * <code>getCone</code> returns for the same arguments, or -1 if no cone
+     * contains the given vertex. For evenly spaced cones this only tests the
+     * cones next to the angle of the vertex, instead of all of them.
+     *
+     * @param apex
+     * @param v
+     * @return
+     */
+    public int getConeIndex(GraphVertex apex, GraphVertex v) {
         double dy = v.getY() - apex.getY();
         double dx = v.getX() - apex.getX();
 
@@ -155,13 +245,30 @@ public class Cones {
             angle += 2 * Math.PI; // 0 <= angle <= 2 * pi
         }
 
+        if (spacing > 0) {
+            // The cones are no wider than their spacing, so only the cone whose bisector is nearest and its neighbours can contain the angle
+            int n = cones.length;
+            int nearest = (int) Math.floor(angle / spacing + 0.5) % n;
+            int result = -1;
+
+            for (int d = -1; d <= 1; d++) {
+                int i = (nearest + d + n) % n;
+
+                if ((result < 0 || i < result) && cones[i].contains(angle)) {
+                    result = i;
+                }
+            }
+
+            return result;
+        }
+
         for (int i = 0; i < cones.length; i++) {
             if (cones[i].contains(angle)) {
-                return cones[i];
+                return i;
             }
         }
 
-        return null;
+        return -1;
     }
 
     /**
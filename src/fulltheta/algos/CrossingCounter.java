@@ -0,0 +1,316 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.SegmentGrid;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts and lists the proper crossings between the edges of a graph, and
+ * decides whether the graph is plane, without testing every pair of edges.
+ *
+ * The edges are distributed over a SegmentGrid, with about as many cells as
+ * there are edges, every edge being stored in each cell it passes through.
+ * Only edges that share a cell are tested, and a crossing pair is counted in
+ * the first cell the two edges have in common, so it is counted exactly once
+ * no matter how the crossing point rounds. For typical spanners each edge
+ * passes through a few cells, so this takes near-linear time. The columns of
+ * the grid are spread over several threads.
+ *
+ * As in Planarizer, edges that share an endpoint are not considered to cross.
+ */
+public class CrossingCounter {
+
+    private final Graph graph;
+    private final int nThreads;
+    private List<Edge> edges;
+    private double[] ax, ay, bx, by; // Endpoint coordinates of each edge
+    private int[] endA, endB; // Endpoint indices of each edge
+    private SegmentGrid grid;
+    private long nCrossings;
+    private int[] crossingA, crossingB;
+    private boolean computed = false;
+
+    public CrossingCounter(Graph graph) {
+        this(graph, Parallel.getDefaultThreadCount());
+    }
+
+    public CrossingCounter(Graph graph, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        this.graph = graph;
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Returns the number of pairs of edges that cross.
+     *
+     * @return
+     */
+    public long getCrossingCount() {
+        if (!computed) {
+            compute();
+        }
+
+        return nCrossings;
+    }
+
+    /**
+     * Returns all pairs of edges that cross, ordered by the column of the grid
+     * in which they were found.
+     *
+     * @return
+     */
+    public List<Edge[]> getCrossings() {
+        if (!computed) {
+            compute();
+        }
+
+        List<Edge[]> crossings = new ArrayList<Edge[]>((int) nCrossings);
+
+        for (int i = 0; i < nCrossings; i++) {
+            crossings.add(new Edge[]{edges.get(crossingA[i]), edges.get(crossingB[i])});
+        }
+
+        return crossings;
+    }
+
+    /**
+     * Returns true if no two edges of the graph cross. If the crossings have
+     * not been counted yet, this stops at the first crossing it finds.
+     *
+     * @return
+     */
+    public boolean isPlane() {
+        if (computed) {
+            return nCrossings == 0;
+        }
+
+        buildGrid();
+        boolean plane = (search(true) == 0);
+        clearGrid();
+
+        return plane;
+    }
+
+    public static long countCrossings(Graph graph) {
+        return new CrossingCounter(graph).getCrossingCount();
+    }
+
+    private void compute() {
+        buildGrid();
+        nCrossings = search(false);
+        clearGrid();
+
+        computed = true;
+    }
+
+    /**
+     * Tests all pairs of edges that share a cell, in parallel over the
+     * columns, and returns the number of crossings. If
+     * <code>stopAtFirst</code> is true, the workers stop as soon as any of
+     * them finds a crossing.
+     */
+    private long search(boolean stopAtFirst) {
+        AtomicInteger nextColumn = new AtomicInteger(0);
+        AtomicBoolean found = new AtomicBoolean(false);
+        List<ColumnWorker> workers = new ArrayList<ColumnWorker>(nThreads);
+
+        for (int i = 0; i < Math.min(nThreads, grid.getColumnCount()); i++) {
+            workers.add(new ColumnWorker(nextColumn, stopAtFirst ? found : null));
+        }
+
+        Parallel.run(workers);
+
+        // Combine the results of the workers, in column order
+        long total = 0;
+
+        for (ColumnWorker worker : workers) {
+            total += worker.nFound;
+        }
+
+        if (!stopAtFirst) {
+            crossingA = new int[(int) total];
+            crossingB = new int[(int) total];
+
+            int[] order = new int[workers.size()];
+            int k = 0;
+
+            for (int column = 0; column < grid.getColumnCount(); column++) {
+                for (int w = 0; w < workers.size(); w++) {
+                    ColumnWorker worker = workers.get(w);
+
+                    while (order[w] < worker.nFound && worker.column[order[w]] == column) {
+                        crossingA[k] = worker.segA[order[w]];
+                        crossingB[k] = worker.segB[order[w]];
+                        order[w]++;
+                        k++;
+                    }
+                }
+            }
+        }
+
+        return total;
+    }
+
+    private void buildGrid() {
+        edges = new ArrayList<Edge>(graph.getEdges());
+
+        List<GraphVertex> vertices = graph.getVertices();
+        int n = vertices.size();
+        int m = edges.size();
+
+        // GraphVertex.equals compares coordinates, so we need identity here
+        Map<GraphVertex, Integer> vertexIndex = new IdentityHashMap<GraphVertex, Integer>(2 * n);
+
+        for (int i = 0; i < n; i++) {
+            vertexIndex.put(vertices.get(i), i);
+        }
+
+        ax = new double[m];
+        ay = new double[m];
+        bx = new double[m];
+        by = new double[m];
+        endA = new int[m];
+        endB = new int[m];
+
+        for (int e = 0; e < m; e++) {
+            Edge edge = edges.get(e);
+            GraphVertex a = edge.getVA(), b = edge.getVB();
+
+            // Store every edge from left to right
+            if (a.getX() > b.getX()) {
+                GraphVertex t = a;
+                a = b;
+                b = t;
+            }
+
+            ax[e] = a.getX();
+            ay[e] = a.getY();
+            bx[e] = b.getX();
+            by[e] = b.getY();
+            endA[e] = vertexIndex.get(a);
+            endB[e] = vertexIndex.get(b);
+        }
+
+        grid = new SegmentGrid(ax, ay, bx, by);
+    }
+
+    private void clearGrid() {
+        ax = ay = bx = by = null;
+        endA = endB = null;
+        grid = null;
+    }
+
+    private boolean crossesProperly(int s, int t) {
+        if (endA[s] == endA[t] || endA[s] == endB[t] || endB[s] == endA[t] || endB[s] == endB[t]) {
+            return false;
+        }
+
+        double o1 = orientation(ax[s], ay[s], bx[s], by[s], ax[t], ay[t]);
+        double o2 = orientation(ax[s], ay[s], bx[s], by[s], bx[t], by[t]);
+
+        if (!(o1 < 0 && o2 > 0 || o1 > 0 && o2 < 0)) {
+            return false;
+        }
+
+        double o3 = orientation(ax[t], ay[t], bx[t], by[t], ax[s], ay[s]);
+        double o4 = orientation(ax[t], ay[t], bx[t], by[t], bx[s], by[s]);
+
+        return o3 < 0 && o4 > 0 || o3 > 0 && o4 < 0;
+    }
+
+    private static double orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        return (bx - ax) * (cy - ay) - (by - ay) * (cx - ax);
+    }
+
+    private class ColumnWorker implements Runnable {
+
+        private final AtomicInteger nextColumn;
+        private final AtomicBoolean found; // Set when a crossing is found, if we can stop at the first one
+        private int nFound = 0;
+        private int[] column = new int[16];
+        private int[] segA = new int[16];
+        private int[] segB = new int[16];
+
+        ColumnWorker(AtomicInteger nextColumn, AtomicBoolean found) {
+            this.nextColumn = nextColumn;
+            this.found = found;
+        }
+
+        @Override
+        public void run() {
+            int nRows = grid.getRowCount();
+
+            for (int col = nextColumn.getAndIncrement(); col < grid.getColumnCount(); col = nextColumn.getAndIncrement()) {
+                for (int cell = grid.getCell(col, 0); cell < grid.getCell(col, 0) + nRows; cell++) {
+                    if (found != null && found.get()) {
+                        return;
+                    }
+
+                    int end = grid.getFirstSegment(cell + 1);
+
+                    for (int i = grid.getFirstSegment(cell); i < end; i++) {
+                        for (int j = i + 1; j < end; j++) {
+                            int s = grid.getCellSegment(i), t = grid.getCellSegment(j);
+
+                            if (crossesProperly(s, t) && grid.getFirstSharedCell(s, t) == cell) {
+                                add(col, s, t);
+
+                                if (found != null) {
+                                    found.set(true);
+                                    return;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        private void add(int col, int s, int t) {
+            if (nFound == column.length) {
+                column = Arrays.copyOf(column, 2 * nFound);
+                segA = Arrays.copyOf(segA, 2 * nFound);
+                segB = Arrays.copyOf(segB, 2 * nFound);
+            }
+
+            column[nFound] = col;
+            segA[nFound] = Math.min(s, t);
+            segB[nFound] = Math.max(s, t);
+            nFound++;
+        }
+    }
+}
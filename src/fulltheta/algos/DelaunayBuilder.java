@@ -0,0 +1,696 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.embedded.EmbeddedGraph;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds the Delaunay triangulation and the TD-Delaunay triangulation of the
+ * vertices of a graph. Like SpannerBuilder, the builders replace all edges of
+ * the graph and leave the edges around every vertex in clockwise order, so
+ * the result can be embedded directly.
+ *
+ * The Delaunay triangulation is built by randomized incremental insertion.
+ * The points are inserted in rounds of doubling size, each sorted along a
+ * Hilbert curve, so the walk to the triangle containing the next point is
+ * short. Triangles outside the convex hull are represented by ghost triangles
+ * with a vertex at infinity, and the geometric predicates fall back to exact
+ * arithmetic when rounding could change their sign, so the result is correct
+ * for any input. Duplicate points are left isolated.
+ *
+ * The TD-Delaunay triangulation, which uses the empty equilateral triangle
+ * instead of the empty circle, is the half-Theta-6 graph. It is built by a
+ * sweep with a Fenwick tree per cone, independently of Cones, so the two can
+ * be used to check each other.
+ */
+public class DelaunayBuilder {
+
+    private static final double EPSILON = 1.1102230246251565e-16; // 2^-53
+    private static final double ORIENT_ERROR_BOUND = (3 + 16 * EPSILON) * EPSILON;
+    private static final double INCIRCLE_ERROR_BOUND = (10 + 96 * EPSILON) * EPSILON;
+
+    private DelaunayBuilder() {
+    }
+
+    /**
+     * Removes all edges from the specified graph and replaces them by the
+     * edges of the Delaunay triangulation of its vertices.
+     *
+     * @param graph
+     */
+    public static void buildDelaunayTriangulation(Graph graph) {
+        graph.clearEdges();
+
+        List<GraphVertex> vertices = graph.getVertices();
+        Triangulation triangulation = new Triangulation(vertices);
+
+        for (int t = 0; t < triangulation.nTriangles; t++) {
+            if (triangulation.isGhost(t)) {
+                continue;
+            }
+
+            for (int i = 0; i < 3; i++) {
+                int a = triangulation.vertex[3 * t + (i + 1) % 3];
+                int b = triangulation.vertex[3 * t + (i + 2) % 3];
+
+                // Interior edges appear in two triangles
+                if (a < b || triangulation.isGhost(triangulation.neighbour[3 * t + i])) {
+                    graph.addEdge(vertices.get(a), vertices.get(b));
+                }
+            }
+        }
+
+        if (triangulation.nTriangles == 0) {
+            // All points are on a line
+            connectCollinear(graph);
+        }
+
+        for (GraphVertex v : vertices) {
+            v.sortEdgesClockwise();
+        }
+    }
+
+    /**
+     * Builds the Delaunay triangulation of the vertices of the given graph, as
+     * in <code>buildDelaunayTriangulation</code>, and returns its embedding.
+     *
+     * @param graph
+     * @return
+     */
+    public static EmbeddedGraph buildEmbeddedDelaunayTriangulation(Graph graph) {
+        buildDelaunayTriangulation(graph);
+        return new EmbeddedGraph(graph, 0);
+    }
+
+    /**
+     * Removes all edges from the specified graph and replaces them by the
+     * edges of the TD-Delaunay triangulation of its vertices: the graph built
+     * by SpannerBuilder with <code>new Cones(true, true, 6)</code>.
+     *
+     * @param graph
+     */
+    public static void buildTDDelaunayTriangulation(Graph graph) {
+        graph.clearEdges();
+
+        List<GraphVertex> vertices = graph.getVertices();
+        int n = vertices.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            x[i] = vertices.get(i).getX();
+            y[i] = vertices.get(i).getY();
+        }
+
+        // The three cones of the half-Theta-6 graph, with bisectors at 0, 120 and 240 degrees clockwise from the positive y-axis
+        for (int c = 0; c < 3; c++) {
+            int[] closest = findClosestInCone(x, y, c * 2 * Math.PI / 3, Math.PI / 3);
+
+            for (int i = 0; i < n; i++) {
+                if (closest[i] >= 0) {
+                    graph.addEdge(vertices.get(i), vertices.get(closest[i]));
+                }
+            }
+        }
+
+        for (GraphVertex v : vertices) {
+            v.sortEdgesClockwise();
+        }
+    }
+
+    /**
+     * Returns, for every point, the point in the cone with the given bisector
+     * and aperture (as clockwise angles from the positive y-axis) whose
+     * projection on the bisector is closest, or -1 if the cone is empty.
+     *
+     * Writing every point as a combination a * d1 + b * d2 of the unit vectors
+     * d1 and d2 along the borders of the cone, q lies in the cone of p if a(q)
+     * >= a(p) and b(q) >= b(p), and its projection on the bisector is
+     * proportional to a(q) + b(q). The points are handled by decreasing a,
+     * and a Fenwick tree over b finds the smallest a + b among the points
+     * handled so far with at least the current b.
+     */
+    private static int[] findClosestInCone(double[] x, double[] y, double bisector, double aperture) {
+        int n = x.length;
+        double d1x = Math.sin(bisector - aperture / 2), d1y = Math.cos(bisector - aperture / 2);
+        double d2x = Math.sin(bisector + aperture / 2), d2y = Math.cos(bisector + aperture / 2);
+        double det = d1x * d2y - d1y * d2x;
+
+        final double[] a = new double[n];
+        final double[] b = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            a[i] = (x[i] * d2y - y[i] * d2x) / det;
+            b[i] = (d1x * y[i] - d1y * x[i]) / det;
+        }
+
+        // Decreasing a; for equal a, decreasing b, so every point comes after the points in its cone
+        Integer[] order = new Integer[n];
+
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer p, Integer q) {
+                if (a[p] != a[q]) {
+                    return Double.compare(a[q], a[p]);
+                } else {
+                    return Double.compare(b[q], b[p]);
+                }
+            }
+        });
+
+        // Rank the points by decreasing b, so the points with at least a given b form a prefix
+        double[] sortedB = b.clone();
+        Arrays.sort(sortedB);
+
+        int[] rank = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            rank[i] = n - 1 - getLastIndex(sortedB, b[i]);
+        }
+
+        double[] treeValue = new double[n + 1];
+        int[] treePoint = new int[n + 1];
+        Arrays.fill(treeValue, Double.POSITIVE_INFINITY);
+        Arrays.fill(treePoint, -1);
+
+        int[] closest = new int[n];
+
+        for (int k = 0; k < n; k++) {
+            int p = order[k];
+
+            // Find the minimum over ranks 0 .. rank[p]
+            double best = Double.POSITIVE_INFINITY;
+            int bestPoint = -1;
+
+            for (int i = rank[p] + 1; i > 0; i -= i & -i) {
+                if (treeValue[i] < best) {
+                    best = treeValue[i];
+                    bestPoint = treePoint[i];
+                }
+            }
+
+            closest[p] = bestPoint;
+
+            double value = a[p] + b[p];
+
+            for (int i = rank[p] + 1; i <= n; i += i & -i) {
+                if (value < treeValue[i]) {
+                    treeValue[i] = value;
+                    treePoint[i] = p;
+                }
+            }
+        }
+
+        return closest;
+    }
+
+    /**
+     * Returns the index of the last element of the sorted array that is at
+     * most the given value.
+     */
+    private static int getLastIndex(double[] sorted, double value) {
+        int low = 0, high = sorted.length - 1;
+
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+
+            if (sorted[mid] <= value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Connects consecutive points along the line containing all vertices.
+     */
+    private static void connectCollinear(Graph graph) {
+        GraphVertex[] sorted = graph.getVertices().toArray(new GraphVertex[0]);
+        Arrays.sort(sorted, new Comparator<GraphVertex>() {
+
+            @Override
+            public int compare(GraphVertex v1, GraphVertex v2) {
+                if (v1.getX() != v2.getX()) {
+                    return Double.compare(v1.getX(), v2.getX());
+                } else {
+                    return Double.compare(v1.getY(), v2.getY());
+                }
+            }
+        });
+
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i].getX() != sorted[i - 1].getX() || sorted[i].getY() != sorted[i - 1].getY()) {
+                graph.addEdge(sorted[i - 1], sorted[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns a positive value if a, b and c make a counterclockwise turn, a
+     * negative value if they make a clockwise turn, and zero if they are
+     * collinear. The sign is always correct.
+     */
+    static double orientation(double ax, double ay, double bx, double by, double cx, double cy) {
+        double detLeft = (ax - cx) * (by - cy);
+        double detRight = (ay - cy) * (bx - cx);
+        double det = detLeft - detRight;
+        double bound = ORIENT_ERROR_BOUND * (Math.abs(detLeft) + Math.abs(detRight));
+
+        if (det > bound || -det > bound) {
+            return det;
+        }
+
+        BigDecimal acx = new BigDecimal(ax).subtract(new BigDecimal(cx));
+        BigDecimal bcy = new BigDecimal(by).subtract(new BigDecimal(cy));
+        BigDecimal acy = new BigDecimal(ay).subtract(new BigDecimal(cy));
+        BigDecimal bcx = new BigDecimal(bx).subtract(new BigDecimal(cx));
+
+        return acx.multiply(bcy).subtract(acy.multiply(bcx)).signum();
+    }
+
+    /**
+     * Returns a positive value if d lies inside the circle through the
+     * counterclockwise triangle a, b, c, a negative value if it lies outside,
+     * and zero if it lies on the circle. The sign is always correct.
+     */
+    static double inCircle(double ax, double ay, double bx, double by, double cx, double cy, double dx, double dy) {
+        double adx = ax - dx, ady = ay - dy;
+        double bdx = bx - dx, bdy = by - dy;
+        double cdx = cx - dx, cdy = cy - dy;
+
+        double bdxcdy = bdx * cdy, cdxbdy = cdx * bdy;
+        double cdxady = cdx * ady, adxcdy = adx * cdy;
+        double adxbdy = adx * bdy, bdxady = bdx * ady;
+        double aLift = adx * adx + ady * ady;
+        double bLift = bdx * bdx + bdy * bdy;
+        double cLift = cdx * cdx + cdy * cdy;
+
+        double det = aLift * (bdxcdy - cdxbdy) + bLift * (cdxady - adxcdy) + cLift * (adxbdy - bdxady);
+        double permanent = (Math.abs(bdxcdy) + Math.abs(cdxbdy)) * aLift
+                + (Math.abs(cdxady) + Math.abs(adxcdy)) * bLift
+                + (Math.abs(adxbdy) + Math.abs(bdxady)) * cLift;
+        double bound = INCIRCLE_ERROR_BOUND * permanent;
+
+        if (det > bound || -det > bound) {
+            return det;
+        }
+
+        BigDecimal eAdx = new BigDecimal(ax).subtract(new BigDecimal(dx));
+        BigDecimal eAdy = new BigDecimal(ay).subtract(new BigDecimal(dy));
+        BigDecimal eBdx = new BigDecimal(bx).subtract(new BigDecimal(dx));
+        BigDecimal eBdy = new BigDecimal(by).subtract(new BigDecimal(dy));
+        BigDecimal eCdx = new BigDecimal(cx).subtract(new BigDecimal(dx));
+        BigDecimal eCdy = new BigDecimal(cy).subtract(new BigDecimal(dy));
+
+        BigDecimal eALift = eAdx.multiply(eAdx).add(eAdy.multiply(eAdy));
+        BigDecimal eBLift = eBdx.multiply(eBdx).add(eBdy.multiply(eBdy));
+        BigDecimal eCLift = eCdx.multiply(eCdx).add(eCdy.multiply(eCdy));
+
+        return eALift.multiply(eBdx.multiply(eCdy).subtract(eCdx.multiply(eBdy)))
+                .add(eBLift.multiply(eCdx.multiply(eAdy).subtract(eAdx.multiply(eCdy))))
+                .add(eCLift.multiply(eAdx.multiply(eBdy).subtract(eBdx.multiply(eAdy))))
+                .signum();
+    }
+
+    /**
+     * A Delaunay triangulation stored in arrays. Triangle t has vertices
+     * vertex[3t], vertex[3t + 1] and vertex[3t + 2] in counterclockwise
+     * order, and neighbour[3t + i] is the triangle across the edge opposite
+     * vertex[3t + i]. Vertex n is the vertex at infinity: a ghost triangle
+     * (a, b, infinity) lies outside the hull edge from b to a.
+     */
+    private static class Triangulation {
+
+        private final double[] x, y;
+        private final int n;
+        private final int infinite;
+        private int[] vertex;
+        private int[] neighbour;
+        private int nTriangles = 0;
+        private int last = -1; // A finite triangle near the last inserted point
+        private final Random random = new Random(0);
+        // Scratch space for insertions
+        private int[] cavity = new int[16];
+        private int[] stack = new int[16];
+        private int[] boundaryA = new int[16], boundaryB = new int[16], boundaryNeighbour = new int[16], boundarySlot = new int[16];
+        private final int[] inCavity, notInCavity; // Marked with the number of the insertion
+        private final int[] startingAt, endingAt; // The new triangle whose boundary edge starts or ends at each vertex
+        private int insertion = 0;
+
+        Triangulation(List<GraphVertex> vertices) {
+            n = vertices.size();
+            infinite = n;
+            x = new double[n];
+            y = new double[n];
+
+            for (int i = 0; i < n; i++) {
+                x[i] = vertices.get(i).getX();
+                y[i] = vertices.get(i).getY();
+            }
+
+            int maxTriangles = Math.max(2 * n, 4);
+            vertex = new int[3 * maxTriangles];
+            neighbour = new int[3 * maxTriangles];
+            inCavity = new int[maxTriangles];
+            notInCavity = new int[maxTriangles];
+            startingAt = new int[n + 1];
+            endingAt = new int[n + 1];
+
+            int[] order = getInsertionOrder();
+
+            // Start with the first three points that are not collinear
+            int first = 0, second = -1, third = -1;
+
+            for (int i = 1; i < n && third < 0; i++) {
+                int p = order[i];
+
+                if (second < 0) {
+                    if (x[p] != x[order[first]] || y[p] != y[order[first]]) {
+                        second = i;
+                    }
+                } else if (orientation(x[order[first]], y[order[first]], x[order[second]], y[order[second]], x[p], y[p]) != 0) {
+                    third = i;
+                }
+            }
+
+            if (third < 0) {
+                return; // All points are on a line
+            }
+
+            createFirstTriangle(order[first], order[second], order[third]);
+
+            for (int i = 0; i < n; i++) {
+                if (i != first && i != second && i != third) {
+                    insert(order[i]);
+                }
+            }
+        }
+
+        boolean isGhost(int t) {
+            return vertex[3 * t] == infinite || vertex[3 * t + 1] == infinite || vertex[3 * t + 2] == infinite;
+        }
+
+        /**
+         * Returns the points in a biased randomized insertion order: rounds of
+         * doubling size, each sorted along a Hilbert curve.
+         */
+        private int[] getInsertionOrder() {
+            int[] order = new int[n];
+
+            for (int i = 0; i < n; i++) {
+                order[i] = i;
+            }
+
+            for (int i = n - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+            for (int i = 0; i < n; i++) {
+                minX = Math.min(minX, x[i]);
+                minY = Math.min(minY, y[i]);
+                maxX = Math.max(maxX, x[i]);
+                maxY = Math.max(maxY, y[i]);
+            }
+
+            double scale = 32767 / Math.max(Math.max(maxX - minX, maxY - minY), Double.MIN_NORMAL);
+            long[] keys = new long[n];
+            int end = n;
+
+            while (end > 0) {
+                int start = (end > 64 ? end / 2 : 0);
+
+                for (int i = start; i < end; i++) {
+                    int p = order[i];
+                    long d = getHilbertIndex((int) ((x[p] - minX) * scale), (int) ((y[p] - minY) * scale));
+                    keys[i] = (d << 32) | p;
+                }
+
+                Arrays.sort(keys, start, end);
+
+                for (int i = start; i < end; i++) {
+                    order[i] = (int) keys[i];
+                }
+
+                end = start;
+            }
+
+            return order;
+        }
+
+        /**
+         * Returns the position of (px, py) along a Hilbert curve through a
+         * 2^15 by 2^15 grid.
+         */
+        private static long getHilbertIndex(int px, int py) {
+            int size = 1 << 15;
+            long d = 0;
+
+            for (int s = size / 2; s > 0; s /= 2) {
+                int rx = ((px & s) > 0 ? 1 : 0);
+                int ry = ((py & s) > 0 ? 1 : 0);
+                d += (long) s * s * ((3 * rx) ^ ry);
+
+                // Rotate the quadrant
+                if (ry == 0) {
+                    if (rx == 1) {
+                        px = size - 1 - px;
+                        py = size - 1 - py;
+                    }
+
+                    int t = px;
+                    px = py;
+                    py = t;
+                }
+            }
+
+            return d;
+        }
+
+        private void createFirstTriangle(int a, int b, int c) {
+            if (orient(a, b, c) < 0) {
+                int t = b;
+                b = c;
+                c = t;
+            }
+
+            // The finite triangle 0 and the ghost triangles 1, 2, 3 opposite its vertices a, b, c
+            setTriangle(0, a, b, c, 1, 2, 3);
+            setTriangle(1, c, b, infinite, 3, 2, 0);
+            setTriangle(2, a, c, infinite, 1, 3, 0);
+            setTriangle(3, b, a, infinite, 2, 1, 0);
+            nTriangles = 4;
+            last = 0;
+        }
+
+        private void setTriangle(int t, int a, int b, int c, int na, int nb, int nc) {
+            vertex[3 * t] = a;
+            vertex[3 * t + 1] = b;
+            vertex[3 * t + 2] = c;
+            neighbour[3 * t] = na;
+            neighbour[3 * t + 1] = nb;
+            neighbour[3 * t + 2] = nc;
+        }
+
+        private void insert(int p) {
+            int start = locate(p);
+
+            if (!isGhost(start)) {
+                for (int i = 0; i < 3; i++) {
+                    int v = vertex[3 * start + i];
+
+                    if (x[v] == x[p] && y[v] == y[p]) {
+                        return; // Duplicate point
+                    }
+                }
+            }
+
+            insertion++;
+
+            // Find all triangles in conflict with p; they form a star-shaped cavity around p
+            int nCavity = 0, nBoundary = 0, stackSize = 0;
+            inCavity[start] = insertion;
+            stack = push(stack, stackSize++, start);
+
+            while (stackSize > 0) {
+                int t = stack[--stackSize];
+                cavity = push(cavity, nCavity++, t);
+
+                for (int i = 0; i < 3; i++) {
+                    int nb = neighbour[3 * t + i];
+
+                    if (inCavity[nb] == insertion) {
+                        continue;
+                    }
+
+                    if (notInCavity[nb] != insertion && isInConflict(nb, p)) {
+                        inCavity[nb] = insertion;
+                        stack = push(stack, stackSize++, nb);
+                    } else {
+                        notInCavity[nb] = insertion;
+
+                        if (nBoundary == boundaryA.length) {
+                            boundaryA = Arrays.copyOf(boundaryA, 2 * nBoundary);
+                            boundaryB = Arrays.copyOf(boundaryB, 2 * nBoundary);
+                            boundaryNeighbour = Arrays.copyOf(boundaryNeighbour, 2 * nBoundary);
+                            boundarySlot = Arrays.copyOf(boundarySlot, 2 * nBoundary);
+                        }
+
+                        boundaryA[nBoundary] = vertex[3 * t + (i + 1) % 3];
+                        boundaryB[nBoundary] = vertex[3 * t + (i + 2) % 3];
+                        boundaryNeighbour[nBoundary] = nb;
+                        boundarySlot[nBoundary] = getSlot(nb, t);
+                        nBoundary++;
+                    }
+                }
+            }
+
+            // Connect every boundary edge to p, reusing the cavity triangles first
+            for (int k = 0; k < nBoundary; k++) {
+                int t = (k < nCavity ? cavity[k] : nTriangles++);
+                setTriangle(t, boundaryA[k], boundaryB[k], p, -1, -1, boundaryNeighbour[k]);
+                neighbour[3 * boundaryNeighbour[k] + boundarySlot[k]] = t;
+                startingAt[boundaryA[k]] = t;
+                endingAt[boundaryB[k]] = t;
+            }
+
+            for (int k = 0; k < nBoundary; k++) {
+                int t = (k < nCavity ? cavity[k] : nTriangles - nBoundary + k);
+                neighbour[3 * t] = startingAt[vertex[3 * t + 1]];
+                neighbour[3 * t + 1] = endingAt[vertex[3 * t]];
+
+                if (!isGhost(t)) {
+                    last = t;
+                }
+            }
+        }
+
+        private static int[] push(int[] array, int size, int value) {
+            if (size == array.length) {
+                array = Arrays.copyOf(array, 2 * size);
+            }
+
+            array[size] = value;
+            return array;
+        }
+
+        /**
+         * Returns the index i such that neighbour[3t + i] is the given triangle.
+         */
+        private int getSlot(int t, int nb) {
+            if (neighbour[3 * t] == nb) {
+                return 0;
+            } else if (neighbour[3 * t + 1] == nb) {
+                return 1;
+            } else {
+                return 2;
+            }
+        }
+
+        /**
+         * Walks from the last created triangle towards p, and returns a finite
+         * triangle containing p or a ghost triangle outside whose hull edge p
+         * lies.
+         */
+        private int locate(int p) {
+            int t = last;
+            int previous = -1;
+
+            while (!isGhost(t)) {
+                int first = random.nextInt(3);
+                int next = -1;
+
+                for (int k = 0; k < 3 && next < 0; k++) {
+                    int i = (first + k) % 3;
+
+                    if (neighbour[3 * t + i] != previous
+                            && orient(vertex[3 * t + (i + 1) % 3], vertex[3 * t + (i + 2) % 3], p) < 0) {
+                        next = neighbour[3 * t + i];
+                    }
+                }
+
+                if (next < 0) {
+                    return t;
+                }
+
+                previous = t;
+                t = next;
+            }
+
+            return t;
+        }
+
+        private boolean isInConflict(int t, int p) {
+            int a = vertex[3 * t], b = vertex[3 * t + 1], c = vertex[3 * t + 2];
+
+            // Rotate the vertex at infinity to the last position
+            if (a == infinite) {
+                a = b;
+                b = c;
+                c = infinite;
+            } else if (b == infinite) {
+                b = a;
+                a = c;
+                c = infinite;
+            }
+
+            if (c != infinite) {
+                return inCircle(x[a], y[a], x[b], y[b], x[c], y[c], x[p], y[p]) > 0;
+            }
+
+            // A ghost triangle conflicts with the points outside its hull edge, and those in the interior of the edge
+            double o = orient(a, b, p);
+
+            if (o != 0) {
+                return o > 0;
+            } else {
+                return (x[p] - x[a]) * (x[p] - x[b]) + (y[p] - y[a]) * (y[p] - y[b]) < 0;
+            }
+        }
+
+        private double orient(int a, int b, int c) {
+            return orientation(x[a], y[a], x[b], y[b], x[c], y[c]);
+        }
+    }
+}
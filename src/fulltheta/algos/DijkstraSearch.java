@@ -0,0 +1,395 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.CompactGraph;
+import fulltheta.data.graph.Edge;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Single-source shortest paths on a CompactGraph, using an indexed binary
+ * heap. All buffers are allocated once, and only the vertices touched by a
+ * search are reset before the next one, so repeated searches from different
+ * sources do not allocate.
+ *
+ * The search can be run to completion with <code>run</code>, or one vertex at
+ * a time with <code>initialize</code> and <code>next</code>, which lets the
+ * caller stop early.
+ */
+class DijkstraSearch {
+
+    private final CompactGraph graph;
+    private final double[] dist;
+    private final int[] pred; // The vertex preceding each vertex on its shortest path, or -1
+    private final int[] predArc; // The arc used to reach each vertex, or -1
+    private final boolean[] settled;
+    private final int[] heap;
+    private final int[] heapPos; // Position of each vertex in the heap, or -1
+    private int heapSize;
+    private final int[] touched; // All vertices with a finite distance, in the order they were reached
+    private int nTouched;
+    private int nSettled;
+    private int source = -1;
+    private boolean[] disabledEdges = null;
+    private boolean[] allowedVertices = null;
+
+    DijkstraSearch(CompactGraph graph) {
+        this.graph = graph;
+
+        int n = graph.getVertexCount();
+        dist = new double[n];
+        pred = new int[n];
+        predArc = new int[n];
+        settled = new boolean[n];
+        heap = new int[n];
+        heapPos = new int[n];
+        touched = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            dist[i] = Double.POSITIVE_INFINITY;
+            pred[i] = -1;
+            predArc[i] = -1;
+            heapPos[i] = -1;
+        }
+    }
+
+    /**
+     * Returns the number of bytes used by the buffers of one search on a graph
+     * with n vertices.
+     *
+     * @param n
+     * @return
+     */
+    static long getMemoryUse(int n) {
+        return n * (8L + 4 + 4 + 1 + 4 + 4 + 4);
+    }
+
+    CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Ignores all arcs of the edges whose index is marked in the given array in
+     * subsequent searches. The array is not copied, so marks can be changed
+     * between searches. Use <code>null</code> to enable all edges again.
+     *
+     * @param disabled
+     */
+    void setDisabledEdges(boolean[] disabled) {
+        disabledEdges = disabled;
+    }
+
+    /**
+     * Restricts subsequent searches to the vertices marked in the given
+     * array: arcs to other vertices are ignored. Like the disabled edges, the
+     * array is not copied. Use <code>null</code> to allow all vertices again.
+     *
+     * @param allowed
+     */
+    void setAllowedVertices(boolean[] allowed) {
+        allowedVertices = allowed;
+    }
+
+    /**
+     * Computes the distance from the source to all reachable vertices.
+     *
+     * @param source
+     */
+    void run(int source) {
+        initialize(source);
+
+        while (next() >= 0) {
+            // Keep going
+        }
+    }
+
+    /**
+     * Clears the previous search and starts a new one at the given source.
+     *
+     * @param source
+     */
+    void initialize(int source) {
+        initialize();
+        this.source = source;
+        seed(source, 0, -1, -1);
+    }
+
+    /**
+     * Clears the previous search without adding a source. Use
+     * <code>seed</code> and <code>fix</code> to set up the initial state.
+     */
+    void initialize() {
+        for (int i = 0; i < nTouched; i++) {
+            int v = touched[i];
+            dist[v] = Double.POSITIVE_INFINITY;
+            pred[v] = -1;
+            predArc[v] = -1;
+            settled[v] = false;
+            heapPos[v] = -1;
+        }
+
+        nTouched = 0;
+        nSettled = 0;
+        heapSize = 0;
+        source = -1;
+    }
+
+    /**
+     * Offers a tentative distance for v, reached from the given predecessor
+     * through the given arc. This has no effect if v already has a shorter
+     * tentative distance or is settled.
+     *
+     * @param v
+     * @param distance
+     * @param predecessor
+     * @param arc
+     */
+    void seed(int v, double distance, int predecessor, int arc) {
+        if (settled[v] || distance >= dist[v]) {
+            return;
+        }
+
+        if (dist[v] == Double.POSITIVE_INFINITY) {
+            touched[nTouched++] = v;
+        }
+
+        dist[v] = distance;
+        pred[v] = predecessor;
+        predArc[v] = arc;
+
+        if (heapPos[v] < 0) {
+            push(v);
+        } else {
+            siftUp(heapPos[v]);
+        }
+    }
+
+    /**
+     * Marks v as settled at the given distance, without exploring its arcs.
+     * This is used to resume a search when the distances of part of the graph
+     * are already known.
+     *
+     * @param v
+     * @param distance
+     * @param predecessor
+     */
+    void fix(int v, double distance, int predecessor) {
+        if (dist[v] == Double.POSITIVE_INFINITY) {
+            touched[nTouched++] = v;
+        }
+
+        dist[v] = distance;
+        pred[v] = predecessor;
+        settled[v] = true;
+    }
+
+    /**
+     * Settles the next closest vertex and returns it, or returns -1 if all
+     * reachable vertices have been settled.
+     *
+     * @return
+     */
+    int next() {
+        if (heapSize == 0) {
+            return -1;
+        }
+
+        int u = pop();
+        settled[u] = true;
+        nSettled++;
+
+        double du = dist[u];
+        int end = graph.getFirstArc(u + 1);
+
+        for (int arc = graph.getFirstArc(u); arc < end; arc++) {
+            if (disabledEdges != null && disabledEdges[graph.getArcEdge(arc)]) {
+                continue;
+            }
+
+            int v = graph.getArcTarget(arc);
+
+            if (allowedVertices != null && !allowedVertices[v]) {
+                continue;
+            }
+
+            seed(v, du + graph.getArcLength(arc), u, arc);
+        }
+
+        return u;
+    }
+
+    int getSource() {
+        return source;
+    }
+
+    double getDistance(int v) {
+        return dist[v];
+    }
+
+    boolean isSettled(int v) {
+        return settled[v];
+    }
+
+    /**
+     * Returns the arc through which v was reached, or -1 for the source and
+     * unreachable vertices.
+     *
+     * @param v
+     * @return
+     */
+    int getPredecessorArc(int v) {
+        return predArc[v];
+    }
+
+    /**
+     * Returns the vertex preceding v on its shortest path, or -1.
+     *
+     * @param v
+     * @return
+     */
+    int getPredecessor(int v) {
+        return pred[v];
+    }
+
+    /**
+     * Returns the number of vertices that have been settled so far.
+     *
+     * @return
+     */
+    int getSettledCount() {
+        return nSettled;
+    }
+
+    /**
+     * Returns the number of vertices that have been reached so far. The
+     * reached vertices are getTouched(0) .. getTouched(getTouchedCount() - 1).
+     *
+     * @return
+     */
+    int getTouchedCount() {
+        return nTouched;
+    }
+
+    int getTouched(int i) {
+        return touched[i];
+    }
+
+    /**
+     * Returns the edges on the shortest path from the source to the target,
+     * or <code>null</code> if the target is not reachable.
+     *
+     * @param target
+     * @return
+     */
+    List<Edge> getPath(int target) {
+        if (dist[target] == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+
+        List<Edge> path = new ArrayList<Edge>();
+        int v = target;
+
+        while (v != source) {
+            path.add(graph.getEdge(graph.getArcEdge(predArc[v])));
+            v = pred[v];
+        }
+
+        Collections.reverse(path);
+        return path;
+    }
+
+    private void push(int v) {
+        heap[heapSize] = v;
+        heapPos[v] = heapSize;
+        heapSize++;
+        siftUp(heapSize - 1);
+    }
+
+    private int pop() {
+        int top = heap[0];
+        heapPos[top] = -1;
+        heapSize--;
+
+        if (heapSize > 0) {
+            heap[0] = heap[heapSize];
+            heapPos[heap[0]] = 0;
+            siftDown(0);
+        }
+
+        return top;
+    }
+
+    private void siftUp(int i) {
+        int v = heap[i];
+        double dv = dist[v];
+
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            int p = heap[parent];
+
+            if (dist[p] <= dv) {
+                break;
+            }
+
+            heap[i] = p;
+            heapPos[p] = i;
+            i = parent;
+        }
+
+        heap[i] = v;
+        heapPos[v] = i;
+    }
+
+    private void siftDown(int i) {
+        int v = heap[i];
+        double dv = dist[v];
+
+        while (true) {
+            int child = 2 * i + 1;
+
+            if (child >= heapSize) {
+                break;
+            }
+
+            if (child + 1 < heapSize && dist[heap[child + 1]] < dist[heap[child]]) {
+                child++;
+            }
+
+            int c = heap[child];
+
+            if (dv <= dist[c]) {
+                break;
+            }
+
+            heap[i] = c;
+            heapPos[c] = i;
+            i = child;
+        }
+
+        heap[i] = v;
+        heapPos[v] = i;
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.CompactGraph;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the spanning ratio of a graph with directed edges, such as the
+ * directed cone spanners built by SpannerBuilder. Every ordered pair (u, v)
+ * is measured by the length of the shortest path from u to v that follows
+ * edge directions, so the ratio of (u, v) can differ from that of (v, u).
+ *
+ * Each vertex is the source of one Dijkstra search over its out-edges, and
+ * the searches are spread over several threads. Apart from the graph itself,
+ * every thread only needs memory linear in the number of vertices: only the
+ * largest ratio is kept, and its path is found again by one more search at
+ * the end. Unlike SpanningRatioComputer, no n x n matrix is ever built, so
+ * the memory use can be bounded with <code>getThreadCount</code>.
+ */
+public class DirectedSpanningRatioComputer {
+
+    private final Graph graph;
+    private final StretchReport report;
+    private final int nThreads;
+    private double spanningRatio;
+    private List<Edge> maximalPath;
+    private boolean computed = false;
+
+    public DirectedSpanningRatioComputer(Graph graph) {
+        this(graph, null);
+    }
+
+    public DirectedSpanningRatioComputer(Graph graph, StretchReport report) {
+        this(graph, report, Parallel.getDefaultThreadCount());
+    }
+
+    /**
+     * Creates a computer that uses the given number of threads and records
+     * every ordered pair of vertices in the given report, if it is not
+     * <code>null</code>.
+     *
+     * @param graph
+     * @param report
+     * @param nThreads
+     */
+    public DirectedSpanningRatioComputer(Graph graph, StretchReport report, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        this.graph = graph;
+        this.report = report;
+        this.nThreads = nThreads;
+    }
+
+    public List<Edge> getMaximalPath() {
+        if (!computed) {
+            computeSpanningRatio();
+        }
+
+        return maximalPath;
+    }
+
+    public double getSpanningRatio() {
+        if (!computed) {
+            computeSpanningRatio();
+        }
+
+        return spanningRatio;
+    }
+
+    public StretchReport getReport() {
+        if (!computed) {
+            computeSpanningRatio();
+        }
+
+        return report;
+    }
+
+    public static double computeSpanningRatio(Graph graph) {
+        DirectedSpanningRatioComputer src = new DirectedSpanningRatioComputer(graph);
+        return src.getSpanningRatio();
+    }
+
+    /**
+     * Computes the spanning ratio using as many threads as fit in the given
+     * number of bytes.
+     *
+     * @param graph
+     * @param memoryBudget
+     * @return
+     */
+    public static double computeSpanningRatio(Graph graph, long memoryBudget) {
+        DirectedSpanningRatioComputer src = new DirectedSpanningRatioComputer(graph, null, getThreadCount(graph, null, memoryBudget));
+        return src.getSpanningRatio();
+    }
+
+    /**
+     * Returns the largest number of threads, up to the number of available
+     * processors, for which computing the spanning ratio of the given graph
+     * with the given report takes at most the given number of bytes, on top
+     * of the graph itself. Throws an IllegalArgumentException if even a single
+     * thread does not fit.
+     *
+     * @param graph
+     * @param report
+     * @param memoryBudget
+     * @return
+     */
+    public static int getThreadCount(Graph graph, StretchReport report, long memoryBudget) {
+        int n = graph.getVertices().size();
+        int m = graph.getEdges().size();
+        long shared = CompactGraph.getMemoryUse(n, m, 2L * m);
+        long perThread = DijkstraSearch.getMemoryUse(n) + (report == null ? 0 : report.getMemoryUse());
+
+        if (memoryBudget < shared + perThread) {
+            throw new IllegalArgumentException("A memory budget of " + memoryBudget + " bytes is too small for this graph; at least " + (shared + perThread) + " bytes are needed.");
+        }
+
+        return (int) Math.min(Parallel.getDefaultThreadCount(), (memoryBudget - shared) / perThread);
+    }
+
+    private void computeSpanningRatio() {
+        final CompactGraph compact = new CompactGraph(graph, true);
+        int n = compact.getVertexCount();
+        final AtomicInteger nextSource = new AtomicInteger(0);
+        List<SourceWorker> workers = new ArrayList<SourceWorker>(nThreads);
+
+        for (int i = 0; i < Math.min(nThreads, Math.max(n, 1)); i++) {
+            workers.add(new SourceWorker(compact, nextSource, report == null ? null : report.emptyCopy()));
+        }
+
+        Parallel.run(workers);
+
+        // Combine the results of the workers
+        spanningRatio = 0;
+        int maxSRi = -1;
+        int maxSRj = -1;
+
+        for (SourceWorker worker : workers) {
+            // Break ties by source, so the result does not depend on scheduling
+            if (worker.maxSRi >= 0 && (maxSRi < 0 || worker.maxSR > spanningRatio
+                    || (worker.maxSR == spanningRatio && worker.maxSRi < maxSRi))) {
+                spanningRatio = worker.maxSR;
+                maxSRi = worker.maxSRi;
+                maxSRj = worker.maxSRj;
+            }
+
+            if (report != null) {
+                report.merge(worker.report);
+            }
+        }
+
+        // Reconstruct the path corresponding to the maximum spanning ratio
+        DijkstraSearch search = new DijkstraSearch(compact);
+
+        if (maxSRi < 0) {
+            maximalPath = new ArrayList<Edge>();
+        } else {
+            search.run(maxSRi);
+            maximalPath = search.getPath(maxSRj);
+        }
+
+        if (report != null) {
+            for (StretchReport.WorstPair pair : report.getWorstPairs()) {
+                search.run(pair.getSourceIndex());
+                pair.setPath(compact.getVertex(pair.getSourceIndex()), compact.getVertex(pair.getTargetIndex()), search.getPath(pair.getTargetIndex()));
+            }
+        }
+
+        computed = true;
+    }
+
+    private static class SourceWorker implements Runnable {
+
+        private final CompactGraph graph;
+        private final AtomicInteger nextSource;
+        private final StretchReport report;
+        private double maxSR = 0;
+        private int maxSRi = -1;
+        private int maxSRj = -1;
+
+        SourceWorker(CompactGraph graph, AtomicInteger nextSource, StretchReport report) {
+            this.graph = graph;
+            this.nextSource = nextSource;
+            this.report = report;
+        }
+
+        @Override
+        public void run() {
+            int n = graph.getVertexCount();
+            DijkstraSearch search = new DijkstraSearch(graph);
+
+            for (int i = nextSource.getAndIncrement(); i < n; i = nextSource.getAndIncrement()) {
+                search.run(i);
+
+                for (int j = 0; j < n; j++) {
+                    if (j == i) {
+                        continue;
+                    }
+
+                    double sr = search.getDistance(j) / graph.getDistance(i, j);
+
+                    if (report != null) {
+                        report.add(i, j, sr);
+                    }
+
+                    if (sr > maxSR) {
+                        maxSR = sr;
+                        maxSRi = i;
+                        maxSRj = j;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,536 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.CompactGraph;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maintains all-pairs shortest paths of a graph while its edges change, so
+ * the spanning ratio can be recomputed after a local edit without starting
+ * from scratch. Edges are treated as undirected.
+ *
+ * Call <code>update</code> after modifying the graph. It compares the edges
+ * of the graph to the ones seen during the previous update:
+ * <ul>
+ * <li>Removed edges, and edges whose length changed because a vertex moved,
+ * invalidate the shortest path trees that contain them. Only those rows are
+ * recomputed, with one Dijkstra search each.</li>
+ * <li>New and changed edges are then inserted one at a time, which takes
+ * O(n^2) time per edge in the worst case, but skips all rows that the edge
+ * cannot improve.</li>
+ * </ul>
+ * Adding or removing vertices rebuilds everything. Memory use is about 12 n^2
+ * bytes, so this is meant for graphs with a few thousand vertices.
+ */
+public class DynamicSpanningRatioComputer {
+
+    private static final byte UNKNOWN = 0, INTACT = 1, AFFECTED = 2;
+
+    private final Graph graph;
+    private final int nThreads;
+    private List<GraphVertex> vertices; // The vertices during the last update, in graph order
+    private Map<Long, Double> edgeLengths; // Edges during the last update, keyed by their endpoint indices
+    private double[][] dist;
+    private int[][] pred; // pred[i][j] is the vertex preceding j on the shortest path from i, or -1
+    private double spanningRatio;
+    private int maxSRi, maxSRj;
+    private int recomputedRows; // Statistics of the last update
+    private int relaxedEdges;
+
+    public DynamicSpanningRatioComputer(Graph graph) {
+        this(graph, Parallel.getDefaultThreadCount());
+    }
+
+    public DynamicSpanningRatioComputer(Graph graph, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        this.graph = graph;
+        this.nThreads = nThreads;
+        this.vertices = null;
+    }
+
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the shortest paths of a
+     * graph with n vertices.
+     *
+     * @param n
+     * @return
+     */
+    public static long getMemoryUse(int n) {
+        return 12L * n * n;
+    }
+
+    /**
+     * Brings the shortest paths up to date with the current state of the
+     * graph and recomputes the spanning ratio.
+     */
+    public void update() {
+        if (!sameVertices()) {
+            rebuild();
+        } else {
+            repair();
+        }
+
+        findMaximum();
+    }
+
+    public double getSpanningRatio() {
+        if (vertices == null) {
+            update();
+        }
+
+        return spanningRatio;
+    }
+
+    /**
+     * Returns the shortest path between the pair of vertices with the largest
+     * spanning ratio, as of the last update.
+     *
+     * @return
+     */
+    public List<Edge> getMaximalPath() {
+        if (vertices == null) {
+            update();
+        }
+
+        if (maxSRi < 0) {
+            return new ArrayList<Edge>();
+        }
+
+        return getPath(maxSRi, maxSRj);
+    }
+
+    /**
+     * Returns the number of shortest path trees that were recomputed during
+     * the last update.
+     *
+     * @return
+     */
+    public int getRecomputedRowCount() {
+        return recomputedRows;
+    }
+
+    /**
+     * Returns the number of new or changed edges that were inserted into the
+     * distance matrix during the last update.
+     *
+     * @return
+     */
+    public int getRelaxedEdgeCount() {
+        return relaxedEdges;
+    }
+
+    private boolean sameVertices() {
+        if (vertices == null || vertices.size() != graph.getVertices().size()) {
+            return false;
+        }
+
+        for (int i = 0; i < vertices.size(); i++) {
+            if (vertices.get(i) != graph.getVertices().get(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private void rebuild() {
+        vertices = new ArrayList<GraphVertex>(graph.getVertices());
+        int n = vertices.size();
+        dist = new double[n][n];
+        pred = new int[n][n];
+
+        CompactGraph compact = new CompactGraph(graph, false);
+        edgeLengths = getEdgeLengths(compact);
+
+        int[] rows = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            rows[i] = i;
+        }
+
+        recomputeRows(compact, rows, n);
+        relaxedEdges = 0;
+    }
+
+    private void repair() {
+        int n = vertices.size();
+        CompactGraph compact = new CompactGraph(graph, false);
+        Map<Long, Double> newLengths = getEdgeLengths(compact);
+
+        // Collect the removed and changed edges
+        int[] removedA = new int[edgeLengths.size()];
+        int[] removedB = new int[edgeLengths.size()];
+        int nRemoved = 0;
+
+        for (Map.Entry<Long, Double> edge : edgeLengths.entrySet()) {
+            if (!edge.getValue().equals(newLengths.get(edge.getKey()))) {
+                removedA[nRemoved] = getFirst(edge.getKey());
+                removedB[nRemoved] = getSecond(edge.getKey());
+                nRemoved++;
+            }
+        }
+
+        // Rows whose shortest path tree uses one of these edges are invalid
+        boolean[] invalid = new boolean[n];
+        int nInvalid = 0;
+
+        for (int e = 0; e < nRemoved; e++) {
+            int a = removedA[e];
+            int b = removedB[e];
+
+            for (int i = 0; i < n; i++) {
+                if (!invalid[i] && (pred[i][b] == a || pred[i][a] == b)) {
+                    invalid[i] = true;
+                    nInvalid++;
+                }
+            }
+        }
+
+        int[] rows = new int[nInvalid];
+        int k = 0;
+
+        for (int i = 0; i < n; i++) {
+            if (invalid[i]) {
+                rows[k++] = i;
+            }
+        }
+
+        // Repair the invalid rows without the new and changed edges, so the whole matrix describes the same graph
+        boolean[] changed = new boolean[compact.getEdgeCount()];
+
+        for (int v = 0; v < n; v++) {
+            for (int arc = compact.getFirstArc(v); arc < compact.getFirstArc(v + 1); arc++) {
+                Long key = getKey(Math.min(v, compact.getArcTarget(arc)), Math.max(v, compact.getArcTarget(arc)));
+
+                if (!newLengths.get(key).equals(edgeLengths.get(key))) {
+                    changed[compact.getArcEdge(arc)] = true;
+                }
+            }
+        }
+
+        repairRows(compact, changed, removedA, removedB, nRemoved, rows, nInvalid);
+
+        // Then add the new and changed edges back one by one
+        relaxedEdges = 0;
+
+        for (Map.Entry<Long, Double> edge : newLengths.entrySet()) {
+            if (!edge.getValue().equals(edgeLengths.get(edge.getKey()))) {
+                insertEdge(getFirst(edge.getKey()), getSecond(edge.getKey()), edge.getValue());
+                relaxedEdges++;
+            }
+        }
+
+        edgeLengths = newLengths;
+    }
+
+    /**
+     * Repairs the given rows after the removal of the given edges. In each
+     * row, only the vertices below a removed edge in the shortest path tree
+     * can change. All other vertices keep their distance and the search is
+     * restricted to the affected subtrees.
+     */
+    private void repairRows(final CompactGraph compact, final boolean[] disabledEdges, final int[] removedA, final int[] removedB, final int nRemoved, final int[] rows, final int nRows) {
+        recomputedRows = nRows;
+
+        if (nRows == 0) {
+            return;
+        }
+
+        final AtomicInteger next = new AtomicInteger(0);
+        List<Runnable> workers = new ArrayList<Runnable>(nThreads);
+
+        for (int t = 0; t < Math.min(nThreads, nRows); t++) {
+            workers.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    DijkstraSearch search = new DijkstraSearch(compact);
+                    search.setDisabledEdges(disabledEdges);
+                    int n = compact.getVertexCount();
+                    byte[] state = new byte[n];
+                    int[] stack = new int[n];
+
+                    for (int r = next.getAndIncrement(); r < nRows; r = next.getAndIncrement()) {
+                        int i = rows[r];
+                        double[] di = dist[i];
+                        int[] pi = pred[i];
+
+                        findAffected(i, pi, removedA, removedB, nRemoved, state, stack);
+
+                        // Resume the search from the intact part of the tree
+                        search.initialize();
+
+                        for (int v = 0; v < n; v++) {
+                            if (state[v] == INTACT) {
+                                search.fix(v, di[v], pi[v]);
+                            }
+                        }
+
+                        for (int v = 0; v < n; v++) {
+                            if (state[v] == AFFECTED) {
+                                for (int arc = compact.getFirstArc(v); arc < compact.getFirstArc(v + 1); arc++) {
+                                    int u = compact.getArcTarget(arc);
+
+                                    if (state[u] == INTACT && !disabledEdges[compact.getArcEdge(arc)]) {
+                                        search.seed(v, di[u] + compact.getArcLength(arc), u, arc);
+                                    }
+                                }
+                            }
+                        }
+
+                        while (search.next() >= 0) {
+                            // Keep going
+                        }
+
+                        for (int v = 0; v < n; v++) {
+                            if (state[v] == AFFECTED) {
+                                di[v] = search.getDistance(v);
+                                pi[v] = search.getPredecessor(v);
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        Parallel.run(workers);
+    }
+
+    /**
+     * Marks every vertex whose path from i in the shortest path tree uses one
+     * of the removed edges as AFFECTED, and all others as INTACT.
+     */
+    private static void findAffected(int i, int[] pi, int[] removedA, int[] removedB, int nRemoved, byte[] state, int[] stack) {
+        int n = state.length;
+        Arrays.fill(state, UNKNOWN);
+        state[i] = INTACT;
+
+        for (int e = 0; e < nRemoved; e++) {
+            if (pi[removedB[e]] == removedA[e]) {
+                state[removedB[e]] = AFFECTED;
+            } else if (pi[removedA[e]] == removedB[e]) {
+                state[removedA[e]] = AFFECTED;
+            }
+        }
+
+        // Walk up the tree until we find a vertex we know, then label the whole walk
+        for (int v = 0; v < n; v++) {
+            int size = 0;
+            int u = v;
+
+            while (state[u] == UNKNOWN && pi[u] >= 0) {
+                stack[size++] = u;
+                u = pi[u];
+            }
+
+            // Unreachable vertices stay unreachable when edges are removed
+            byte label = (state[u] == UNKNOWN ? INTACT : state[u]);
+            state[u] = label;
+
+            for (int s = 0; s < size; s++) {
+                state[stack[s]] = label;
+            }
+        }
+    }
+
+    /**
+     * Updates all distances to account for a new edge between a and b. This
+     * requires that the matrix holds the exact distances in the graph without
+     * this edge.
+     *
+     * @param a
+     * @param b
+     * @param length
+     */
+    private void insertEdge(int a, int b, double length) {
+        int n = vertices.size();
+
+        // Paths from a and b that use the new edge never return to it, so the old rows are what we need
+        double[] distA = dist[a].clone();
+        double[] distB = dist[b].clone();
+        int[] predA = pred[a].clone();
+        int[] predB = pred[b].clone();
+
+        for (int i = 0; i < n; i++) {
+            double[] di = dist[i];
+            int[] pi = pred[i];
+            double viaA = di[a] + length; // i -> a -> b
+            double viaB = di[b] + length; // i -> b -> a
+
+            // The new edge can only help i if it shortens the path to one of its endpoints
+            if (viaA < di[b]) {
+                for (int j = 0; j < n; j++) {
+                    double d = viaA + distB[j];
+
+                    if (d < di[j]) {
+                        di[j] = d;
+                        pi[j] = (j == b ? a : predB[j]);
+                    }
+                }
+            } else if (viaB < di[a]) {
+                for (int j = 0; j < n; j++) {
+                    double d = viaB + distA[j];
+
+                    if (d < di[j]) {
+                        di[j] = d;
+                        pi[j] = (j == a ? b : predA[j]);
+                    }
+                }
+            }
+        }
+    }
+
+    private void recomputeRows(final CompactGraph compact, final int[] rows, final int nRows) {
+        recomputedRows = nRows;
+
+        if (nRows == 0) {
+            return;
+        }
+
+        final AtomicInteger next = new AtomicInteger(0);
+        List<Runnable> workers = new ArrayList<Runnable>(nThreads);
+
+        for (int t = 0; t < Math.min(nThreads, nRows); t++) {
+            workers.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    DijkstraSearch search = new DijkstraSearch(compact);
+                    int n = compact.getVertexCount();
+
+                    for (int r = next.getAndIncrement(); r < nRows; r = next.getAndIncrement()) {
+                        int i = rows[r];
+                        search.run(i);
+
+                        for (int j = 0; j < n; j++) {
+                            dist[i][j] = search.getDistance(j);
+                            pred[i][j] = search.getPredecessor(j);
+                        }
+                    }
+                }
+            });
+        }
+
+        Parallel.run(workers);
+    }
+
+    private void findMaximum() {
+        int n = vertices.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            x[i] = vertices.get(i).getX();
+            y[i] = vertices.get(i).getY();
+        }
+
+        spanningRatio = 0;
+        maxSRi = -1;
+        maxSRj = -1;
+
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                double dx = x[j] - x[i];
+                double dy = y[j] - y[i];
+                double sr = dist[i][j] / Math.sqrt(dx * dx + dy * dy);
+
+                if (sr > spanningRatio) {
+                    spanningRatio = sr;
+                    maxSRi = i;
+                    maxSRj = j;
+                }
+            }
+        }
+    }
+
+    private List<Edge> getPath(int i, int j) {
+        if (dist[i][j] == Double.POSITIVE_INFINITY) {
+            return null;
+        }
+
+        List<Edge> path = new ArrayList<Edge>();
+        int v = j;
+
+        // The guard protects against cycles caused by rounding in degenerate inputs
+        for (int steps = 0; v != i && steps < vertices.size(); steps++) {
+            int u = pred[i][v];
+            path.add(vertices.get(u).getEdgeTo(vertices.get(v)));
+            v = u;
+        }
+
+        Collections.reverse(path);
+        return path;
+    }
+
+    private static Map<Long, Double> getEdgeLengths(CompactGraph compact) {
+        Map<Long, Double> lengths = new HashMap<Long, Double>(2 * compact.getEdgeCount());
+
+        for (int v = 0; v < compact.getVertexCount(); v++) {
+            for (int arc = compact.getFirstArc(v); arc < compact.getFirstArc(v + 1); arc++) {
+                int u = compact.getArcTarget(arc);
+
+                if (v < u) {
+                    // Only the shortest of several parallel edges matters
+                    Long key = getKey(v, u);
+                    Double length = lengths.get(key);
+
+                    if (length == null || compact.getArcLength(arc) < length) {
+                        lengths.put(key, compact.getArcLength(arc));
+                    }
+                }
+            }
+        }
+
+        return lengths;
+    }
+
+    private static Long getKey(int a, int b) {
+        return ((long) a << 32) | b;
+    }
+
+    private static int getFirst(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static int getSecond(long key) {
+        return (int) key;
+    }
+}
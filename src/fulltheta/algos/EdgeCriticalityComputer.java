@@ -0,0 +1,428 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.CompactGraph;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes, for every edge of a graph, the spanning ratio of the graph
+ * without that edge. This shows which edges a lower bound construction should
+ * try to remove.
+ *
+ * Removing an edge only changes the shortest paths from sources whose
+ * shortest path tree contains it, and from such a source only the distances
+ * to vertices below the edge in the tree. So for every source, we compute the
+ * tree once and, for each of its edges, repair just the subtree below it with
+ * a search that starts from the vertices around the subtree. The maximum
+ * stretch outside the subtree comes from prefix and suffix maxima over a
+ * depth-first order of the tree. Sources are spread over several threads.
+ *
+ * Edge directions are respected.
+ */
+public class EdgeCriticalityComputer {
+
+    private final Graph graph;
+    private final int nThreads;
+    private CompactGraph compact;
+    private Map<Edge, Integer> edgeIndex;
+    private double spanningRatio;
+    private double[] spanningRatioWithout;
+    private long[] affectedPairs;
+    private double[] maxAffectedStretch;
+    private boolean computed = false;
+
+    public EdgeCriticalityComputer(Graph graph) {
+        this(graph, Parallel.getDefaultThreadCount());
+    }
+
+    public EdgeCriticalityComputer(Graph graph, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        this.graph = graph;
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Returns the spanning ratio of the complete graph.
+     *
+     * @return
+     */
+    public double getSpanningRatio() {
+        if (!computed) {
+            compute();
+        }
+
+        return spanningRatio;
+    }
+
+    /**
+     * Returns the spanning ratio of the graph after removing the given edge.
+     *
+     * @param e
+     * @return
+     */
+    public double getSpanningRatioWithout(Edge e) {
+        return spanningRatioWithout[getIndex(e)];
+    }
+
+    /**
+     * Returns the number of ordered pairs of vertices whose distance increases
+     * when the given edge is removed.
+     *
+     * @param e
+     * @return
+     */
+    public long getAffectedPairCount(Edge e) {
+        return affectedPairs[getIndex(e)];
+    }
+
+    /**
+     * Returns the largest stretch, after removing the given edge, among the
+     * pairs whose distance increases, or 0 if there are none.
+     *
+     * @param e
+     * @return
+     */
+    public double getMaximumAffectedStretch(Edge e) {
+        return maxAffectedStretch[getIndex(e)];
+    }
+
+    /**
+     * Returns all edges, ordered from the one whose removal increases the
+     * spanning ratio the most to the least. Ties are broken by the largest
+     * stretch among affected pairs.
+     *
+     * @return
+     */
+    public List<Edge> getEdgesByCriticality() {
+        if (!computed) {
+            compute();
+        }
+
+        List<Edge> edges = new ArrayList<Edge>(compact.getEdges());
+
+        Collections.sort(edges, new Comparator<Edge>() {
+
+            @Override
+            public int compare(Edge e1, Edge e2) {
+                int i1 = edgeIndex.get(e1);
+                int i2 = edgeIndex.get(e2);
+                int result = Double.compare(spanningRatioWithout[i2], spanningRatioWithout[i1]);
+                return (result != 0 ? result : Double.compare(maxAffectedStretch[i2], maxAffectedStretch[i1]));
+            }
+        });
+
+        return edges;
+    }
+
+    private int getIndex(Edge e) {
+        if (!computed) {
+            compute();
+        }
+
+        Integer index = edgeIndex.get(e);
+
+        if (index == null) {
+            throw new IllegalArgumentException("The edge is not part of the graph.");
+        }
+
+        return index;
+    }
+
+    private void compute() {
+        compact = new CompactGraph(graph, true);
+        int n = compact.getVertexCount();
+        int m = compact.getEdgeCount();
+
+        edgeIndex = new IdentityHashMap<Edge, Integer>(2 * m);
+
+        for (int e = 0; e < m; e++) {
+            edgeIndex.put(compact.getEdge(e), e);
+        }
+
+        CompactGraph reverse = compact.reverse();
+        AtomicInteger nextSource = new AtomicInteger(0);
+        List<SourceWorker> workers = new ArrayList<SourceWorker>(nThreads);
+
+        for (int t = 0; t < Math.min(nThreads, Math.max(n, 1)); t++) {
+            workers.add(new SourceWorker(compact, reverse, nextSource));
+        }
+
+        Parallel.run(workers);
+
+        // Combine the results of the workers
+        spanningRatio = 0;
+        spanningRatioWithout = new double[m];
+        affectedPairs = new long[m];
+        maxAffectedStretch = new double[m];
+
+        for (SourceWorker worker : workers) {
+            spanningRatio = Math.max(spanningRatio, worker.maxStretch);
+
+            for (int e = 0; e < m; e++) {
+                spanningRatioWithout[e] = Math.max(spanningRatioWithout[e], worker.maxStretchWithout[e]);
+                affectedPairs[e] += worker.affectedPairs[e];
+                maxAffectedStretch[e] = Math.max(maxAffectedStretch[e], worker.maxAffectedStretch[e]);
+            }
+        }
+
+        // Removing an edge never shortens a path, so sources whose tree avoids an edge keep their stretch
+        for (int e = 0; e < m; e++) {
+            spanningRatioWithout[e] = Math.max(spanningRatioWithout[e], spanningRatio);
+        }
+
+        computed = true;
+    }
+
+    private static class SourceWorker implements Runnable {
+
+        private final CompactGraph graph;
+        private final CompactGraph reverse;
+        private final AtomicInteger nextSource;
+        // Results
+        private double maxStretch = 0;
+        private final double[] maxStretchWithout; // Only for sources whose tree contains the edge
+        private final long[] affectedPairs;
+        private final double[] maxAffectedStretch;
+        // Buffers
+        private final DijkstraSearch search;
+        private final DijkstraSearch repair;
+        private final boolean[] allowed;
+        private final boolean[] disabled;
+        private final int[] order; // The reachable vertices in depth-first order of the tree
+        private final int[] position; // Position of each vertex in the order
+        private final int[] subtreeSize;
+        private final int[] firstChild;
+        private final int[] children;
+        private final int[] stack;
+        private final double[] prefixMax; // prefixMax[k] is the largest stretch of order[0] .. order[k - 1]
+        private final double[] suffixMax; // suffixMax[k] is the largest stretch of order[k] .. the end
+
+        SourceWorker(CompactGraph graph, CompactGraph reverse, AtomicInteger nextSource) {
+            this.graph = graph;
+            this.reverse = reverse;
+            this.nextSource = nextSource;
+
+            int n = graph.getVertexCount();
+            int m = graph.getEdgeCount();
+
+            maxStretchWithout = new double[m];
+            affectedPairs = new long[m];
+            maxAffectedStretch = new double[m];
+
+            search = new DijkstraSearch(graph);
+            repair = new DijkstraSearch(graph);
+            allowed = new boolean[n];
+            disabled = new boolean[m];
+            repair.setAllowedVertices(allowed);
+            repair.setDisabledEdges(disabled);
+
+            order = new int[n];
+            position = new int[n];
+            subtreeSize = new int[n];
+            firstChild = new int[n + 1];
+            children = new int[n];
+            stack = new int[n];
+            prefixMax = new double[n + 1];
+            suffixMax = new double[n + 1];
+        }
+
+        @Override
+        public void run() {
+            int n = graph.getVertexCount();
+
+            for (int i = nextSource.getAndIncrement(); i < n; i = nextSource.getAndIncrement()) {
+                search.run(i);
+                buildTree(i);
+                processTree(i);
+            }
+        }
+
+        /**
+         * Orders the vertices reached from i depth-first, so every subtree
+         * is a contiguous range of the order.
+         */
+        private void buildTree(int i) {
+            int n = graph.getVertexCount();
+            int nReached = search.getTouchedCount();
+
+            // Group the children of every vertex
+            for (int v = 0; v <= n; v++) {
+                firstChild[v] = 0;
+            }
+
+            for (int k = 0; k < nReached; k++) {
+                int v = search.getTouched(k);
+
+                if (v != i) {
+                    firstChild[search.getPredecessor(v) + 1]++;
+                }
+            }
+
+            for (int v = 0; v < n; v++) {
+                firstChild[v + 1] += firstChild[v];
+            }
+
+            for (int k = 0; k < nReached; k++) {
+                int v = search.getTouched(k);
+
+                if (v != i) {
+                    int p = search.getPredecessor(v);
+                    children[firstChild[p]++] = v;
+                }
+            }
+
+            // Filling moved every start to the next vertex, so shift them back
+            for (int v = n; v > 0; v--) {
+                firstChild[v] = firstChild[v - 1];
+            }
+
+            firstChild[0] = 0;
+
+            // Depth-first order
+            int size = 0;
+            int nOrdered = 0;
+            stack[size++] = i;
+
+            while (size > 0) {
+                int v = stack[--size];
+                position[v] = nOrdered;
+                order[nOrdered++] = v;
+
+                for (int c = firstChild[v]; c < firstChild[v + 1]; c++) {
+                    stack[size++] = children[c];
+                }
+            }
+
+            // Subtree sizes, children before parents
+            for (int k = nOrdered - 1; k >= 0; k--) {
+                int v = order[k];
+                subtreeSize[v] = 1;
+
+                for (int c = firstChild[v]; c < firstChild[v + 1]; c++) {
+                    subtreeSize[v] += subtreeSize[children[c]];
+                }
+            }
+        }
+
+        private void processTree(int i) {
+            int n = graph.getVertexCount();
+            int nReached = search.getTouchedCount();
+
+            // Vertices that cannot be reached have infinite stretch, with or without any edge
+            double unreachedStretch = (nReached < n ? Double.POSITIVE_INFINITY : 0);
+
+            prefixMax[0] = 0;
+
+            for (int k = 0; k < nReached; k++) {
+                prefixMax[k + 1] = Math.max(prefixMax[k], getStretch(i, order[k], search.getDistance(order[k])));
+            }
+
+            suffixMax[nReached] = 0;
+
+            for (int k = nReached - 1; k >= 0; k--) {
+                suffixMax[k] = Math.max(suffixMax[k + 1], getStretch(i, order[k], search.getDistance(order[k])));
+            }
+
+            maxStretch = Math.max(maxStretch, Math.max(prefixMax[nReached], unreachedStretch));
+
+            // Remove each tree edge in turn
+            for (int k = 1; k < nReached; k++) {
+                int c = order[k];
+                int e = graph.getArcEdge(search.getPredecessorArc(c));
+                int end = k + subtreeSize[c];
+
+                double outside = Math.max(Math.max(prefixMax[k], suffixMax[end]), unreachedStretch);
+                double inside = repairSubtree(i, k, end, e);
+
+                maxStretchWithout[e] = Math.max(maxStretchWithout[e], Math.max(outside, inside));
+            }
+        }
+
+        /**
+         * Recomputes the distances from i to the vertices order[start] ..
+         * order[end - 1] without edge e and returns their largest stretch.
+         */
+        private double repairSubtree(int i, int start, int end, int e) {
+            for (int k = start; k < end; k++) {
+                allowed[order[k]] = true;
+            }
+
+            disabled[e] = true;
+            repair.initialize();
+
+            // Every path into the subtree enters it from a vertex whose distance did not change
+            for (int k = start; k < end; k++) {
+                int w = order[k];
+
+                for (int arc = reverse.getFirstArc(w); arc < reverse.getFirstArc(w + 1); arc++) {
+                    int u = reverse.getArcTarget(arc);
+
+                    if (!allowed[u] && !disabled[reverse.getArcEdge(arc)] && search.getDistance(u) < Double.POSITIVE_INFINITY) {
+                        repair.seed(w, search.getDistance(u) + reverse.getArcLength(arc), u, -1);
+                    }
+                }
+            }
+
+            while (repair.next() >= 0) {
+                // Keep going
+            }
+
+            double inside = 0;
+
+            for (int k = start; k < end; k++) {
+                int w = order[k];
+                double newDistance = repair.getDistance(w);
+                double stretch = getStretch(i, w, newDistance);
+
+                inside = Math.max(inside, stretch);
+
+                if (newDistance > search.getDistance(w)) {
+                    affectedPairs[e]++;
+                    maxAffectedStretch[e] = Math.max(maxAffectedStretch[e], stretch);
+                }
+
+                allowed[w] = false;
+            }
+
+            disabled[e] = false;
+            return inside;
+        }
+
+        private double getStretch(int i, int j, double distance) {
+            return (i == j ? 0 : distance / graph.getDistance(i, j));
+        }
+    }
+}
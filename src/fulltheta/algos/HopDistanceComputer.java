@@ -0,0 +1,427 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.CompactGraph;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the number of edges (hops) on the paths with the fewest edges
+ * between all ordered pairs of vertices, ignoring edge lengths.
+ *
+ * The searches run 64 sources at a time: every vertex stores one bit per
+ * source in a long, and a breadth-first search step handles all 64 sources
+ * with a single OR per arc. The sources of a batch are chosen close together
+ * in the graph, so their searches reach most vertices at similar depths and
+ * the batch costs not much more than a single search. Batches are spread over
+ * several threads.
+ *
+ * Edge directions are respected.
+ */
+public class HopDistanceComputer {
+
+    private static final int BATCH_SIZE = 64;
+    private final Graph graph;
+    private final int nThreads;
+    private CompactGraph compact;
+    private long[] histogram; // histogram[h] is the number of ordered pairs at hop distance h
+    private long unreachablePairs;
+    private boolean computed = false;
+
+    public HopDistanceComputer(Graph graph) {
+        this(graph, Parallel.getDefaultThreadCount());
+    }
+
+    public HopDistanceComputer(Graph graph, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        this.graph = graph;
+        this.nThreads = nThreads;
+    }
+
+    /**
+     * Returns the largest hop distance between two vertices, ignoring pairs
+     * where one cannot be reached from the other.
+     *
+     * @return
+     */
+    public int getHopDiameter() {
+        if (!computed) {
+            compute();
+        }
+
+        return histogram.length - 1;
+    }
+
+    /**
+     * Returns an array whose entry h is the number of ordered pairs of
+     * distinct vertices whose hop distance is h. The last entry is non-zero,
+     * unless there are no such pairs.
+     *
+     * @return
+     */
+    public long[] getHopCountHistogram() {
+        if (!computed) {
+            compute();
+        }
+
+        return histogram.clone();
+    }
+
+    /**
+     * Returns the number of ordered pairs of distinct vertices (u, v) such
+     * that v cannot be reached from u.
+     *
+     * @return
+     */
+    public long getUnreachablePairCount() {
+        if (!computed) {
+            compute();
+        }
+
+        return unreachablePairs;
+    }
+
+    /**
+     * Returns the average hop distance over all pairs where one vertex can be
+     * reached from the other.
+     *
+     * @return
+     */
+    public double getAverageHopDistance() {
+        if (!computed) {
+            compute();
+        }
+
+        long count = 0;
+        double sum = 0;
+
+        for (int h = 1; h < histogram.length; h++) {
+            count += histogram[h];
+            sum += h * (double) histogram[h];
+        }
+
+        return (count == 0 ? 0 : sum / count);
+    }
+
+    /**
+     * Returns the hop distance from u to v, or -1 if v cannot be reached from
+     * u. This runs a single breadth-first search.
+     *
+     * @param u
+     * @param v
+     * @return
+     */
+    public int getHopDistance(GraphVertex u, GraphVertex v) {
+        CompactGraph g = (compact == null ? new CompactGraph(graph, true) : compact);
+        int s = g.indexOf(u);
+        int t = g.indexOf(v);
+
+        if (s < 0 || t < 0) {
+            throw new IllegalArgumentException("Both vertices must be part of the graph.");
+        }
+
+        int[] hops = breadthFirstSearch(g, s);
+        return hops[t];
+    }
+
+    /**
+     * Returns the hop distance between the endpoints of the given path, which
+     * runs from its first to its last edge. This runs a single breadth-first
+     * search.
+     *
+     * @param path
+     * @return
+     */
+    public int getHopDistance(List<Edge> path) {
+        if (path.isEmpty()) {
+            throw new IllegalArgumentException("The path must have at least one edge.");
+        }
+
+        if (path.size() == 1) {
+            return 1;
+        }
+
+        GraphVertex source = getEnd(path.get(0), path.get(1));
+        GraphVertex target = getEnd(path.get(path.size() - 1), path.get(path.size() - 2));
+        return getHopDistance(source, target);
+    }
+
+    /**
+     * Returns the hop stretch of the given path, such as the maximal path of
+     * a spanning ratio computation: its hop length, the number of edges on
+     * it, divided by the hop distance between its endpoints.
+     *
+     * @param path
+     * @return
+     */
+    public double getHopStretch(List<Edge> path) {
+        return path.size() / (double) getHopDistance(path);
+    }
+
+    /**
+     * Returns the vertex of the edge at one end of a path that it does not
+     * share with the next edge on the path.
+     */
+    private static GraphVertex getEnd(Edge end, Edge next) {
+        boolean shared = (end.getVA() == next.getVA() || end.getVA() == next.getVB());
+        return (shared ? end.getVB() : end.getVA());
+    }
+
+    private void compute() {
+        compact = new CompactGraph(graph, true);
+        int n = compact.getVertexCount();
+
+        final int[] sources = getSourceOrder(compact);
+        final int nBatches = (n + BATCH_SIZE - 1) / BATCH_SIZE;
+        final AtomicInteger nextBatch = new AtomicInteger(0);
+        BatchWorker[] workers = new BatchWorker[Math.min(nThreads, Math.max(nBatches, 1))];
+
+        for (int t = 0; t < workers.length; t++) {
+            workers[t] = new BatchWorker(compact, sources, nBatches, nextBatch);
+        }
+
+        Parallel.run(Arrays.asList(workers));
+
+        // Combine the results of the workers
+        int maxHops = 0;
+        unreachablePairs = 0;
+
+        for (BatchWorker worker : workers) {
+            maxHops = Math.max(maxHops, worker.maxHops);
+            unreachablePairs += worker.unreachablePairs;
+        }
+
+        histogram = new long[maxHops + 1];
+
+        for (BatchWorker worker : workers) {
+            for (int h = 0; h <= worker.maxHops; h++) {
+                histogram[h] += worker.histogram[h];
+            }
+        }
+
+        computed = true;
+    }
+
+    /**
+     * Returns all vertices, ordered so that every run of BATCH_SIZE consecutive
+     * vertices is close together in the graph. We repeatedly grow a small
+     * breadth-first ball, ignoring edge directions, around the first vertex
+     * that is not ordered yet, and add the unordered vertices it reaches.
+     */
+    private static int[] getSourceOrder(CompactGraph graph) {
+        int n = graph.getVertexCount();
+        CompactGraph reverse = graph.reverse();
+        int[] order = new int[n];
+        boolean[] ordered = new boolean[n];
+        boolean[] seen = new boolean[n];
+        int[] queue = new int[n];
+        int nOrdered = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (ordered[root]) {
+                continue;
+            }
+
+            int head = 0, tail = 0;
+            int target = nOrdered + BATCH_SIZE;
+            queue[tail++] = root;
+            seen[root] = true;
+
+            // Exploring is limited, so the last balls stay cheap when few vertices are left
+            while (head < tail && nOrdered < target && tail < 4 * BATCH_SIZE) {
+                int u = queue[head++];
+
+                if (!ordered[u]) {
+                    ordered[u] = true;
+                    order[nOrdered++] = u;
+                }
+
+                tail = enqueueNeighbours(graph, u, seen, queue, tail);
+
+                if (reverse != graph) {
+                    tail = enqueueNeighbours(reverse, u, seen, queue, tail);
+                }
+            }
+
+            for (int i = 0; i < tail; i++) {
+                seen[queue[i]] = false;
+            }
+        }
+
+        return order;
+    }
+
+    private static int enqueueNeighbours(CompactGraph graph, int u, boolean[] seen, int[] queue, int tail) {
+        for (int arc = graph.getFirstArc(u); arc < graph.getFirstArc(u + 1); arc++) {
+            int v = graph.getArcTarget(arc);
+
+            if (!seen[v]) {
+                seen[v] = true;
+                queue[tail++] = v;
+            }
+        }
+
+        return tail;
+    }
+
+    private static int[] breadthFirstSearch(CompactGraph graph, int source) {
+        int n = graph.getVertexCount();
+        int[] hops = new int[n];
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+
+        Arrays.fill(hops, -1);
+        hops[source] = 0;
+        queue[tail++] = source;
+
+        while (head < tail) {
+            int u = queue[head++];
+
+            for (int arc = graph.getFirstArc(u); arc < graph.getFirstArc(u + 1); arc++) {
+                int v = graph.getArcTarget(arc);
+
+                if (hops[v] < 0) {
+                    hops[v] = hops[u] + 1;
+                    queue[tail++] = v;
+                }
+            }
+        }
+
+        return hops;
+    }
+
+    private static class BatchWorker implements Runnable {
+
+        private final CompactGraph graph;
+        private final int[] sources;
+        private final int nBatches;
+        private final AtomicInteger nextBatch;
+        private final long[] visited; // Bit b of visited[v] is set if source b has reached v
+        private final long[] frontier; // Bit b of frontier[v] is set if source b reached v in the last step
+        private final long[] next;
+        private int[] frontierList; // The vertices with a non-zero frontier word
+        private int[] nextList;
+        // Results
+        private final long[] histogram;
+        private int maxHops = 0;
+        private long unreachablePairs = 0;
+
+        BatchWorker(CompactGraph graph, int[] sources, int nBatches, AtomicInteger nextBatch) {
+            this.graph = graph;
+            this.sources = sources;
+            this.nBatches = nBatches;
+            this.nextBatch = nextBatch;
+
+            int n = graph.getVertexCount();
+            visited = new long[n];
+            frontier = new long[n];
+            next = new long[n];
+            frontierList = new int[n];
+            nextList = new int[n];
+            histogram = new long[Math.max(n, 1)];
+        }
+
+        @Override
+        public void run() {
+            for (int b = nextBatch.getAndIncrement(); b < nBatches; b = nextBatch.getAndIncrement()) {
+                runBatch(b * BATCH_SIZE, Math.min(sources.length, (b + 1) * BATCH_SIZE));
+            }
+        }
+
+        private void runBatch(int start, int end) {
+            int n = graph.getVertexCount();
+            Arrays.fill(visited, 0);
+
+            int frontierSize = 0;
+
+            for (int i = start; i < end; i++) {
+                int s = sources[i];
+                long bit = 1L << (i - start);
+
+                visited[s] |= bit;
+                frontier[s] |= bit;
+                frontierList[frontierSize++] = s;
+            }
+
+            long reached = 0;
+            int hops = 0;
+
+            while (frontierSize > 0) {
+                hops++;
+                int nextSize = 0;
+
+                // Push the frontier of every source along all arcs at once
+                for (int f = 0; f < frontierSize; f++) {
+                    int u = frontierList[f];
+                    long bits = frontier[u];
+                    frontier[u] = 0;
+
+                    for (int arc = graph.getFirstArc(u); arc < graph.getFirstArc(u + 1); arc++) {
+                        int v = graph.getArcTarget(arc);
+                        long newBits = bits & ~visited[v];
+
+                        if (newBits != 0) {
+                            if (next[v] == 0) {
+                                nextList[nextSize++] = v;
+                            }
+
+                            next[v] |= newBits;
+                        }
+                    }
+                }
+
+                for (int f = 0; f < nextSize; f++) {
+                    int v = nextList[f];
+                    int count = Long.bitCount(next[v]);
+
+                    visited[v] |= next[v];
+                    frontier[v] = next[v];
+                    next[v] = 0;
+
+                    histogram[hops] += count;
+                    reached += count;
+                }
+
+                if (nextSize > 0) {
+                    maxHops = Math.max(maxHops, hops);
+                }
+
+                int[] swap = frontierList;
+                frontierList = nextList;
+                nextList = swap;
+                frontierSize = nextSize;
+            }
+
+            unreachablePairs += (long) (end - start) * (n - 1) - reached;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a fixed set of tasks on their own threads and waits for all of them.
+ */
+final class Parallel {
+
+    private Parallel() {
+    }
+
+    /**
+     * Returns the number of threads to use when the caller does not specify
+     * one.
+     *
+     * @return
+     */
+    static int getDefaultThreadCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs all tasks concurrently and returns when they have all finished. The
+     * last task runs on the calling thread. If any task throws, the first
+     * exception is rethrown after all tasks have finished.
+     *
+     * @param tasks
+     */
+    static void run(List<? extends Runnable> tasks) {
+        final List<Throwable> failures = new ArrayList<Throwable>(1);
+        List<Thread> threads = new ArrayList<Thread>(tasks.size());
+
+        for (int i = 0; i < tasks.size() - 1; i++) {
+            final Runnable task = tasks.get(i);
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } catch (Throwable t) {
+                        synchronized (failures) {
+                            failures.add(t);
+                        }
+                    }
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        if (!tasks.isEmpty()) {
+            try {
+                tasks.get(tasks.size() - 1).run();
+            } catch (Throwable t) {
+                synchronized (failures) {
+                    failures.add(t);
+                }
+            }
+        }
+
+        boolean interrupted = false;
+
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (failures) {
+            if (!failures.isEmpty()) {
+                Throwable t = failures.get(0);
+
+                if (t instanceof RuntimeException) {
+                    throw (RuntimeException) t;
+                } else if (t instanceof Error) {
+                    throw (Error) t;
+                } else {
+                    throw new RuntimeException(t);
+                }
+            }
+        }
+    }
+}
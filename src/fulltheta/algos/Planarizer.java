@@ -0,0 +1,897 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.Constraint;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import fulltheta.data.embedded.EmbeddedGraph;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Finds all proper crossings between the edges of a graph with a
+ * Bentley-Ottmann sweep, and builds a plane graph by inserting a vertex at
+ * every crossing. The result can be embedded with EmbeddedGraph, which
+ * assumes that no two edges cross.
+ *
+ * The sweep line moves from left to right and keeps the edges it intersects
+ * in a treap ordered from bottom to top. Only edges that become neighbours in
+ * this order are tested for a crossing, so the sweep takes O((n + m + c) log m)
+ * time for n vertices, m edges and c crossings. Geometry is only used to find
+ * the position of a new edge; at a crossing the edges through it are
+ * reordered by direction without looking at the computed crossing point,
+ * which keeps the order consistent despite rounding errors. This also
+ * handles points where more than two edges cross: the edges that are
+ * reordered together share one crossing vertex, even if the crossing points
+ * computed for different pairs of them differ by rounding.
+ *
+ * Edges that share an endpoint are not considered to cross. The sweep assumes
+ * that no vertex lies in the interior of an edge and that no two edges
+ * overlap.
+ */
+public class Planarizer {
+
+    private static final double SAME_POINT = 1e-9; // Relative to the size of the bounding box
+    private final Graph graph;
+    private List<GraphVertex> vertices;
+    private List<Edge> edges;
+    private double[] x, y; // Vertex coordinates
+    private double tolerance; // Crossings computed this close together are taken to be the same point
+    private int[] segLeft, segRight; // The lexicographically smallest and largest endpoint of each edge
+    private int nCrossings;
+    private double[] crossingX, crossingY;
+    private int[] crossingA, crossingB; // The two edges involved in each crossing
+    private int[] crossingParent; // Union-find forest over the crossings at the same point
+    private SweepStatus status;
+    private PriorityQueue<CrossingEvent> events;
+    private Set<Long> foundPairs; // Pairs of edges with a crossing event
+    private Map<Long, Integer> recordedPairs; // Pairs of edges whose crossing has been processed, with the index of that crossing
+    private int[] block; // Scratch space for the edges through a crossing
+    private Graph planarGraph;
+    private List<GraphVertex> crossingVertices;
+    private boolean computed = false;
+
+    public Planarizer(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Returns the number of pairs of edges that cross.
+     *
+     * @return
+     */
+    public int getCrossingCount() {
+        if (!computed) {
+            compute();
+        }
+
+        return nCrossings;
+    }
+
+    /**
+     * Returns true if no two edges of the graph cross.
+     *
+     * @return
+     */
+    public boolean isPlane() {
+        return getCrossingCount() == 0;
+    }
+
+    /**
+     * Returns a new graph with the same vertices as the original, plus an
+     * invisible vertex at every crossing. Every edge of the original graph is
+     * split into a path through its crossing vertices, with the same direction.
+     *
+     * @return
+     */
+    public Graph getPlanarGraph() {
+        if (!computed) {
+            compute();
+        }
+
+        return planarGraph;
+    }
+
+    /**
+     * Returns the vertices of the planar graph that were inserted at the
+     * crossings, in the order the sweep found them. Where more than two edges
+     * cross at the same point, they share a single vertex.
+     *
+     * @return
+     */
+    public List<GraphVertex> getCrossingVertices() {
+        if (!computed) {
+            compute();
+        }
+
+        return crossingVertices;
+    }
+
+    public static Graph planarize(Graph graph) {
+        return new Planarizer(graph).getPlanarGraph();
+    }
+
+    /**
+     * Returns true if the planar graph is plane and its embedding forms a
+     * valid DCEL. verifyDCEL only checks the pointers of the embedding, which
+     * can be consistent even if edges cross, so this also checks for
+     * crossings that rounding of the crossing vertices may have introduced.
+     *
+     * @return
+     */
+    public boolean verifyPlanarGraph() {
+        Graph planar = getPlanarGraph();
+        return new CrossingCounter(planar).isPlane() && new EmbeddedGraph(planar, 0).verifyDCEL();
+    }
+
+    private void compute() {
+        vertices = new ArrayList<GraphVertex>(graph.getVertices());
+        edges = new ArrayList<Edge>(graph.getEdges());
+
+        int n = vertices.size();
+        int m = edges.size();
+
+        x = new double[n];
+        y = new double[n];
+
+        // GraphVertex.equals compares coordinates, so we need identity here
+        Map<GraphVertex, Integer> vertexIndex = new IdentityHashMap<GraphVertex, Integer>(2 * n);
+
+        double minX = Double.POSITIVE_INFINITY, maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < n; i++) {
+            x[i] = vertices.get(i).getX();
+            y[i] = vertices.get(i).getY();
+            vertexIndex.put(vertices.get(i), i);
+
+            minX = Math.min(minX, x[i]);
+            maxX = Math.max(maxX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        tolerance = (n == 0 ? 0 : SAME_POINT * Math.max(maxX - minX, maxY - minY));
+
+        segLeft = new int[m];
+        segRight = new int[m];
+
+        for (int e = 0; e < m; e++) {
+            int a = vertexIndex.get(edges.get(e).getVA());
+            int b = vertexIndex.get(edges.get(e).getVB());
+
+            if (isBefore(x[a], y[a], x[b], y[b])) {
+                segLeft[e] = a;
+                segRight[e] = b;
+            } else {
+                segLeft[e] = b;
+                segRight[e] = a;
+            }
+        }
+
+        nCrossings = 0;
+        crossingX = new double[16];
+        crossingY = new double[16];
+        crossingA = new int[16];
+        crossingB = new int[16];
+        crossingParent = new int[16];
+
+        sweep();
+        buildPlanarGraph();
+
+        computed = true;
+    }
+
+    private void sweep() {
+        int n = x.length;
+        int m = segLeft.length;
+
+        // Visit the vertices from left to right
+        Integer[] order = new Integer[n];
+
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer v1, Integer v2) {
+                if (x[v1] != x[v2]) {
+                    return Double.compare(x[v1], x[v2]);
+                } else {
+                    return Double.compare(y[v1], y[v2]);
+                }
+            }
+        });
+
+        // The edges starting and ending at each vertex
+        int[] firstStart = new int[n + 1];
+        int[] firstEnd = new int[n + 1];
+
+        for (int e = 0; e < m; e++) {
+            if (isZeroLength(e)) {
+                continue; // These cannot cross anything
+            }
+
+            firstStart[segLeft[e] + 1]++;
+            firstEnd[segRight[e] + 1]++;
+        }
+
+        for (int i = 0; i < n; i++) {
+            firstStart[i + 1] += firstStart[i];
+            firstEnd[i + 1] += firstEnd[i];
+        }
+
+        int[] starting = new int[m];
+        int[] ending = new int[m];
+        int[] fillStart = Arrays.copyOf(firstStart, n);
+        int[] fillEnd = Arrays.copyOf(firstEnd, n);
+
+        for (int e = 0; e < m; e++) {
+            if (!isZeroLength(e)) {
+                starting[fillStart[segLeft[e]]++] = e;
+                ending[fillEnd[segRight[e]]++] = e;
+            }
+        }
+
+        status = new SweepStatus(m);
+        events = new PriorityQueue<CrossingEvent>();
+        foundPairs = new HashSet<Long>();
+        recordedPairs = new HashMap<Long, Integer>();
+        block = new int[m];
+        int nextVertex = 0;
+
+        while (nextVertex < n || !events.isEmpty()) {
+            CrossingEvent event = events.peek();
+
+            if (event != null && (nextVertex == n || isBefore(event.x, event.y, x[order[nextVertex]], y[order[nextVertex]]))) {
+                events.poll();
+                handleCrossing(event);
+            } else {
+                int v = order[nextVertex++];
+
+                for (int i = firstEnd[v]; i < firstEnd[v + 1]; i++) {
+                    int node = status.getNode(ending[i]);
+                    int below = status.getPredecessor(node);
+                    int above = status.getSuccessor(node);
+
+                    status.delete(node);
+
+                    if (below >= 0 && above >= 0) {
+                        check(status.getSegment(below), status.getSegment(above));
+                    }
+                }
+
+                for (int i = firstStart[v]; i < firstStart[v + 1]; i++) {
+                    int node = status.insert(starting[i], x[v], y[v]);
+                    int below = status.getPredecessor(node);
+                    int above = status.getSuccessor(node);
+
+                    if (below >= 0) {
+                        check(status.getSegment(below), starting[i]);
+                    }
+
+                    if (above >= 0) {
+                        check(starting[i], status.getSegment(above));
+                    }
+                }
+            }
+        }
+
+        // Free the sweep structures
+        status = null;
+        events = null;
+        foundPairs = null;
+        recordedPairs = null;
+        block = null;
+    }
+
+    private void handleCrossing(CrossingEvent event) {
+        if (recordedPairs.containsKey(getPair(event.segA, event.segB))) {
+            return; // Already handled as part of a crossing of more than two edges
+        }
+
+        int crossing = addCrossing(event.x, event.y, event.segA, event.segB);
+
+        int nodeA = status.getNode(event.segA);
+        int nodeB = status.getNode(event.segB);
+
+        if (nodeA < 0 || nodeB < 0) {
+            // Only possible if rounding made us find the crossing after one of the edges ended
+            return;
+        }
+
+        // Normally the two edges are neighbours, but where more edges cross
+        // at the same point, those edges lie between them
+        int lower = -1, upper = -1;
+        int upFromA = nodeA, upFromB = nodeB;
+
+        while (lower < 0) {
+            if (upFromA >= 0) {
+                upFromA = status.getSuccessor(upFromA);
+
+                if (upFromA == nodeB) {
+                    lower = nodeA;
+                    upper = nodeB;
+                }
+            }
+
+            if (upFromB >= 0 && lower < 0) {
+                upFromB = status.getSuccessor(upFromB);
+
+                if (upFromB == nodeA) {
+                    lower = nodeB;
+                    upper = nodeA;
+                }
+            }
+        }
+
+        // The edges through one point are contiguous in the status, but rounding can place the crossing of an
+        // edge just outside the block slightly away from this one, so add the neighbours that pass through it
+        for (int below = status.getPredecessor(lower); below >= 0 && passesThrough(status.getSegment(below), status.getSegment(lower), event); below = status.getPredecessor(lower)) {
+            lower = below;
+        }
+
+        for (int above = status.getSuccessor(upper); above >= 0 && passesThrough(status.getSegment(above), status.getSegment(upper), event); above = status.getSuccessor(upper)) {
+            upper = above;
+        }
+
+        int k = 0;
+
+        for (int node = lower; node != upper; node = status.getSuccessor(node)) {
+            block[k++] = status.getSegment(node);
+        }
+
+        block[k++] = status.getSegment(upper);
+
+        // All edges in the block pass through the crossing; past it, their order is given by their directions
+        for (int i = 1; i < k; i++) {
+            int seg = block[i];
+            int j = i - 1;
+
+            while (j >= 0 && isBelowAfterCrossing(seg, block[j])) {
+                block[j + 1] = block[j];
+                j--;
+            }
+
+            block[j + 1] = seg;
+        }
+
+        if (k > 2) {
+            // All edges in the block pass through this crossing. Two edges cross at most once, so pairs that
+            // were handled before, as part of a smaller block, crossed here as well.
+            for (int i = 0; i < k; i++) {
+                for (int j = i + 1; j < k; j++) {
+                    Integer other = recordedPairs.get(getPair(block[i], block[j]));
+
+                    if (other != null) {
+                        union(crossing, other);
+                    } else if (crossesProperly(block[i], block[j])) {
+                        foundPairs.add(getPair(block[i], block[j]));
+                        union(crossing, addCrossing(getCrossingX(block[i], block[j]), getCrossingY(block[i], block[j]), block[i], block[j]));
+                    }
+                }
+            }
+        }
+
+        int node = lower;
+
+        for (int i = 0; i < k; i++) {
+            status.setSegment(node, block[i]);
+            node = status.getSuccessor(node);
+        }
+
+        int below = status.getPredecessor(lower);
+        int above = status.getSuccessor(upper);
+
+        if (below >= 0) {
+            check(status.getSegment(below), block[0]);
+        }
+
+        for (int i = 1; i < k; i++) {
+            check(block[i - 1], block[i]);
+        }
+
+        if (above >= 0) {
+            check(block[k - 1], status.getSegment(above));
+        }
+    }
+
+    /**
+     * Adds a crossing event for segments s and t if they cross properly and
+     * this crossing has not been found before.
+     */
+    private void check(int s, int t) {
+        if (crossesProperly(s, t) && foundPairs.add(getPair(s, t))) {
+            events.add(new CrossingEvent(getCrossingX(s, t), getCrossingY(s, t), s, t));
+        }
+    }
+
+    /**
+     * Returns true if segment s crosses its neighbour t at the point of the
+     * given event, up to the tolerance.
+     */
+    private boolean passesThrough(int s, int t, CrossingEvent event) {
+        return crossesProperly(s, t)
+                && Math.abs(getCrossingX(s, t) - event.x) <= tolerance
+                && Math.abs(getCrossingY(s, t) - event.y) <= tolerance;
+    }
+
+    private long getPair(int s, int t) {
+        return (long) Math.min(s, t) * segLeft.length + Math.max(s, t);
+    }
+
+    private boolean crossesProperly(int s, int t) {
+        int a = segLeft[s], b = segRight[s];
+        int c = segLeft[t], d = segRight[t];
+
+        if (a == c || a == d || b == c || b == d) {
+            return false;
+        }
+
+        double o1 = orientation(a, b, c);
+        double o2 = orientation(a, b, d);
+        double o3 = orientation(c, d, a);
+        double o4 = orientation(c, d, b);
+
+        return (o1 < 0 && o2 > 0 || o1 > 0 && o2 < 0) && (o3 < 0 && o4 > 0 || o3 > 0 && o4 < 0);
+    }
+
+    private double getCrossingX(int s, int t) {
+        int a = segLeft[s], b = segRight[s];
+        return x[a] + getCrossingFraction(s, t) * (x[b] - x[a]);
+    }
+
+    private double getCrossingY(int s, int t) {
+        int a = segLeft[s], b = segRight[s];
+        return y[a] + getCrossingFraction(s, t) * (y[b] - y[a]);
+    }
+
+    /**
+     * Returns how far along segment s its crossing with t lies.
+     */
+    private double getCrossingFraction(int s, int t) {
+        double o3 = orientation(segLeft[t], segRight[t], segLeft[s]);
+        double o4 = orientation(segLeft[t], segRight[t], segRight[s]);
+        return o3 / (o3 - o4);
+    }
+
+    private boolean isZeroLength(int s) {
+        return x[segLeft[s]] == x[segRight[s]] && y[segLeft[s]] == y[segRight[s]];
+    }
+
+    private double orientation(int a, int b, int c) {
+        return (x[b] - x[a]) * (y[c] - y[a]) - (y[b] - y[a]) * (x[c] - x[a]);
+    }
+
+    /**
+     * Records the crossing of segments s and t and returns its index.
+     */
+    private int addCrossing(double cx, double cy, int s, int t) {
+        if (nCrossings == crossingX.length) {
+            int size = 2 * nCrossings;
+            crossingX = Arrays.copyOf(crossingX, size);
+            crossingY = Arrays.copyOf(crossingY, size);
+            crossingA = Arrays.copyOf(crossingA, size);
+            crossingB = Arrays.copyOf(crossingB, size);
+            crossingParent = Arrays.copyOf(crossingParent, size);
+        }
+
+        crossingX[nCrossings] = cx;
+        crossingY[nCrossings] = cy;
+        crossingA[nCrossings] = s;
+        crossingB[nCrossings] = t;
+        crossingParent[nCrossings] = nCrossings;
+        recordedPairs.put(getPair(s, t), nCrossings);
+
+        return nCrossings++;
+    }
+
+    private int find(int crossing) {
+        while (crossingParent[crossing] != crossing) {
+            crossingParent[crossing] = crossingParent[crossingParent[crossing]];
+            crossing = crossingParent[crossing];
+        }
+
+        return crossing;
+    }
+
+    /**
+     * Marks the two crossings as lying at the same point. The earliest one
+     * becomes the representative, so its coordinates are used for the shared
+     * vertex.
+     */
+    private void union(int c1, int c2) {
+        int r1 = find(c1);
+        int r2 = find(c2);
+
+        if (r1 < r2) {
+            crossingParent[r2] = r1;
+        } else if (r2 < r1) {
+            crossingParent[r1] = r2;
+        }
+    }
+
+    private void buildPlanarGraph() {
+        int n = x.length;
+        int m = segLeft.length;
+
+        planarGraph = new Graph();
+
+        Map<GraphVertex, GraphVertex> vertexMap = new IdentityHashMap<GraphVertex, GraphVertex>(2 * n);
+        List<GraphVertex> newVertices = new ArrayList<GraphVertex>(n + nCrossings);
+
+        for (GraphVertex v : vertices) {
+            GraphVertex newV = new GraphVertex(v.getX(), v.getY(), v.isVisible());
+            newVertices.add(newV);
+            vertexMap.put(v, newV);
+        }
+
+        // Crossings at the same point, where more than two edges meet, share the vertex of their representative
+        crossingVertices = new ArrayList<GraphVertex>(nCrossings);
+        GraphVertex[] crossingVertex = new GraphVertex[nCrossings];
+
+        for (int i = 0; i < nCrossings; i++) {
+            int root = find(i); // Never larger than i, so its vertex exists already if it is not i itself
+
+            if (root == i) {
+                crossingVertex[i] = new GraphVertex(crossingX[i], crossingY[i], false);
+                newVertices.add(crossingVertex[i]);
+                crossingVertices.add(crossingVertex[i]);
+            } else {
+                crossingVertex[i] = crossingVertex[root];
+            }
+        }
+
+        planarGraph.addVertices(newVertices);
+
+        // The crossings along each edge, from left to right: the sweep found them in this order
+        int[] firstCrossing = new int[m + 1];
+
+        for (int i = 0; i < nCrossings; i++) {
+            firstCrossing[crossingA[i] + 1]++;
+            firstCrossing[crossingB[i] + 1]++;
+        }
+
+        for (int e = 0; e < m; e++) {
+            firstCrossing[e + 1] += firstCrossing[e];
+        }
+
+        int[] crossings = new int[2 * nCrossings];
+        int[] fill = Arrays.copyOf(firstCrossing, m);
+
+        for (int i = 0; i < nCrossings; i++) {
+            crossings[fill[crossingA[i]]++] = i;
+            crossings[fill[crossingB[i]]++] = i;
+        }
+
+        for (int e = 0; e < m; e++) {
+            Edge edge = edges.get(e);
+            GraphVertex vA = vertexMap.get(edge.getVA());
+            GraphVertex vB = vertexMap.get(edge.getVB());
+            boolean fromLeft = (vertexMap.get(vertices.get(segLeft[e])) == vA);
+            GraphVertex previous = vA;
+
+            for (int i = 0; i < firstCrossing[e + 1] - firstCrossing[e]; i++) {
+                int crossing = (fromLeft ? crossings[firstCrossing[e] + i] : crossings[firstCrossing[e + 1] - 1 - i]);
+                GraphVertex next = crossingVertex[crossing];
+
+                if (next != previous) { // Consecutive crossings with edges through the same point share a vertex
+                    planarGraph.addEdge(previous, next, edge.isDirected());
+                    previous = next;
+                }
+            }
+
+            planarGraph.addEdge(previous, vB, edge.isDirected());
+        }
+
+        for (Constraint constraint : graph.getConstraints()) {
+            planarGraph.addConstraint(vertexMap.get(constraint.getVA()), vertexMap.get(constraint.getVB()));
+        }
+    }
+
+    /**
+     * Returns true if segment s, which starts at the sweep point (px, py),
+     * lies below segment t just to the right of the sweep line.
+     */
+    private boolean isBelow(int s, int t, double px, double py) {
+        double yt = getYAt(t, px, py);
+
+        if (py != yt) {
+            return py < yt;
+        }
+
+        // Both pass through the sweep point: compare their directions
+        return isBelowAfterCrossing(s, t);
+    }
+
+    /**
+     * Returns true if segment s lies below segment t just to the right of
+     * a point that both pass through.
+     */
+    private boolean isBelowAfterCrossing(int s, int t) {
+        double dxs = x[segRight[s]] - x[segLeft[s]];
+        double dys = y[segRight[s]] - y[segLeft[s]];
+        double dxt = x[segRight[t]] - x[segLeft[t]];
+        double dyt = y[segRight[t]] - y[segLeft[t]];
+
+        return dxs * dyt - dys * dxt > 0;
+    }
+
+    /**
+     * Returns the y-coordinate of segment t on the vertical line through the
+     * sweep point. Vertical segments are treated as the point on them closest
+     * to the sweep point.
+     */
+    private double getYAt(int t, double px, double py) {
+        int a = segLeft[t], b = segRight[t];
+
+        if (x[a] == x[b]) {
+            return Math.max(y[a], Math.min(y[b], py));
+        } else if (px == x[a]) {
+            return y[a];
+        } else if (px == x[b]) {
+            return y[b];
+        } else {
+            return y[a] + (px - x[a]) * (y[b] - y[a]) / (x[b] - x[a]);
+        }
+    }
+
+    /**
+     * Returns true if (x1, y1) comes before (x2, y2) in the order of the
+     * sweep: by x-coordinate, and by y-coordinate on the same vertical line.
+     */
+    private static boolean isBefore(double x1, double y1, double x2, double y2) {
+        return x1 < x2 || (x1 == x2 && y1 < y2);
+    }
+
+    private static class CrossingEvent implements Comparable<CrossingEvent> {
+
+        final double x, y;
+        final int segA, segB;
+
+        CrossingEvent(double x, double y, int segA, int segB) {
+            this.x = x;
+            this.y = y;
+            this.segA = segA;
+            this.segB = segB;
+        }
+
+        @Override
+        public int compareTo(CrossingEvent o) {
+            if (x != o.x) {
+                return Double.compare(x, o.x);
+            } else {
+                return Double.compare(y, o.y);
+            }
+        }
+    }
+
+    /**
+     * The edges that intersect the sweep line, ordered from bottom to top in a
+     * treap. Tree nodes are taken from a free list; a crossing reorders the
+     * edges stored in a run of neighbouring nodes instead of restructuring the
+     * tree.
+     */
+    private class SweepStatus {
+
+        private final int[] left, right, parent, priority;
+        private final int[] segment; // The edge stored in each node
+        private final int[] node; // The node storing each edge, or -1
+        private final int[] free;
+        private int nFree;
+        private int root = -1;
+
+        SweepStatus(int m) {
+            left = new int[m];
+            right = new int[m];
+            parent = new int[m];
+            priority = new int[m];
+            segment = new int[m];
+            node = new int[m];
+            free = new int[m];
+
+            Random rand = new Random(m);
+
+            for (int i = 0; i < m; i++) {
+                priority[i] = rand.nextInt();
+                node[i] = -1;
+                free[i] = m - 1 - i;
+            }
+
+            nFree = m;
+        }
+
+        int getNode(int s) {
+            return node[s];
+        }
+
+        int getSegment(int nd) {
+            return segment[nd];
+        }
+
+        /**
+         * Inserts segment s, which starts at the current sweep point (px, py),
+         * and returns its node.
+         */
+        int insert(int s, double px, double py) {
+            int nd = free[--nFree];
+            left[nd] = -1;
+            right[nd] = -1;
+            segment[nd] = s;
+            node[s] = nd;
+
+            if (root < 0) {
+                parent[nd] = -1;
+                root = nd;
+                return nd;
+            }
+
+            int current = root;
+
+            while (true) {
+                if (isBelow(s, segment[current], px, py)) {
+                    if (left[current] < 0) {
+                        left[current] = nd;
+                        break;
+                    }
+
+                    current = left[current];
+                } else {
+                    if (right[current] < 0) {
+                        right[current] = nd;
+                        break;
+                    }
+
+                    current = right[current];
+                }
+            }
+
+            parent[nd] = current;
+
+            while (parent[nd] >= 0 && priority[nd] > priority[parent[nd]]) {
+                rotateUp(nd);
+            }
+
+            return nd;
+        }
+
+        void delete(int nd) {
+            // Rotate the node down to a leaf
+            while (left[nd] >= 0 || right[nd] >= 0) {
+                int child;
+
+                if (left[nd] < 0) {
+                    child = right[nd];
+                } else if (right[nd] < 0) {
+                    child = left[nd];
+                } else {
+                    child = (priority[left[nd]] > priority[right[nd]] ? left[nd] : right[nd]);
+                }
+
+                rotateUp(child);
+            }
+
+            int p = parent[nd];
+
+            if (p < 0) {
+                root = -1;
+            } else if (left[p] == nd) {
+                left[p] = -1;
+            } else {
+                right[p] = -1;
+            }
+
+            node[segment[nd]] = -1;
+            free[nFree++] = nd;
+        }
+
+        void setSegment(int nd, int s) {
+            segment[nd] = s;
+            node[s] = nd;
+        }
+
+        int getSuccessor(int nd) {
+            if (right[nd] >= 0) {
+                nd = right[nd];
+
+                while (left[nd] >= 0) {
+                    nd = left[nd];
+                }
+
+                return nd;
+            }
+
+            while (parent[nd] >= 0 && right[parent[nd]] == nd) {
+                nd = parent[nd];
+            }
+
+            return parent[nd];
+        }
+
+        int getPredecessor(int nd) {
+            if (left[nd] >= 0) {
+                nd = left[nd];
+
+                while (right[nd] >= 0) {
+                    nd = right[nd];
+                }
+
+                return nd;
+            }
+
+            while (parent[nd] >= 0 && left[parent[nd]] == nd) {
+                nd = parent[nd];
+            }
+
+            return parent[nd];
+        }
+
+        private void rotateUp(int nd) {
+            int p = parent[nd];
+            int g = parent[p];
+
+            if (left[p] == nd) {
+                left[p] = right[nd];
+
+                if (right[nd] >= 0) {
+                    parent[right[nd]] = p;
+                }
+
+                right[nd] = p;
+            } else {
+                right[p] = left[nd];
+
+                if (left[nd] >= 0) {
+                    parent[left[nd]] = p;
+                }
+
+                left[nd] = p;
+            }
+
+            parent[p] = nd;
+            parent[nd] = g;
+
+            if (g < 0) {
+                root = nd;
+            } else if (left[g] == p) {
+                left[g] = nd;
+            } else {
+                right[g] = nd;
+            }
+        }
+    }
+}
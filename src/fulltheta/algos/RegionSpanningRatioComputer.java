@@ -0,0 +1,392 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.CompactGraph;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import java.awt.Shape;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the spanning ratio over the pairs of vertices whose source lies in
+ * a given region, for instance the centre of a random point set, away from
+ * the boundary effects near its edges.
+ *
+ * Optionally, only targets within a given Euclidean radius of the source are
+ * considered. The shortest path search from each source then stops as soon as
+ * all of its targets are settled, so it only explores a neighbourhood of the
+ * source instead of the whole graph. Targets are counted with a uniform grid.
+ *
+ * Edge directions are respected. Sources are spread over several threads.
+ */
+public class RegionSpanningRatioComputer {
+
+    private final Graph graph;
+    private final Shape region;
+    private final double radius;
+    private final StretchReport report;
+    private final int nThreads;
+    private CompactGraph compact;
+    private int[] sources;
+    private double spanningRatio;
+    private List<Edge> maximalPath;
+    private long settledVertices;
+    private boolean computed = false;
+
+    /**
+     * Creates a computer for all pairs whose source lies in the given region.
+     *
+     * @param graph
+     * @param region
+     */
+    public RegionSpanningRatioComputer(Graph graph, Shape region) {
+        this(graph, region, Double.POSITIVE_INFINITY, null, Parallel.getDefaultThreadCount());
+    }
+
+    /**
+     * Creates a computer for the pairs whose source lies in the given region
+     * and whose target lies within the given distance of the source.
+     *
+     * @param graph
+     * @param region
+     * @param radius
+     */
+    public RegionSpanningRatioComputer(Graph graph, Shape region, double radius) {
+        this(graph, region, radius, null, Parallel.getDefaultThreadCount());
+    }
+
+    /**
+     * Creates a computer for the pairs whose source lies in the given region
+     * and whose target lies within the given distance of the source. Every
+     * such pair is recorded in the report, if it is not <code>null</code>.
+     *
+     * @param graph
+     * @param region
+     * @param radius
+     * @param report
+     * @param nThreads
+     */
+    public RegionSpanningRatioComputer(Graph graph, Shape region, double radius, StretchReport report, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        if (!(radius > 0)) {
+            throw new IllegalArgumentException("The radius must be positive.");
+        }
+
+        this.graph = graph;
+        this.region = region;
+        this.radius = radius;
+        this.report = report;
+        this.nThreads = nThreads;
+    }
+
+    public double getSpanningRatio() {
+        if (!computed) {
+            computeSpanningRatio();
+        }
+
+        return spanningRatio;
+    }
+
+    public List<Edge> getMaximalPath() {
+        if (!computed) {
+            computeSpanningRatio();
+        }
+
+        return maximalPath;
+    }
+
+    public StretchReport getReport() {
+        if (!computed) {
+            computeSpanningRatio();
+        }
+
+        return report;
+    }
+
+    /**
+     * Returns the number of vertices in the region.
+     *
+     * @return
+     */
+    public int getSourceCount() {
+        if (!computed) {
+            computeSpanningRatio();
+        }
+
+        return sources.length;
+    }
+
+    /**
+     * Returns the total number of vertices settled by all searches, as a
+     * measure of the work done.
+     *
+     * @return
+     */
+    public long getSettledCount() {
+        if (!computed) {
+            computeSpanningRatio();
+        }
+
+        return settledVertices;
+    }
+
+    private void computeSpanningRatio() {
+        compact = new CompactGraph(graph, true);
+        int n = compact.getVertexCount();
+
+        // Find the sources
+        int nSources = 0;
+        int[] inside = new int[n];
+
+        for (int v = 0; v < n; v++) {
+            if (region.contains(compact.getX(v), compact.getY(v))) {
+                inside[nSources++] = v;
+            }
+        }
+
+        sources = new int[nSources];
+        System.arraycopy(inside, 0, sources, 0, nSources);
+
+        final Grid grid = (radius < Double.POSITIVE_INFINITY ? new Grid(compact, radius) : null);
+        final AtomicInteger nextSource = new AtomicInteger(0);
+        List<SourceWorker> workers = new ArrayList<SourceWorker>(nThreads);
+
+        for (int t = 0; t < Math.min(nThreads, Math.max(nSources, 1)); t++) {
+            workers.add(new SourceWorker(grid, nextSource, report == null ? null : report.emptyCopy()));
+        }
+
+        Parallel.run(workers);
+
+        // Combine the results of the workers
+        spanningRatio = 0;
+        settledVertices = 0;
+        int maxSRi = -1;
+        int maxSRj = -1;
+
+        for (SourceWorker worker : workers) {
+            // Break ties by source, so the result does not depend on scheduling
+            if (worker.maxSRi >= 0 && (maxSRi < 0 || worker.maxSR > spanningRatio
+                    || (worker.maxSR == spanningRatio && worker.maxSRi < maxSRi))) {
+                spanningRatio = worker.maxSR;
+                maxSRi = worker.maxSRi;
+                maxSRj = worker.maxSRj;
+            }
+
+            settledVertices += worker.settled;
+
+            if (report != null) {
+                report.merge(worker.report);
+            }
+        }
+
+        // Reconstruct the path corresponding to the maximum spanning ratio
+        DijkstraSearch search = new DijkstraSearch(compact);
+
+        if (maxSRi < 0) {
+            maximalPath = new ArrayList<Edge>();
+        } else {
+            search.run(maxSRi);
+            maximalPath = search.getPath(maxSRj);
+        }
+
+        if (report != null) {
+            for (StretchReport.WorstPair pair : report.getWorstPairs()) {
+                search.run(pair.getSourceIndex());
+                pair.setPath(compact.getVertex(pair.getSourceIndex()), compact.getVertex(pair.getTargetIndex()), search.getPath(pair.getTargetIndex()));
+            }
+        }
+
+        computed = true;
+    }
+
+    /**
+     * A uniform grid with cells of size radius x radius, used to count the
+     * vertices within the radius of a source.
+     */
+    private static class Grid {
+
+        private final CompactGraph graph;
+        private final double radius;
+        private final double minX, minY;
+        private final double cellSize;
+        private final int nColumns, nRows;
+        private final int[] firstVertex; // The vertices of cell c are vertices[firstVertex[c] .. firstVertex[c + 1] - 1]
+        private final int[] vertices;
+
+        Grid(CompactGraph graph, double radius) {
+            this.graph = graph;
+            this.radius = radius;
+
+            int n = graph.getVertexCount();
+            double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+            for (int v = 0; v < n; v++) {
+                minX = Math.min(minX, graph.getX(v));
+                minY = Math.min(minY, graph.getY(v));
+                maxX = Math.max(maxX, graph.getX(v));
+                maxY = Math.max(maxY, graph.getY(v));
+            }
+
+            this.minX = minX;
+            this.minY = minY;
+
+            // Limit the number of cells for tiny radii
+            cellSize = Math.max(radius, Math.max(maxX - minX, maxY - minY) / 4096);
+            nColumns = (n == 0 ? 1 : (int) ((maxX - minX) / cellSize) + 1);
+            nRows = (n == 0 ? 1 : (int) ((maxY - minY) / cellSize) + 1);
+
+            firstVertex = new int[nColumns * nRows + 1];
+            int[] cell = new int[n];
+
+            for (int v = 0; v < n; v++) {
+                cell[v] = getRow(graph.getY(v)) * nColumns + getColumn(graph.getX(v));
+                firstVertex[cell[v] + 1]++;
+            }
+
+            for (int c = 0; c < nColumns * nRows; c++) {
+                firstVertex[c + 1] += firstVertex[c];
+            }
+
+            vertices = new int[n];
+            int[] fill = new int[nColumns * nRows];
+            System.arraycopy(firstVertex, 0, fill, 0, fill.length);
+
+            for (int v = 0; v < n; v++) {
+                vertices[fill[cell[v]]++] = v;
+            }
+        }
+
+        private int getColumn(double x) {
+            return Math.min(nColumns - 1, (int) ((x - minX) / cellSize));
+        }
+
+        private int getRow(double y) {
+            return Math.min(nRows - 1, (int) ((y - minY) / cellSize));
+        }
+
+        /**
+         * Returns the number of vertices other than s within the radius of s.
+         */
+        int countTargets(int s) {
+            double sx = graph.getX(s);
+            double sy = graph.getY(s);
+            int col0 = Math.max(0, (int) Math.floor((sx - radius - minX) / cellSize));
+            int col1 = getColumn(sx + radius);
+            int row0 = Math.max(0, (int) Math.floor((sy - radius - minY) / cellSize));
+            int row1 = getRow(sy + radius);
+            int count = 0;
+
+            for (int row = row0; row <= row1; row++) {
+                for (int col = col0; col <= col1; col++) {
+                    int c = row * nColumns + col;
+
+                    for (int i = firstVertex[c]; i < firstVertex[c + 1]; i++) {
+                        int v = vertices[i];
+
+                        if (v != s && graph.getDistance(s, v) <= radius) {
+                            count++;
+                        }
+                    }
+                }
+            }
+
+            return count;
+        }
+    }
+
+    private class SourceWorker implements Runnable {
+
+        private final Grid grid;
+        private final AtomicInteger nextSource;
+        private final StretchReport report;
+        private double maxSR = 0;
+        private int maxSRi = -1;
+        private int maxSRj = -1;
+        private long settled = 0;
+
+        SourceWorker(Grid grid, AtomicInteger nextSource, StretchReport report) {
+            this.grid = grid;
+            this.nextSource = nextSource;
+            this.report = report;
+        }
+
+        @Override
+        public void run() {
+            int n = compact.getVertexCount();
+            DijkstraSearch search = new DijkstraSearch(compact);
+
+            for (int k = nextSource.getAndIncrement(); k < sources.length; k = nextSource.getAndIncrement()) {
+                int i = sources[k];
+                int nTargets = (grid == null ? n - 1 : grid.countTargets(i));
+                int found = 0;
+
+                search.initialize(i);
+
+                // Settle vertices until all targets are found; unreachable targets keep the search going to the end
+                while (found < nTargets) {
+                    int j = search.next();
+
+                    if (j < 0) {
+                        break;
+                    }
+
+                    if (j != i && compact.getDistance(i, j) <= radius) {
+                        found++;
+                        record(i, j, search.getDistance(j) / compact.getDistance(i, j));
+                    }
+                }
+
+                settled += search.getSettledCount();
+
+                // Targets that were never settled cannot be reached
+                if (found < nTargets) {
+                    for (int j = 0; j < n; j++) {
+                        if (j != i && !search.isSettled(j) && compact.getDistance(i, j) <= radius) {
+                            record(i, j, Double.POSITIVE_INFINITY);
+                        }
+                    }
+                }
+            }
+        }
+
+        private void record(int i, int j, double sr) {
+            if (report != null) {
+                report.add(i, j, sr);
+            }
+
+            if (sr > maxSR) {
+                maxSR = sr;
+                maxSRi = i;
+                maxSRj = j;
+            }
+        }
+    }
+}
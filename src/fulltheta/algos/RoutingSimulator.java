@@ -0,0 +1,475 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.GraphVertex;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates local routing on the Theta- or Yao-graph defined by a set of
+ * cones: at every step, the message is forwarded to the closest vertex in
+ * the cone of the current vertex that contains the target.
+ *
+ * The closest vertex in every cone of every vertex is looked up once, using
+ * the Cones index, and stored in a table. A route then takes constant time
+ * per step and only its length and number of steps are kept. For half-Theta
+ * and half-Yao cones, the target can lie in a direction without a cone. In
+ * that case the message goes to the neighbour, along an edge in either
+ * direction, that is closest to the target. Routes that do not arrive within
+ * the step limit count as failures.
+ *
+ * Routing ratios are collected in a StretchReport, where failed routes count
+ * as disconnected pairs. Queries are spread over several threads.
+ */
+public class RoutingSimulator {
+
+    private static final int CHUNK_SIZE = 1024; // Number of queries a thread takes at a time
+    private final List<GraphVertex> vertices;
+    private final Cones cones;
+    private final int nThreads;
+    private final int nCones;
+    private final double[] x, y;
+    private final int[] closest; // closest[v * nCones + c] is the closest vertex in cone c of v, or -1
+    private final int[] firstNeighbour; // Neighbours of v along edges in either direction, for the fallback
+    private final int[] neighbours;
+    private int maxSteps;
+    private long succeededRoutes; // Statistics of the last simulation
+    private long totalSteps;
+    private int maxStepsTaken;
+
+    public RoutingSimulator(List<GraphVertex> vertices, Cones cones) {
+        this(vertices, cones, Parallel.getDefaultThreadCount());
+    }
+
+    /**
+     * Prepares routing on the graph defined by the given vertices and cones.
+     * This calls <code>setVertices</code> on the cones.
+     *
+     * @param vertices
+     * @param cones
+     * @param nThreads
+     */
+    public RoutingSimulator(List<GraphVertex> vertices, Cones cones, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        this.vertices = new ArrayList<GraphVertex>(vertices);
+        this.cones = cones;
+        this.nThreads = nThreads;
+        this.nCones = cones.getCones().length;
+
+        int n = this.vertices.size();
+        x = new double[n];
+        y = new double[n];
+
+        for (int i = 0; i < n; i++) {
+            x[i] = this.vertices.get(i).getX();
+            y[i] = this.vertices.get(i).getY();
+        }
+
+        maxSteps = Math.max(n, 1);
+
+        closest = buildRoutingTable();
+
+        // Collect the neighbours of each vertex for the fallback
+        firstNeighbour = new int[n + 1];
+
+        for (int v = 0; v < n; v++) {
+            for (int c = 0; c < nCones; c++) {
+                int w = closest[v * nCones + c];
+
+                if (w >= 0) {
+                    firstNeighbour[v + 1]++;
+                    firstNeighbour[w + 1]++;
+                }
+            }
+        }
+
+        for (int v = 0; v < n; v++) {
+            firstNeighbour[v + 1] += firstNeighbour[v];
+        }
+
+        neighbours = new int[firstNeighbour[n]];
+        int[] fill = new int[n];
+        System.arraycopy(firstNeighbour, 0, fill, 0, n);
+
+        for (int v = 0; v < n; v++) {
+            for (int c = 0; c < nCones; c++) {
+                int w = closest[v * nCones + c];
+
+                if (w >= 0) {
+                    neighbours[fill[v]++] = w;
+                    neighbours[fill[w]++] = v;
+                }
+            }
+        }
+    }
+
+    public List<GraphVertex> getVertices() {
+        return vertices;
+    }
+
+    public Cones getCones() {
+        return cones;
+    }
+
+    /**
+     * Returns the maximum number of steps a route may take before it is
+     * considered to have failed. This is the number of vertices by default.
+     *
+     * @return
+     */
+    public int getMaxSteps() {
+        return maxSteps;
+    }
+
+    public void setMaxSteps(int maxSteps) {
+        this.maxSteps = maxSteps;
+    }
+
+    /**
+     * Routes from the vertex with index s to the one with index t and returns
+     * the length of the route divided by the distance between them, or
+     * infinity if the route fails.
+     *
+     * @param s
+     * @param t
+     * @return
+     */
+    public double getRoutingRatio(int s, int t) {
+        return route(s, t, null) / getDistance(s, t);
+    }
+
+    /**
+     * Returns the vertices visited by the route from s to t, starting with s.
+     * The last vertex is t, unless the route failed. Both vertices must be
+     * part of the graph.
+     *
+     * @param s
+     * @param t
+     * @return
+     * @throws IllegalArgumentException
+     */
+    public List<GraphVertex> getRoute(GraphVertex s, GraphVertex t) {
+        Map<GraphVertex, Integer> index = new IdentityHashMap<GraphVertex, Integer>(2 * vertices.size());
+
+        for (int i = 0; i < vertices.size(); i++) {
+            index.put(vertices.get(i), i);
+        }
+
+        Integer sIndex = index.get(s);
+        Integer tIndex = index.get(t);
+
+        if (sIndex == null || tIndex == null) {
+            throw new IllegalArgumentException("Both endpoints of a route must be vertices of the graph.");
+        }
+
+        List<GraphVertex> route = new ArrayList<GraphVertex>();
+        route(sIndex, tIndex, route);
+        return route;
+    }
+
+    /**
+     * Routes between the given number of random pairs of distinct vertices
+     * and adds their routing ratios to the report. The pairs only depend on the
+     * seed, not on the number of threads.
+     *
+     * @param nQueries
+     * @param seed
+     * @param report
+     * @return the report
+     */
+    public StretchReport simulate(final long nQueries, final long seed, StretchReport report) {
+        final int n = vertices.size();
+
+        if (n < 2) {
+            throw new IllegalArgumentException("Routing needs at least two vertices.");
+        }
+
+        return run(nQueries, report, new QuerySource() {
+
+            @Override
+            public void getQuery(long q, int[] pair) {
+                long bits = mix(seed + q);
+                int s = (int) ((bits >>> 32) % n);
+                int t = (int) ((bits & 0xFFFFFFFFL) % (n - 1));
+
+                pair[0] = s;
+                pair[1] = (t >= s ? t + 1 : t); // Skip s itself
+            }
+        });
+    }
+
+    /**
+     * Routes from sources[i] to targets[i] for every i and adds their routing
+     * ratios to the report.
+     *
+     * @param sources
+     * @param targets
+     * @param report
+     * @return the report
+     */
+    public StretchReport simulate(final int[] sources, final int[] targets, StretchReport report) {
+        if (sources.length != targets.length) {
+            throw new IllegalArgumentException("There must be as many sources as targets.");
+        }
+
+        return run(sources.length, report, new QuerySource() {
+
+            @Override
+            public void getQuery(long q, int[] pair) {
+                pair[0] = sources[(int) q];
+                pair[1] = targets[(int) q];
+            }
+        });
+    }
+
+    /**
+     * Returns the average number of steps of the successful routes in the
+     * last simulation.
+     *
+     * @return
+     */
+    public double getAverageSteps() {
+        return (succeededRoutes == 0 ? 0 : totalSteps / (double) succeededRoutes);
+    }
+
+    /**
+     * Returns the largest number of steps of a successful route in the last
+     * simulation.
+     *
+     * @return
+     */
+    public int getMaxStepsTaken() {
+        return maxStepsTaken;
+    }
+
+    private StretchReport run(long nQueries, StretchReport report, final QuerySource queries) {
+        final long total = nQueries;
+        final AtomicLong nextChunk = new AtomicLong(0);
+        List<QueryWorker> workers = new ArrayList<QueryWorker>(nThreads);
+        long nChunks = (total + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        for (int t = 0; t < Math.min(nThreads, Math.max(nChunks, 1)); t++) {
+            workers.add(new QueryWorker(queries, total, nextChunk, report.emptyCopy()));
+        }
+
+        Parallel.run(workers);
+
+        succeededRoutes = 0;
+        totalSteps = 0;
+        maxStepsTaken = 0;
+
+        for (QueryWorker worker : workers) {
+            report.merge(worker.report);
+            succeededRoutes += worker.succeeded;
+            totalSteps += worker.totalSteps;
+            maxStepsTaken = Math.max(maxStepsTaken, worker.maxSteps);
+        }
+
+        return report;
+    }
+
+    /**
+     * Routes from s to t and returns the length of the route, or infinity if
+     * it fails. If the given list is not null, the visited vertices are added
+     * to it.
+     */
+    private double route(int s, int t, List<GraphVertex> visited) {
+        return route(s, t, visited, null);
+    }
+
+    private double route(int s, int t, List<GraphVertex> visited, int[] steps) {
+        int current = s;
+        double length = 0;
+        int step = 0;
+
+        if (visited != null) {
+            visited.add(vertices.get(s));
+        }
+
+        while (current != t) {
+            if (step == maxSteps) {
+                return Double.POSITIVE_INFINITY;
+            }
+
+            int cone = getConeIndex(current, t);
+            int next = (cone < 0 ? -1 : closest[current * nCones + cone]);
+
+            if (next < 0) {
+                next = getClosestNeighbour(current, t);
+
+                if (next < 0) {
+                    return Double.POSITIVE_INFINITY;
+                }
+            }
+
+            length += getDistance(current, next);
+            current = next;
+            step++;
+
+            if (visited != null) {
+                visited.add(vertices.get(current));
+            }
+        }
+
+        if (steps != null) {
+            steps[0] = step;
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns the index of the cone of v that contains t, or -1 if there is
+     * none. This is the cone that the spanner construction picks as well, so
+     * both agree on the borders of the cones.
+     */
+    private int getConeIndex(int v, int t) {
+        return cones.getConeIndex(vertices.get(v), vertices.get(t));
+    }
+
+    private int getClosestNeighbour(int v, int t) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+
+        for (int i = firstNeighbour[v]; i < firstNeighbour[v + 1]; i++) {
+            double d = getDistance(neighbours[i], t);
+
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = neighbours[i];
+            }
+        }
+
+        return best;
+    }
+
+    private double getDistance(int u, int v) {
+        double dx = x[v] - x[u];
+        double dy = y[v] - y[u];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private int[] buildRoutingTable() {
+        final int n = vertices.size();
+        final int[] table = new int[n * nCones];
+        final Map<GraphVertex, Integer> index = new IdentityHashMap<GraphVertex, Integer>(2 * n);
+
+        for (int i = 0; i < n; i++) {
+            index.put(vertices.get(i), i);
+        }
+
+        cones.setVertices(vertices);
+
+        final AtomicInteger nextVertex = new AtomicInteger(0);
+        List<Runnable> workers = new ArrayList<Runnable>(nThreads);
+
+        for (int t = 0; t < Math.min(nThreads, Math.max(n, 1)); t++) {
+            workers.add(new Runnable() {
+
+                @Override
+                public void run() {
+                    Cone[] c = cones.getCones();
+
+                    for (int v = nextVertex.getAndIncrement(); v < n; v = nextVertex.getAndIncrement()) {
+                        for (int i = 0; i < nCones; i++) {
+                            GraphVertex w = cones.getClosestVertexInCone(vertices.get(v), c[i]);
+                            table[v * nCones + i] = (w == null ? -1 : index.get(w));
+                        }
+                    }
+                }
+            });
+        }
+
+        Parallel.run(workers);
+        return table;
+    }
+
+    /**
+     * A 64-bit mixing function (SplitMix64), so that consecutive query numbers
+     * give unrelated pairs.
+     */
+    private static long mix(long z) {
+        z += 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private interface QuerySource {
+
+        /**
+         * Stores the source and target of query q in pair[0] and pair[1].
+         */
+        void getQuery(long q, int[] pair);
+    }
+
+    private class QueryWorker implements Runnable {
+
+        private final QuerySource queries;
+        private final long nQueries;
+        private final AtomicLong nextChunk;
+        private final StretchReport report;
+        private long succeeded = 0;
+        private long totalSteps = 0;
+        private int maxSteps = 0;
+
+        QueryWorker(QuerySource queries, long nQueries, AtomicLong nextChunk, StretchReport report) {
+            this.queries = queries;
+            this.nQueries = nQueries;
+            this.nextChunk = nextChunk;
+            this.report = report;
+        }
+
+        @Override
+        public void run() {
+            int[] pair = new int[2];
+            int[] steps = new int[1];
+
+            for (long chunk = nextChunk.getAndIncrement(); chunk * CHUNK_SIZE < nQueries; chunk = nextChunk.getAndIncrement()) {
+                long end = Math.min(nQueries, (chunk + 1) * CHUNK_SIZE);
+
+                for (long q = chunk * CHUNK_SIZE; q < end; q++) {
+                    queries.getQuery(q, pair);
+
+                    double length = route(pair[0], pair[1], null, steps);
+                    report.add(pair[0], pair[1], length / getDistance(pair[0], pair[1]));
+
+                    if (length < Double.POSITIVE_INFINITY) {
+                        succeeded++;
+                        totalSteps += steps[0];
+                        maxSteps = Math.max(maxSteps, steps[0]);
+                    }
+                }
+            }
+        }
+    }
+}
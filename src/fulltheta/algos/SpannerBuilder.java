@@ -23,8 +23,12 @@
  */
 package fulltheta.algos;
 
+import fulltheta.data.graph.ClockwiseOrder;
+import fulltheta.data.graph.Edge;
 import fulltheta.data.graph.Graph;
 import fulltheta.data.graph.GraphVertex;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 public class SpannerBuilder {
@@ -47,9 +51,107 @@ public class SpannerBuilder {
                 graph.addEdge(v, u, directed);
             }
         }
+
+        if (cones.isPartition()) {
+            orderEdgesByCone(graph, cones);
+        }
     }
     
     public static void buildConeSpanner(Graph graph, Cones cones) {
         buildConeSpanner(graph, cones, false);
     }
+
+    /**
+     * Puts the edges around each vertex in clockwise order, starting at the
+     * first border of the first cone. The cones already split the edges into
+     * groups in clockwise order, so only the few edges in each cone need to be
+     * sorted. EmbeddedGraph accepts this order without sorting again.
+     *
+     * @param graph
+     * @param cones
+     */
+    private static void orderEdgesByCone(Graph graph, Cones cones) {
+        Cone[] c = cones.getCones();
+        int nCones = c.length;
+
+        // ClockwiseOrder starts at the negative y-axis, so the edges in the cone that contains it need to be rotated
+        boolean[] wraps = new boolean[nCones];
+
+        for (int i = 0; i < nCones; i++) {
+            wraps[i] = c[i].contains(Math.PI);
+        }
+
+        int[] start = new int[nCones + 1];
+
+        for (GraphVertex v : graph.getVertices()) {
+            List<Edge> edges = v.getEdges();
+            int degree = edges.size();
+
+            if (degree < 3) {
+                continue; // Any order is cyclically sorted
+            }
+
+            // Bucket the edges by cone
+            int[] cone = new int[degree];
+            Arrays.fill(start, 0);
+
+            for (int j = 0; j < degree; j++) {
+                cone[j] = cones.getConeIndex(v, getNeighbour(v, edges.get(j)));
+                start[cone[j] + 1]++;
+            }
+
+            for (int i = 0; i < nCones; i++) {
+                start[i + 1] += start[i];
+            }
+
+            Edge[] ordered = new Edge[degree];
+            int[] next = Arrays.copyOf(start, nCones);
+
+            for (int j = 0; j < degree; j++) {
+                ordered[next[cone[j]]++] = edges.get(j);
+            }
+
+            // Sort within each cone
+            ClockwiseOrder order = new ClockwiseOrder(v);
+
+            for (int i = 0; i < nCones; i++) {
+                int from = start[i];
+                int to = start[i + 1];
+
+                if (to - from < 2) {
+                    continue;
+                }
+
+                Arrays.sort(ordered, from, to, order);
+
+                if (wraps[i]) {
+                    // The edges clockwise from the negative y-axis come first, but belong at the end of this cone
+                    int split = from;
+
+                    while (split < to && isLeftOf(v, ordered[split])) {
+                        split++;
+                    }
+
+                    if (split > from && split < to) {
+                        Collections.rotate(Arrays.asList(ordered).subList(from, to), from - split);
+                    }
+                }
+            }
+
+            v.setEdgeOrder(Arrays.asList(ordered));
+        }
+    }
+
+    private static GraphVertex getNeighbour(GraphVertex v, Edge e) {
+        return (e.getVA() == v ? e.getVB() : e.getVA());
+    }
+
+    /**
+     * Returns true if the edge leaves v in a direction that comes before the
+     * positive y-axis in ClockwiseOrder, that is, to the left of v.
+     */
+    private static boolean isLeftOf(GraphVertex v, Edge e) {
+        GraphVertex u = getNeighbour(v, e);
+        return ClockwiseOrder.compare(u.getX() - v.getX(), u.getY() - v.getY(), 0, 1) < 0;
+    }
 }
@@ -23,22 +23,50 @@
  */
 package fulltheta.algos;
 
+import fulltheta.data.graph.CompactGraph;
 import fulltheta.data.graph.Edge;
 import fulltheta.data.graph.Graph;
-import fulltheta.data.graph.GraphVertex;
 import java.util.ArrayList;
 import java.util.List;
 
 public class SpanningRatioComputer {
 
-    private static final int DIRECT_EDGE = -1, NO_PATH = -2;
     private final Graph graph;
+    private final StretchReport report;
+    private final boolean singlePrecision;
     private double spanningRatio;
     private List<Edge> maximalPath;
     private boolean computed = false;
 
     public SpanningRatioComputer(Graph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * Creates a computer that also records every pair of vertices in the given
+     * report while it searches for the maximum spanning ratio.
+     *
+     * @param graph
+     * @param report
+     */
+    public SpanningRatioComputer(Graph graph, StretchReport report) {
+        this(graph, report, false);
+    }
+
+    /**
+     * Creates a computer that records every pair in the given report, if it
+     * is not <code>null</code>. In single precision mode, distances are stored
+     * as floats, which halves the memory use at the cost of a relative error
+     * of about 1e-7 in the spanning ratio.
+     *
+     * @param graph
+     * @param report
+     * @param singlePrecision
+     */
+    public SpanningRatioComputer(Graph graph, StretchReport report, boolean singlePrecision) {
         this.graph = graph;
+        this.report = report;
+        this.singlePrecision = singlePrecision;
     }
 
     public List<Edge> getMaximalPath() {
@@ -57,6 +85,20 @@ public class SpanningRatioComputer {
         return spanningRatio;
     }
 
+    /**
+     * Returns the report that was filled during the computation, or
+     * <code>null</code> if none was given.
+     *
+     * @return
+     */
+    public StretchReport getReport() {
+        if (!computed) {
+            computeSpanningRatio();
+        }
+
+        return report;
+    }
+
     public static double computeSpanningRatio(Graph graph) {
         SpanningRatioComputer src = new SpanningRatioComputer(graph);
         return src.getSpanningRatio();
@@ -65,61 +107,34 @@ public class SpanningRatioComputer {
     private void computeSpanningRatio() {
         // Since our graphs are sparse, we could compute all-pairs shortest path 
         // quickly using repeated invocations of Dijkstra's algorithm: O(n^2 + mn)
+        // (see DirectedSpanningRatioComputer).
 
-        // In the meantime, we'll use Floy'd algorithm, which takes O(n^3)
-        // Initialization: initialize the shortestPath matrix to be the direct cost matrix
-        int n = graph.getVertices().size();
-
-        double[][] shortestPathLength = new double[n][n];
-        int[][] path = new int[n][n];
-
-        for (int i = 0; i < n; i++) {
-            shortestPathLength[i][i] = 0;
-
-            GraphVertex vi = graph.getVertices().get(i);
+        // Here we use a blocked version of Floyd's algorithm, which takes O(n^3), but is fast for dense graphs
+        CompactGraph compact = new CompactGraph(graph, true);
+        BlockedFloydWarshall shortestPaths = new BlockedFloydWarshall(compact, singlePrecision);
+        int n = compact.getVertexCount();
+        boolean directed = false;
 
-            for (int j = i + 1; j < n; j++) {
-                Edge e = vi.getEdgeTo(graph.getVertices().get(j));
-
-                if (e == null) {
-                    shortestPathLength[i][j] = Double.POSITIVE_INFINITY;
-                    path[i][j] = NO_PATH;
-                } else {
-                    shortestPathLength[i][j] = e.getLength();
-                    path[i][j] = DIRECT_EDGE;
-                }
-
-                shortestPathLength[j][i] = shortestPathLength[i][j];
-                path[j][i] = path[i][j];
-            }
-        }
-
-        // Main loop
-        for (int k = 0; k < n; k++) {
-            // For each pair of vertices (i, j) try to use vertex k as intermediate step:
-            // If the shortest path i -> k, followed by k -> j is shorter than the current shortest path i -> j, update it.
-            for (int i = 0; i < n; i++) {
-                for (int j = i + 1; j < n; j++) {
-                    if (shortestPathLength[i][k] + shortestPathLength[k][j] < shortestPathLength[i][j]) {
-                        shortestPathLength[i][j] = shortestPathLength[i][k] + shortestPathLength[k][j];
-                        shortestPathLength[j][i] = shortestPathLength[i][j];
-                        path[i][j] = k;
-                        path[j][i] = path[i][j];
-                    }
-                }
-            }
+        for (Edge e : compact.getEdges()) {
+            directed = directed || e.isDirected();
         }
 
-        // Find the maximum spanning ratio
+        // Find the maximum spanning ratio. With directed edges, (i, j) and (j, i) can differ.
         spanningRatio = 0;
         int maxSRi = -1;
         int maxSRj = -1;
 
         for (int i = 0; i < n; i++) {
-            GraphVertex vi = graph.getVertices().get(i);
+            for (int j = (directed ? 0 : i + 1); j < n; j++) {
+                if (j == i) {
+                    continue;
+                }
 
-            for (int j = i + 1; j < n; j++) {
-                double sr = getSpanningRatio(vi, graph.getVertices().get(j), shortestPathLength[i][j]);
+                double sr = shortestPaths.getDistance(i, j) / compact.getDistance(i, j);
+
+                if (report != null) {
+                    report.add(i, j, sr);
+                }
 
                 if (sr > spanningRatio) {
                     spanningRatio = sr;
@@ -130,37 +145,16 @@ public class SpanningRatioComputer {
         }
 
         // Find the path corresponding to the maximum spanning ratio
-        maximalPath = getPath(path, maxSRi, maxSRj);
-        
-        computed = true;
-    }
+        maximalPath = (maxSRi < 0 ? new ArrayList<Edge>() : shortestPaths.getPath(maxSRi, maxSRj));
 
-    private static double getSpanningRatio(GraphVertex a, GraphVertex b, double shortestPathLength) {
-        double dx = b.getX() - a.getX();
-        double dy = b.getY() - a.getY();
-        return shortestPathLength / Math.sqrt(dx * dx + dy * dy);
-    }
-
-    private List<Edge> getPath(int[][] path, int i, int j) {
-        if (i == j) {
-            // I don't think this will ever happen. Just to be sure...
-            return new ArrayList<Edge>();
-        } else {
-            int k = path[i][j];
-
-            if (k == NO_PATH) {
-                return null;
-            } else if (k == DIRECT_EDGE) {
-                List<Edge> graphPath = new ArrayList<Edge>();
-                graphPath.add(graph.getVertices().get(i).getEdgeTo(graph.getVertices().get(j)));
-                
-                return graphPath;
-            } else {
-                List<Edge> graphPath = getPath(path, i, k);
-                graphPath.addAll(getPath(path, k, j));
-
-                return graphPath;
+        if (report != null) {
+            for (StretchReport.WorstPair pair : report.getWorstPairs()) {
+                int i = pair.getSourceIndex();
+                int j = pair.getTargetIndex();
+                pair.setPath(compact.getVertex(i), compact.getVertex(j), shortestPaths.getPath(i, j));
             }
         }
+
+        computed = true;
     }
 }
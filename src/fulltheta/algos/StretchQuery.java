@@ -0,0 +1,364 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.CompactGraph;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answers shortest path and stretch queries between two given vertices.
+ *
+ * Each query runs a bidirectional A* search. The forward search uses the
+ * potential (|vt| - |vs|) / 2 and the backward search its negation, where |vt|
+ * is the Euclidean distance from v to the target. Both potentials are
+ * consistent, so each side behaves like Dijkstra's algorithm on the same
+ * reduced edge lengths, and the search can stop as soon as the smallest keys
+ * of both queues add up to the best path found so far. On spanners this only
+ * explores a narrow region around the segment between the two vertices.
+ *
+ * Edge directions are respected. All buffers are allocated once and only the
+ * vertices touched by a query are reset, so repeated queries do not allocate
+ * beyond the returned path. Instances are not thread-safe.
+ */
+public class StretchQuery {
+
+    private final CompactGraph graph;
+    private final Side forward;
+    private final Side backward;
+    private int source = -1, target = -1;
+    private double distance;
+    private int meeting; // A vertex on the shortest path that both searches reached, or -1
+
+    public StretchQuery(Graph graph) {
+        this(new CompactGraph(graph, true));
+    }
+
+    public StretchQuery(CompactGraph graph) {
+        this.graph = graph;
+        forward = new Side(graph);
+        backward = new Side(graph.reverse());
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Computes the shortest path from the source to the target and returns
+     * its stretch: the length of the path divided by the Euclidean distance
+     * between the two. The result is infinite if there is no path.
+     *
+     * @param source
+     * @param target
+     * @return
+     */
+    public double query(GraphVertex source, GraphVertex target) {
+        int s = graph.indexOf(source);
+        int t = graph.indexOf(target);
+
+        if (s < 0 || t < 0) {
+            throw new IllegalArgumentException("Both vertices must be part of the graph.");
+        }
+
+        return query(s, t);
+    }
+
+    /**
+     * Computes the shortest path between the vertices with the given indices
+     * and returns its stretch.
+     *
+     * @param source
+     * @param target
+     * @return
+     */
+    public double query(int source, int target) {
+        if (source == target) {
+            throw new IllegalArgumentException("The source and target must be different vertices.");
+        }
+
+        this.source = source;
+        this.target = target;
+
+        forward.initialize(source, 1);
+        backward.initialize(target, -1);
+
+        distance = Double.POSITIVE_INFINITY;
+        meeting = -1;
+
+        while (forward.heapSize > 0 && backward.heapSize > 0) {
+            double minForward = forward.getMinKey();
+            double minBackward = backward.getMinKey();
+
+            // Every path that is not found yet has a length of at least the sum of the smallest keys
+            if (minForward + minBackward >= distance) {
+                break;
+            }
+
+            if (minForward <= minBackward) {
+                settle(forward, backward);
+            } else {
+                settle(backward, forward);
+            }
+        }
+
+        return getStretch();
+    }
+
+    /**
+     * Returns the length of the shortest path found by the last query.
+     *
+     * @return
+     */
+    public double getDistance() {
+        return distance;
+    }
+
+    /**
+     * Returns the stretch of the pair in the last query.
+     *
+     * @return
+     */
+    public double getStretch() {
+        return distance / graph.getDistance(source, target);
+    }
+
+    /**
+     * Returns the number of vertices settled by both searches during the last
+     * query.
+     *
+     * @return
+     */
+    public int getSettledCount() {
+        return forward.nSettled + backward.nSettled;
+    }
+
+    /**
+     * Returns the edges on the shortest path found by the last query, from
+     * source to target, or <code>null</code> if there is no path.
+     *
+     * @return
+     */
+    public List<Edge> getPath() {
+        if (meeting < 0) {
+            return null;
+        }
+
+        List<Edge> path = new ArrayList<Edge>();
+
+        for (int v = meeting; v != source; v = forward.pred[v]) {
+            path.add(graph.getEdge(forward.graph.getArcEdge(forward.predArc[v])));
+        }
+
+        Collections.reverse(path);
+
+        for (int v = meeting; v != target; v = backward.pred[v]) {
+            path.add(graph.getEdge(backward.graph.getArcEdge(backward.predArc[v])));
+        }
+
+        return path;
+    }
+
+    private void settle(Side side, Side other) {
+        int u = side.pop();
+        side.nSettled++;
+
+        double du = side.dist[u];
+        int end = side.graph.getFirstArc(u + 1);
+
+        for (int arc = side.graph.getFirstArc(u); arc < end; arc++) {
+            int v = side.graph.getArcTarget(arc);
+            double dv = du + side.graph.getArcLength(arc);
+
+            if (dv < side.dist[v]) {
+                side.update(v, dv, u, arc, getPotential(v, side.sign));
+
+                // Check whether this gives a better path
+                double total = dv + other.dist[v];
+
+                if (total < distance) {
+                    distance = total;
+                    meeting = v;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the potential of v for the forward search (sign = 1) or the
+     * backward search (sign = -1).
+     */
+    private double getPotential(int v, int sign) {
+        return sign * 0.5 * (graph.getDistance(v, target) - graph.getDistance(v, source));
+    }
+
+    /**
+     * The state of the search in one direction.
+     */
+    private class Side {
+
+        private final CompactGraph graph;
+        private final double[] dist;
+        private final double[] key; // dist + potential
+        private final int[] pred;
+        private final int[] predArc;
+        private final int[] heap;
+        private final int[] heapPos; // Position of each vertex in the heap, or -1 if it is not in the heap
+        private int heapSize;
+        private final int[] touched;
+        private int nTouched;
+        private int nSettled;
+        private int sign;
+
+        Side(CompactGraph graph) {
+            this.graph = graph;
+
+            int n = graph.getVertexCount();
+            dist = new double[n];
+            key = new double[n];
+            pred = new int[n];
+            predArc = new int[n];
+            heap = new int[n];
+            heapPos = new int[n];
+            touched = new int[n];
+
+            for (int i = 0; i < n; i++) {
+                dist[i] = Double.POSITIVE_INFINITY;
+                pred[i] = -1;
+                predArc[i] = -1;
+                heapPos[i] = -1;
+            }
+        }
+
+        void initialize(int start, int sign) {
+            for (int i = 0; i < nTouched; i++) {
+                int v = touched[i];
+                dist[v] = Double.POSITIVE_INFINITY;
+                pred[v] = -1;
+                predArc[v] = -1;
+                heapPos[v] = -1;
+            }
+
+            nTouched = 0;
+            nSettled = 0;
+            heapSize = 0;
+            this.sign = sign;
+
+            update(start, 0, -1, -1, getPotential(start, sign));
+        }
+
+        double getMinKey() {
+            return key[heap[0]];
+        }
+
+        void update(int v, double d, int predecessor, int arc, double potential) {
+            if (dist[v] == Double.POSITIVE_INFINITY) {
+                touched[nTouched++] = v;
+            }
+
+            dist[v] = d;
+            key[v] = d + potential;
+            pred[v] = predecessor;
+            predArc[v] = arc;
+
+            if (heapPos[v] < 0) {
+                heap[heapSize] = v;
+                heapPos[v] = heapSize;
+                heapSize++;
+                siftUp(heapSize - 1);
+            } else {
+                siftUp(heapPos[v]);
+            }
+        }
+
+        int pop() {
+            int top = heap[0];
+            heapPos[top] = -1;
+            heapSize--;
+
+            if (heapSize > 0) {
+                heap[0] = heap[heapSize];
+                heapPos[heap[0]] = 0;
+                siftDown(0);
+            }
+
+            return top;
+        }
+
+        private void siftUp(int i) {
+            int v = heap[i];
+            double kv = key[v];
+
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                int p = heap[parent];
+
+                if (key[p] <= kv) {
+                    break;
+                }
+
+                heap[i] = p;
+                heapPos[p] = i;
+                i = parent;
+            }
+
+            heap[i] = v;
+            heapPos[v] = i;
+        }
+
+        private void siftDown(int i) {
+            int v = heap[i];
+            double kv = key[v];
+
+            while (true) {
+                int child = 2 * i + 1;
+
+                if (child >= heapSize) {
+                    break;
+                }
+
+                if (child + 1 < heapSize && key[heap[child + 1]] < key[heap[child]]) {
+                    child++;
+                }
+
+                int c = heap[child];
+
+                if (kv <= key[c]) {
+                    break;
+                }
+
+                heap[i] = c;
+                heapPos[c] = i;
+                i = child;
+            }
+
+            heap[i] = v;
+            heapPos[v] = i;
+        }
+    }
+}
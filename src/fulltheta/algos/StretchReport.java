@@ -0,0 +1,371 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.algos;
+
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.GraphVertex;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Collects the spanning ratios of all pairs of vertices in bounded memory: the
+ * k worst pairs, a histogram, and quantile estimates derived from it.
+ *
+ * A report is filled by passing it to a spanning ratio computation, which
+ * streams every pair into it while it looks for the maximum.
+ */
+public class StretchReport {
+
+    public static final int DEFAULT_BINS = 900;
+    public static final double DEFAULT_MAX_STRETCH = 10;
+    private static final double MIN_STRETCH = 1; // The spanning ratio of a pair is never smaller than 1
+    private final int k;
+    private final PriorityQueue<WorstPair> worstPairs; // Min-heap on stretch, so the root is the first to go
+    private final double maxStretch;
+    private final double binWidth;
+    private final long[] histogram;
+    private long overflow; // Pairs with a finite stretch of at least maxStretch
+    private long disconnected; // Pairs without a path between them
+    private long count;
+    private double sum;
+    private double max;
+
+    /**
+     * Creates a report that keeps the k worst pairs and uses the default
+     * histogram range.
+     *
+     * @param k
+     */
+    public StretchReport(int k) {
+        this(k, DEFAULT_MAX_STRETCH, DEFAULT_BINS);
+    }
+
+    /**
+     * Creates a report that keeps the k worst pairs and counts all finite
+     * spanning ratios in nBins equal bins between 1 and maxStretch. Larger
+     * spanning ratios are counted separately.
+     *
+     * @param k
+     * @param maxStretch
+     * @param nBins
+     */
+    public StretchReport(int k, double maxStretch, int nBins) {
+        if (k < 0) {
+            throw new IllegalArgumentException("The number of worst pairs must be non-negative.");
+        }
+
+        if (nBins < 1 || !(maxStretch > MIN_STRETCH)) {
+            throw new IllegalArgumentException("The histogram needs at least one bin and a maximum stretch larger than 1.");
+        }
+
+        this.k = k;
+        this.maxStretch = maxStretch;
+        this.binWidth = (maxStretch - MIN_STRETCH) / nBins;
+        this.histogram = new long[nBins];
+        this.worstPairs = new PriorityQueue<WorstPair>(Math.max(1, k + 1), INCREASING_STRETCH);
+        this.max = 0;
+    }
+
+    /**
+     * Records the spanning ratio of the pair of vertices with the given
+     * indices. Pairs with an infinite spanning ratio are only counted, so that
+     * they cannot crowd the connected pairs out of the list of worst pairs.
+     *
+     * @param i
+     * @param j
+     * @param stretch
+     */
+    public void add(int i, int j, double stretch) {
+        if (Double.isInfinite(stretch) || Double.isNaN(stretch)) {
+            disconnected++;
+        } else {
+            count++;
+            sum += stretch;
+            max = Math.max(max, stretch);
+
+            int bin = (int) ((stretch - MIN_STRETCH) / binWidth);
+
+            if (bin >= histogram.length) {
+                overflow++;
+            } else {
+                histogram[Math.max(bin, 0)]++;
+            }
+
+            // Only allocate an entry if it makes it into the top k
+            if (k > 0 && (worstPairs.size() < k || stretch > worstPairs.peek().stretch)) {
+                worstPairs.add(new WorstPair(i, j, stretch));
+
+                if (worstPairs.size() > k) {
+                    worstPairs.poll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the k worst connected pairs, in order of decreasing spanning
+     * ratio. Pairs without a path between them are counted by
+     * getDisconnectedCount instead.
+     *
+     * @return
+     */
+    public List<WorstPair> getWorstPairs() {
+        List<WorstPair> pairs = new ArrayList<WorstPair>(worstPairs);
+        Collections.sort(pairs, Collections.reverseOrder(INCREASING_STRETCH));
+        return pairs;
+    }
+
+    /**
+     * Returns the number of pairs that are connected by a path.
+     *
+     * @return
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of pairs that are not connected by any path.
+     *
+     * @return
+     */
+    public long getDisconnectedCount() {
+        return disconnected;
+    }
+
+    /**
+     * Returns the average spanning ratio over all connected pairs.
+     *
+     * @return
+     */
+    public double getMean() {
+        return (count == 0 ? Double.NaN : sum / count);
+    }
+
+    /**
+     * Returns the largest finite spanning ratio that was recorded.
+     *
+     * @return
+     */
+    public double getMaximum() {
+        return max;
+    }
+
+    /**
+     * Returns the number of pairs with a spanning ratio in each bin. Bin i
+     * covers the spanning ratios in [getBinStart(i), getBinStart(i + 1)).
+     *
+     * @return
+     */
+    public long[] getHistogram() {
+        return histogram.clone();
+    }
+
+    public double getBinStart(int bin) {
+        return MIN_STRETCH + bin * binWidth;
+    }
+
+    /**
+     * Returns the number of pairs with a finite spanning ratio that does not
+     * fit in the histogram.
+     *
+     * @return
+     */
+    public long getOverflowCount() {
+        return overflow;
+    }
+
+    /**
+     * Estimates the q-quantile of the spanning ratios of all connected pairs,
+     * where 0 <= q <= 1. The estimate is within one bin width of the true
+     * value, unless it falls beyond the range of the histogram.
+     *
+     * @param q
+     * @return
+     */
+    public double getQuantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+
+        double rank = q * count;
+        long seen = 0;
+
+        for (int i = 0; i < histogram.length; i++) {
+            if (histogram[i] > 0 && seen + histogram[i] >= rank) {
+                // Interpolate within the bin
+                double fraction = (rank - seen) / histogram[i];
+                return Math.min(getBinStart(i) + fraction * binWidth, max);
+            }
+
+            seen += histogram[i];
+        }
+
+        // The quantile is in the overflow
+        double fraction = (overflow == 0 ? 1 : (rank - seen) / overflow);
+        return maxStretch + fraction * (max - maxStretch);
+    }
+
+    /**
+     * Adds all pairs recorded by the given report to this one. Both reports
+     * must use the same histogram range and number of bins.
+     *
+     * @param other
+     */
+    public void merge(StretchReport other) {
+        if (other.histogram.length != histogram.length || other.maxStretch != maxStretch) {
+            throw new IllegalArgumentException("Reports with different histograms cannot be merged.");
+        }
+
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] += other.histogram[i];
+        }
+
+        overflow += other.overflow;
+        disconnected += other.disconnected;
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+
+        for (WorstPair pair : other.worstPairs) {
+            if (k > 0 && (worstPairs.size() < k || pair.stretch > worstPairs.peek().stretch)) {
+                worstPairs.add(new WorstPair(pair.i, pair.j, pair.stretch));
+
+                if (worstPairs.size() > k) {
+                    worstPairs.poll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the approximate number of bytes used by an empty copy of this
+     * report, once its list of worst pairs is full. Paths are not included.
+     *
+     * @return
+     */
+    long getMemoryUse() {
+        return 8L * histogram.length + 48L * k + 128;
+    }
+
+    /**
+     * Returns an empty report with the same parameters as this one.
+     *
+     * @return
+     */
+    StretchReport emptyCopy() {
+        return new StretchReport(k, maxStretch, histogram.length);
+    }
+
+    /**
+     * Writes the distribution as comma-separated lines of bin start and
+     * count, followed by the overflow and the disconnected pairs.
+     *
+     * @param out
+     */
+    public void printHistogram(PrintStream out) {
+        for (int i = 0; i < histogram.length; i++) {
+            out.println(String.format("%f,%d", getBinStart(i), histogram[i]));
+        }
+
+        out.println(String.format("%f,%d", maxStretch, overflow));
+        out.println(String.format("Infinity,%d", disconnected));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StretchReport[pairs=%d, disconnected=%d, mean=%f, median=%f, p99=%f, max=%f]",
+                count, disconnected, getMean(), getQuantile(0.5), getQuantile(0.99), max);
+    }
+
+    /**
+     * One of the k pairs with the largest spanning ratio. The vertices and the
+     * path are filled in by the computation once it is done.
+     */
+    public static class WorstPair {
+
+        private final int i, j;
+        private final double stretch;
+        private GraphVertex source, target;
+        private List<Edge> path;
+
+        WorstPair(int i, int j, double stretch) {
+            this.i = i;
+            this.j = j;
+            this.stretch = stretch;
+        }
+
+        public int getSourceIndex() {
+            return i;
+        }
+
+        public int getTargetIndex() {
+            return j;
+        }
+
+        public double getStretch() {
+            return stretch;
+        }
+
+        public GraphVertex getSource() {
+            return source;
+        }
+
+        public GraphVertex getTarget() {
+            return target;
+        }
+
+        /**
+         * Returns the shortest path between the two vertices.
+         *
+         * @return
+         */
+        public List<Edge> getPath() {
+            return path;
+        }
+
+        void setPath(GraphVertex source, GraphVertex target, List<Edge> path) {
+            this.source = source;
+            this.target = target;
+            this.path = path;
+        }
+
+        @Override
+        public String toString() {
+            return "WorstPair[" + source + ", " + target + ", " + stretch + "]";
+        }
+    }
+
+    private static final Comparator<WorstPair> INCREASING_STRETCH = new Comparator<WorstPair>() {
+
+        @Override
+        public int compare(WorstPair p1, WorstPair p2) {
+            return Double.compare(p1.stretch, p2.stretch);
+        }
+    };
+}
@@ -0,0 +1,259 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.data;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid of square cells over a set of line segments, with about one
+ * cell per segment. Every segment is stored in each cell it passes through,
+ * so two segments that cross or touch always share a cell.
+ *
+ * Rounding can only add cells, never miss one: the part of a segment in a
+ * column is computed over the column widened by a small margin on both
+ * sides, and its y-range is widened by the same margin. Widening in x covers
+ * the steep segments, where a tiny error in x moves y by a lot.
+ *
+ * Cells are numbered column by column, so cell <code>getCell(c, r)</code> is
+ * <code>c * getRowCount() + r</code>, and the cells of every segment are
+ * listed in increasing order.
+ */
+public class SegmentGrid {
+
+    private static final double MARGIN = 1e-9; // Relative to the cell size
+    private final double[] ax, ay, bx, by; // The endpoints of each segment, with ax <= bx
+    private final int nColumns, nRows;
+    private final double minX, minY, cellSize;
+    private final int[] firstCell, segCells; // The cells of segment s are segCells[firstCell[s]] .. segCells[firstCell[s + 1] - 1]
+    private final int[] firstSeg, cellSegs; // The segments in cell c are cellSegs[firstSeg[c]] .. cellSegs[firstSeg[c + 1] - 1]
+
+    /**
+     * Builds a grid over the segments from (ax[s], ay[s]) to (bx[s], by[s]),
+     * where ax[s] <= bx[s]. The arrays are not copied.
+     *
+     * @param ax
+     * @param ay
+     * @param bx
+     * @param by
+     */
+    public SegmentGrid(double[] ax, double[] ay, double[] bx, double[] by) {
+        int m = ax.length;
+
+        if (ay.length != m || bx.length != m || by.length != m) {
+            throw new IllegalArgumentException("All coordinate arrays must have the same length.");
+        }
+
+        this.ax = ax;
+        this.ay = ay;
+        this.bx = bx;
+        this.by = by;
+
+        double x0 = Double.POSITIVE_INFINITY, y0 = Double.POSITIVE_INFINITY;
+        double x1 = Double.NEGATIVE_INFINITY, y1 = Double.NEGATIVE_INFINITY;
+
+        for (int s = 0; s < m; s++) {
+            if (ax[s] > bx[s]) {
+                throw new IllegalArgumentException("Segment " + s + " does not go from left to right.");
+            }
+
+            x0 = Math.min(x0, ax[s]);
+            x1 = Math.max(x1, bx[s]);
+            y0 = Math.min(y0, Math.min(ay[s], by[s]));
+            y1 = Math.max(y1, Math.max(ay[s], by[s]));
+        }
+
+        minX = (m == 0 ? 0 : x0);
+        minY = (m == 0 ? 0 : y0);
+
+        // Square cells, about one per segment
+        double width = Math.max(x1 - x0, 0);
+        double height = Math.max(y1 - y0, 0);
+        double size = Math.sqrt(width * height / Math.max(m, 1));
+
+        if (!(size > 0)) {
+            // All segments lie on one horizontal or vertical line
+            size = Math.max(width, height) / Math.max(m, 1);
+
+            if (!(size > 0)) {
+                size = 1;
+            }
+        }
+
+        cellSize = size;
+        nColumns = (int) Math.min(Math.max(m, 1), Math.floor(width / cellSize) + 1);
+        nRows = (int) Math.min(Math.max(m, 1), Math.floor(height / cellSize) + 1);
+
+        // Find the cells of every segment, in increasing order
+        firstCell = new int[m + 1];
+
+        for (int s = 0; s < m; s++) {
+            firstCell[s + 1] = firstCell[s] + visitCells(s, null, 0);
+        }
+
+        segCells = new int[firstCell[m]];
+
+        for (int s = 0; s < m; s++) {
+            visitCells(s, segCells, firstCell[s]);
+        }
+
+        // Invert into the segments of every cell
+        int nCells = nColumns * nRows;
+        firstSeg = new int[nCells + 1];
+
+        for (int i = 0; i < segCells.length; i++) {
+            firstSeg[segCells[i] + 1]++;
+        }
+
+        for (int c = 0; c < nCells; c++) {
+            firstSeg[c + 1] += firstSeg[c];
+        }
+
+        cellSegs = new int[segCells.length];
+        int[] fill = Arrays.copyOf(firstSeg, nCells);
+
+        for (int s = 0; s < m; s++) {
+            for (int i = firstCell[s]; i < firstCell[s + 1]; i++) {
+                cellSegs[fill[segCells[i]]++] = s;
+            }
+        }
+    }
+
+    public int getColumnCount() {
+        return nColumns;
+    }
+
+    public int getRowCount() {
+        return nRows;
+    }
+
+    /**
+     * Returns the column that contains the given x-coordinate, clamped to the
+     * grid.
+     *
+     * @param x
+     * @return
+     */
+    public int getColumn(double x) {
+        return Math.max(0, Math.min(nColumns - 1, (int) Math.floor((x - minX) / cellSize)));
+    }
+
+    /**
+     * Returns the row that contains the given y-coordinate, clamped to the
+     * grid.
+     *
+     * @param y
+     * @return
+     */
+    public int getRow(double y) {
+        return Math.max(0, Math.min(nRows - 1, (int) Math.floor((y - minY) / cellSize)));
+    }
+
+    /**
+     * Returns the y-coordinate of the top of the given row.
+     *
+     * @param row
+     * @return
+     */
+    public double getRowTop(int row) {
+        return minY + (row + 1) * cellSize;
+    }
+
+    public int getCell(int column, int row) {
+        return column * nRows + row;
+    }
+
+    /**
+     * Returns the position in the list of segments of the given cell where
+     * they start. The segments of cell c are at positions
+     * <code>getFirstSegment(c)</code> up to <code>getFirstSegment(c + 1)</code>.
+     *
+     * @param cell
+     * @return
+     */
+    public int getFirstSegment(int cell) {
+        return firstSeg[cell];
+    }
+
+    public int getCellSegment(int i) {
+        return cellSegs[i];
+    }
+
+    /**
+     * Returns the first cell that segments s and t both pass through, or -1
+     * if they have none in common.
+     *
+     * @param s
+     * @param t
+     * @return
+     */
+    public int getFirstSharedCell(int s, int t) {
+        int i = firstCell[s], j = firstCell[t];
+
+        while (i < firstCell[s + 1] && j < firstCell[t + 1]) {
+            if (segCells[i] == segCells[j]) {
+                return segCells[i];
+            } else if (segCells[i] < segCells[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Stores the cells that segment s passes through in the given array,
+     * starting at the given position, and returns how many there are. If the
+     * array is <code>null</code>, the cells are only counted.
+     */
+    private int visitCells(int s, int[] cells, int start) {
+        int firstColumn = getColumn(ax[s]);
+        int lastColumn = getColumn(bx[s]);
+        double slope = (bx[s] > ax[s] ? (by[s] - ay[s]) / (bx[s] - ax[s]) : 0);
+        double margin = MARGIN * cellSize;
+        int k = 0;
+
+        for (int column = firstColumn; column <= lastColumn; column++) {
+            // The part of the segment in this column, widened by the margin
+            double x1 = Math.max(ax[s], minX + column * cellSize - margin);
+            double x2 = Math.min(bx[s], minX + (column + 1) * cellSize + margin);
+            double y1 = (x1 == ax[s] ? ay[s] : ay[s] + (x1 - ax[s]) * slope);
+            double y2 = (x2 == bx[s] ? by[s] : ay[s] + (x2 - ax[s]) * slope);
+
+            int row1 = getRow(Math.min(y1, y2) - margin);
+            int row2 = getRow(Math.max(y1, y2) + margin);
+
+            for (int row = row1; row <= row2; row++) {
+                if (cells != null) {
+                    cells[start + k] = column * nRows + row;
+                }
+
+                k++;
+            }
+        }
+
+        return k;
+    }
+}
@@ -0,0 +1,409 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.data.embedded;
+
+import fulltheta.data.graph.ClockwiseOrder;
+import fulltheta.data.graph.CompactGraph;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+
+/**
+ * A doubly-connected edge list stored in int arrays, as a compact alternative
+ * to EmbeddedGraph. Edge e of the underlying snapshot gives dart 2e, from its
+ * first to its second vertex, and dart 2e + 1 in the opposite direction, so
+ * the twin of a dart d is simply d ^ 1. Faces and vertices are numbered from
+ * 0 as well.
+ *
+ * Like EmbeddedGraph, the outgoing darts of every vertex are ordered
+ * clockwise and the next dart of a dart's twin is the following outgoing dart
+ * in that order. All queries, including walks around faces and vertices, work
+ * on indices and do not allocate. Apart from the coordinates, the structure
+ * uses 32 bytes per edge.
+ */
+public class CompactEmbeddedGraph {
+
+    private static final int INSERTION_SORT_LIMIT = 16;
+    private final CompactGraph snapshot;
+    private final int[] origin;
+    private final int[] next;
+    private final int[] prev;
+    private final int[] face;
+    private final int[] vertexDart; // An outgoing dart of each vertex, or -1 for isolated vertices
+    private final int[] faceDart; // A dart on the boundary of each face
+    private final int nFaces;
+
+    /**
+     * Embeds the given graph, ignoring the direction of its edges.
+     *
+     * @param graph
+     */
+    public CompactEmbeddedGraph(Graph graph) {
+        this(new CompactGraph(graph, false));
+    }
+
+    /**
+     * Embeds the given snapshot. Directions are ignored: every edge gives two
+     * darts, even if the snapshot only has an arc in one direction.
+     *
+     * @param graph
+     */
+    public CompactEmbeddedGraph(CompactGraph graph) {
+        snapshot = graph;
+
+        int n = graph.getVertexCount();
+        int nDarts = 2 * graph.getEdgeCount();
+
+        origin = new int[nDarts];
+        next = new int[nDarts];
+        prev = new int[nDarts];
+        face = new int[nDarts];
+        vertexDart = new int[n];
+
+        // Every edge has an arc leaving its first vertex, even in a directed snapshot
+        for (int v = 0; v < n; v++) {
+            GraphVertex vertex = graph.getVertex(v);
+
+            for (int arc = graph.getFirstArc(v); arc < graph.getFirstArc(v + 1); arc++) {
+                int e = graph.getArcEdge(arc);
+
+                if (graph.getEdge(e).getVA() == vertex) {
+                    origin[2 * e] = v;
+                    origin[2 * e + 1] = graph.getArcTarget(arc);
+                }
+            }
+        }
+
+        // Group the darts by origin; prev and vertexDart serve as scratch space here
+        int[] sorted = prev;
+        int[] count = vertexDart;
+
+        for (int d = 0; d < nDarts; d++) {
+            count[origin[d]]++;
+        }
+
+        int[] start = new int[n + 1];
+
+        for (int v = 0; v < n; v++) {
+            start[v + 1] = start[v] + count[v];
+            count[v] = start[v];
+        }
+
+        for (int d = 0; d < nDarts; d++) {
+            sorted[count[origin[d]]++] = d;
+        }
+
+        // Sort the darts around each vertex in clockwise order
+        for (int v = 0; v < n; v++) {
+            sort(sorted, start[v], start[v + 1]);
+        }
+
+        // The next of the twin of each dart is the next dart in clockwise order around the vertex
+        for (int v = 0; v < n; v++) {
+            int k = start[v + 1] - start[v];
+            vertexDart[v] = (k == 0 ? -1 : sorted[start[v]]);
+
+            for (int i = 0; i < k; i++) {
+                int dart = sorted[start[v] + i];
+                int nextDart = sorted[start[v] + (i + 1) % k];
+                next[dart ^ 1] = nextDart;
+            }
+        }
+
+        for (int d = 0; d < nDarts; d++) {
+            prev[next[d]] = d;
+        }
+
+        // Label the faces
+        for (int d = 0; d < nDarts; d++) {
+            face[d] = -1;
+        }
+
+        int f = 0;
+
+        for (int d = 0; d < nDarts; d++) {
+            if (face[d] < 0) {
+                int walk = d;
+
+                do {
+                    face[walk] = f;
+                    walk = next[walk];
+                } while (walk != d);
+
+                f++;
+            }
+        }
+
+        nFaces = f;
+        faceDart = new int[nFaces];
+
+        for (int d = nDarts - 1; d >= 0; d--) {
+            faceDart[face[d]] = d;
+        }
+    }
+
+    /**
+     * Returns the approximate number of bytes used by the darts, vertex and
+     * face arrays of an embedding with the given number of vertices, edges and
+     * faces, not counting the snapshot it was built from.
+     *
+     * @param nVertices
+     * @param nEdges
+     * @param nFaces
+     * @return
+     */
+    public static long getMemoryUse(int nVertices, int nEdges, int nFaces) {
+        return 4L * nVertices + 32L * nEdges + 4L * nFaces;
+    }
+
+    public CompactGraph getSnapshot() {
+        return snapshot;
+    }
+
+    public int getVertexCount() {
+        return vertexDart.length;
+    }
+
+    public int getEdgeCount() {
+        return origin.length / 2;
+    }
+
+    public int getDartCount() {
+        return origin.length;
+    }
+
+    public int getFaceCount() {
+        return nFaces;
+    }
+
+    public double getX(int v) {
+        return snapshot.getX(v);
+    }
+
+    public double getY(int v) {
+        return snapshot.getY(v);
+    }
+
+    public GraphVertex getVertex(int v) {
+        return snapshot.getVertex(v);
+    }
+
+    /**
+     * Returns an outgoing dart of v, or -1 if v has no edges.
+     *
+     * @param v
+     * @return
+     */
+    public int getDart(int v) {
+        return vertexDart[v];
+    }
+
+    public int getOrigin(int dart) {
+        return origin[dart];
+    }
+
+    public int getDestination(int dart) {
+        return origin[dart ^ 1];
+    }
+
+    public int getTwin(int dart) {
+        return dart ^ 1;
+    }
+
+    public int getNext(int dart) {
+        return next[dart];
+    }
+
+    public int getPrevious(int dart) {
+        return prev[dart];
+    }
+
+    public int getFace(int dart) {
+        return face[dart];
+    }
+
+    /**
+     * Returns the next outgoing dart after the given one in clockwise order
+     * around its origin.
+     *
+     * @param dart
+     * @return
+     */
+    public int getNextAroundOrigin(int dart) {
+        return next[dart ^ 1];
+    }
+
+    /**
+     * Returns the edge of the original graph this dart belongs to.
+     *
+     * @param dart
+     * @return
+     */
+    public Edge getEdge(int dart) {
+        return snapshot.getEdge(dart >> 1);
+    }
+
+    /**
+     * Returns a dart on the boundary of face f. The other darts of the face
+     * can be reached by repeatedly calling <code>getNext</code>.
+     *
+     * @param f
+     * @return
+     */
+    public int getFaceDart(int f) {
+        return faceDart[f];
+    }
+
+    /**
+     * Returns the number of darts on the boundary of face f.
+     *
+     * @param f
+     * @return
+     */
+    public int getFaceSize(int f) {
+        int start = faceDart[f];
+        int dart = start;
+        int size = 0;
+
+        do {
+            size++;
+            dart = next[dart];
+        } while (dart != start);
+
+        return size;
+    }
+
+    /**
+     * Returns the signed area enclosed by the boundary of face f. Since the
+     * darts around each vertex are ordered clockwise, the bounded faces of a
+     * plane graph have a positive area and the outer face of each connected
+     * component has a negative area.
+     *
+     * @param f
+     * @return
+     */
+    public double getSignedArea(int f) {
+        int start = faceDart[f];
+        int dart = start;
+        double area = 0;
+
+        do {
+            int u = origin[dart];
+            int v = origin[dart ^ 1];
+            area += snapshot.getX(u) * snapshot.getY(v) - snapshot.getX(v) * snapshot.getY(u);
+            dart = next[dart];
+        } while (dart != start);
+
+        return area / 2;
+    }
+
+    public int getDegree(int v) {
+        int start = vertexDart[v];
+
+        if (start < 0) {
+            return 0;
+        }
+
+        int dart = start;
+        int degree = 0;
+
+        do {
+            degree++;
+            dart = next[dart ^ 1];
+        } while (dart != start);
+
+        return degree;
+    }
+
+    /**
+     * Compares two darts with the same origin by their clockwise angle, like
+     * ClockwiseOrder.
+     */
+    private int compare(int dart1, int dart2) {
+        int u = origin[dart1];
+        int v1 = origin[dart1 ^ 1];
+        int v2 = origin[dart2 ^ 1];
+
+        return ClockwiseOrder.compare(snapshot.getX(v1) - snapshot.getX(u), snapshot.getY(v1) - snapshot.getY(u),
+                snapshot.getX(v2) - snapshot.getX(u), snapshot.getY(v2) - snapshot.getY(u));
+    }
+
+    /**
+     * Sorts the darts in positions from .. to - 1 in clockwise order.
+     */
+    private void sort(int[] darts, int from, int to) {
+        if (to - from <= INSERTION_SORT_LIMIT) {
+            for (int i = from + 1; i < to; i++) {
+                int d = darts[i];
+                int j = i - 1;
+
+                while (j >= from && compare(darts[j], d) > 0) {
+                    darts[j + 1] = darts[j];
+                    j--;
+                }
+
+                darts[j + 1] = d;
+            }
+        } else {
+            // Heapsort, so high-degree vertices do not need extra memory
+            int size = to - from;
+
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(darts, from, i, size);
+            }
+
+            for (int last = size - 1; last > 0; last--) {
+                swap(darts, from, from + last);
+                siftDown(darts, from, 0, last);
+            }
+        }
+    }
+
+    private void siftDown(int[] darts, int offset, int i, int size) {
+        while (true) {
+            int child = 2 * i + 1;
+
+            if (child >= size) {
+                break;
+            }
+
+            if (child + 1 < size && compare(darts[offset + child + 1], darts[offset + child]) > 0) {
+                child++;
+            }
+
+            if (compare(darts[offset + i], darts[offset + child]) >= 0) {
+                break;
+            }
+
+            swap(darts, offset + i, offset + child);
+            i = child;
+        }
+    }
+
+    private static void swap(int[] darts, int i, int j) {
+        int d = darts[i];
+        darts[i] = darts[j];
+        darts[j] = d;
+    }
+}
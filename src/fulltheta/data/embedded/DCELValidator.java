@@ -0,0 +1,602 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.data.embedded;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the invariants of an EmbeddedGraph and reports every violation,
+ * rather than stopping at the first one.
+ *
+ * The checks run in three passes, each spread over several threads. The
+ * first checks the pointers of every dart locally: its twin, next and
+ * previous dart must point back to it, the next dart must start where it
+ * ends and lie on the same face, and everything it refers to must belong to
+ * the graph. Only if those pointers are consistent, the second and third pass
+ * walk around every vertex and face, checking origins and faces, and count
+ * the darts they see. A dart that is missed by the walk around its origin or
+ * face is only looked for when the counts do not add up, so a valid structure
+ * is checked in time linear in its size, without allocating anything per
+ * dart.
+ *
+ * Only the first <code>maxViolations</code> violations, in order of type and
+ * position, are kept, but all of them are counted.
+ */
+public class DCELValidator {
+
+    public static final int DEFAULT_MAX_VIOLATIONS = 1000;
+    private static final int BLOCK_SIZE = 1024;
+    private final EmbeddedGraph graph;
+    private final int maxViolations;
+    private final int nThreads;
+    private HalfEdge[] darts;
+    private EmbeddedVertex[] vertices;
+    private Face[] faces;
+    private List<Violation> violations;
+    private long[] counts; // The number of violations of each type
+    private boolean computed = false;
+
+    /**
+     * The kinds of problems the validator looks for. Each violation concerns
+     * either a dart, a vertex or a face.
+     */
+    public enum Type {
+
+        /**
+         * A dart has no twin.
+         */
+        MISSING_TWIN,
+        /**
+         * The twin of a dart is the dart itself, or its twin is not the dart.
+         */
+        TWIN_MISMATCH,
+        /**
+         * A dart has no next dart.
+         */
+        MISSING_NEXT,
+        /**
+         * The next dart of a dart is the dart itself, or its previous dart is
+         * not the dart.
+         */
+        NEXT_MISMATCH,
+        /**
+         * A dart has no previous dart.
+         */
+        MISSING_PREVIOUS,
+        /**
+         * The previous dart of a dart is the dart itself, or its next dart is
+         * not the dart.
+         */
+        PREVIOUS_MISMATCH,
+        /**
+         * A dart has no origin.
+         */
+        MISSING_ORIGIN,
+        /**
+         * The next dart of a dart does not start at its destination.
+         */
+        DISCONNECTED_NEXT,
+        /**
+         * A dart has no face.
+         */
+        MISSING_FACE,
+        /**
+         * The next dart of a dart lies on a different face.
+         */
+        FACE_MISMATCH,
+        /**
+         * A dart refers to a dart, vertex or face that is not part of the
+         * graph.
+         */
+        OUTSIDE_GRAPH,
+        /**
+         * A vertex has no dart, or its dart is not part of the graph.
+         */
+        VERTEX_WITHOUT_DART,
+        /**
+         * A dart found by walking around a vertex does not have that vertex
+         * as its origin.
+         */
+        WRONG_ORIGIN,
+        /**
+         * A dart is not found by the walk around its origin.
+         */
+        OUTSIDE_ROTATION,
+        /**
+         * A face has no dart, or its dart is not part of the graph.
+         */
+        FACE_WITHOUT_DART,
+        /**
+         * A dart found by walking around a face does not have that face.
+         */
+        WRONG_FACE,
+        /**
+         * A dart is not found by the walk around its face.
+         */
+        OUTSIDE_FACE
+    }
+
+    public DCELValidator(EmbeddedGraph graph) {
+        this(graph, DEFAULT_MAX_VIOLATIONS, Runtime.getRuntime().availableProcessors());
+    }
+
+    public DCELValidator(EmbeddedGraph graph, int maxViolations, int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        if (maxViolations < 0) {
+            throw new IllegalArgumentException("The number of violations to keep must be non-negative.");
+        }
+
+        this.graph = graph;
+        this.maxViolations = maxViolations;
+        this.nThreads = nThreads;
+    }
+
+    public boolean isValid() {
+        return getViolationCount() == 0;
+    }
+
+    /**
+     * Returns the total number of violations found.
+     *
+     * @return
+     */
+    public long getViolationCount() {
+        if (!computed) {
+            validate();
+        }
+
+        long total = 0;
+
+        for (long count : counts) {
+            total += count;
+        }
+
+        return total;
+    }
+
+    /**
+     * Returns the number of violations of the given type.
+     *
+     * @param type
+     * @return
+     */
+    public long getViolationCount(Type type) {
+        if (!computed) {
+            validate();
+        }
+
+        return counts[type.ordinal()];
+    }
+
+    /**
+     * Returns the first violations that were found, at most
+     * <code>maxViolations</code>, ordered by type.
+     *
+     * @return
+     */
+    public List<Violation> getViolations() {
+        if (!computed) {
+            validate();
+        }
+
+        return violations;
+    }
+
+    /**
+     * Writes the number of violations of each type as comma-separated lines of
+     * type and count, followed by one tab-separated line of type and element
+     * for each violation that was kept.
+     *
+     * @param out
+     */
+    public void printReport(PrintStream out) {
+        if (!computed) {
+            validate();
+        }
+
+        for (Type type : Type.values()) {
+            out.println(String.format("%s,%d", type, counts[type.ordinal()]));
+        }
+
+        for (Violation violation : violations) {
+            out.println(violation.getType() + "\t" + violation.getElement());
+        }
+    }
+
+    public static boolean isValid(EmbeddedGraph graph) {
+        return new DCELValidator(graph, 0, Runtime.getRuntime().availableProcessors()).isValid();
+    }
+
+    private void validate() {
+        darts = graph.getDarts().toArray(new HalfEdge[0]);
+        vertices = graph.getVertices().toArray(new EmbeddedVertex[0]);
+        faces = graph.getFaces().toArray(new Face[0]);
+
+        List<Worker> workers = run(Worker.DARTS, darts.length);
+        boolean consistent = true;
+
+        for (Worker worker : workers) {
+            // Walks around vertices and faces could fall off or loop forever
+            consistent = consistent && !worker.brokenPointers;
+        }
+
+        if (consistent) {
+            List<Worker> vertexWorkers = run(Worker.VERTICES, vertices.length);
+            List<Worker> faceWorkers = run(Worker.FACES, faces.length);
+
+            if (getWalked(vertexWorkers) != darts.length) {
+                workers.add(findMissedDarts(true));
+            }
+
+            if (getWalked(faceWorkers) != darts.length) {
+                workers.add(findMissedDarts(false));
+            }
+
+            workers.addAll(vertexWorkers);
+            workers.addAll(faceWorkers);
+        }
+
+        // Combine the results of the workers
+        counts = new long[Type.values().length];
+        violations = new ArrayList<Violation>();
+
+        for (Worker worker : workers) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += worker.counts[i];
+            }
+
+            violations.addAll(worker.violations);
+        }
+
+        Collections.sort(violations, BY_TYPE_AND_POSITION);
+
+        if (violations.size() > maxViolations) {
+            violations = new ArrayList<Violation>(violations.subList(0, maxViolations));
+        }
+
+        darts = null;
+        vertices = null;
+        faces = null;
+        computed = true;
+    }
+
+    private List<Worker> run(int pass, int nElements) {
+        AtomicInteger nextBlock = new AtomicInteger(0);
+        int nBlocks = (nElements + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        List<Worker> workers = new ArrayList<Worker>(nThreads);
+
+        for (int i = 0; i < Math.min(nThreads, Math.max(nBlocks, 1)); i++) {
+            workers.add(new Worker(pass, nextBlock));
+        }
+
+        runAll(workers);
+        return workers;
+    }
+
+    /**
+     * Runs the workers concurrently, the last one on the calling thread, and
+     * rethrows the first exception once all of them have finished.
+     */
+    private static void runAll(List<Worker> workers) {
+        final List<RuntimeException> failures = new ArrayList<RuntimeException>(1);
+        List<Thread> threads = new ArrayList<Thread>(workers.size());
+
+        for (final Worker worker : workers.subList(0, workers.size() - 1)) {
+            Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        worker.run();
+                    } catch (RuntimeException ex) {
+                        synchronized (failures) {
+                            failures.add(ex);
+                        }
+                    }
+                }
+            });
+
+            thread.start();
+            threads.add(thread);
+        }
+
+        workers.get(workers.size() - 1).run();
+        boolean interrupted = false;
+
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (failures) {
+            if (!failures.isEmpty()) {
+                throw failures.get(0);
+            }
+        }
+    }
+
+    private static long getWalked(List<Worker> workers) {
+        long walked = 0;
+
+        for (Worker worker : workers) {
+            walked += worker.walked;
+        }
+
+        return walked;
+    }
+
+    /**
+     * Walks around every vertex or face again, marking the darts it sees, and
+     * reports the darts that were not seen. This is only needed when the
+     * structure is broken, so it does not have to be fast.
+     */
+    private Worker findMissedDarts(boolean aroundVertices) {
+        // HalfEdge does not override equals, but identity makes this explicit
+        Map<HalfEdge, Integer> index = new IdentityHashMap<HalfEdge, Integer>(2 * darts.length);
+
+        for (int i = 0; i < darts.length; i++) {
+            index.put(darts[i], i);
+        }
+
+        boolean[] seen = new boolean[darts.length];
+        int nStarts = (aroundVertices ? vertices.length : faces.length);
+
+        for (int i = 0; i < nStarts; i++) {
+            HalfEdge start = (aroundVertices ? vertices[i].getDart() : faces[i].getDart());
+            Integer startIndex = (start == null ? null : index.get(start));
+
+            if (startIndex == null || seen[startIndex]) {
+                continue;
+            }
+
+            HalfEdge dart = start;
+
+            do {
+                seen[index.get(dart)] = true;
+                dart = (aroundVertices ? dart.getTwin().getNext() : dart.getNext());
+            } while (dart != start);
+        }
+
+        Worker worker = new Worker(aroundVertices ? Worker.VERTICES : Worker.FACES, null);
+
+        for (int i = 0; i < darts.length; i++) {
+            if (!seen[i]) {
+                worker.report(aroundVertices ? Type.OUTSIDE_ROTATION : Type.OUTSIDE_FACE, darts[i], i);
+            }
+        }
+
+        return worker;
+    }
+
+    /**
+     * A problem found by the validator, together with the dart, vertex or face
+     * it concerns.
+     */
+    public static class Violation {
+
+        private final Type type;
+        private final Object element;
+        private final int position; // The position of the element in the set it belongs to
+
+        Violation(Type type, Object element, int position) {
+            this.type = type;
+            this.element = element;
+            this.position = position;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Returns the HalfEdge, EmbeddedVertex or Face this violation
+         * concerns.
+         *
+         * @return
+         */
+        public Object getElement() {
+            return element;
+        }
+
+        @Override
+        public String toString() {
+            return "Violation[" + type + ", " + element + "]";
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        static final int DARTS = 0, VERTICES = 1, FACES = 2;
+        private final int pass;
+        private final AtomicInteger nextBlock;
+        private final long[] counts = new long[Type.values().length];
+        private final List<Violation> violations = new ArrayList<Violation>(0);
+        private long walked = 0; // The number of darts seen while walking around vertices or faces
+        private boolean brokenPointers = false; // Set if a twin, next or previous pointer is wrong or leaves the graph
+
+        Worker(int pass, AtomicInteger nextBlock) {
+            this.pass = pass;
+            this.nextBlock = nextBlock;
+        }
+
+        @Override
+        public void run() {
+            int nElements = (pass == DARTS ? darts.length : pass == VERTICES ? vertices.length : faces.length);
+
+            for (int block = nextBlock.getAndIncrement(); block * BLOCK_SIZE < nElements; block = nextBlock.getAndIncrement()) {
+                int end = Math.min(nElements, (block + 1) * BLOCK_SIZE);
+
+                for (int i = block * BLOCK_SIZE; i < end; i++) {
+                    if (pass == DARTS) {
+                        checkDart(i);
+                    } else if (pass == VERTICES) {
+                        checkVertex(i);
+                    } else {
+                        checkFace(i);
+                    }
+                }
+            }
+        }
+
+        private void checkDart(int i) {
+            HalfEdge dart = darts[i];
+            Set<HalfEdge> allDarts = graph.getDarts();
+            HalfEdge twin = dart.getTwin();
+            HalfEdge next = dart.getNext();
+            HalfEdge prev = dart.getPrevious();
+
+            if (twin == null || twin == dart || twin.getTwin() != dart || !allDarts.contains(twin)
+                    || next == null || next == dart || next.getPrevious() != dart || !allDarts.contains(next)
+                    || prev == null || prev == dart || prev.getNext() != dart || !allDarts.contains(prev)) {
+                brokenPointers = true;
+            }
+
+            if (twin == null) {
+                report(Type.MISSING_TWIN, dart, i);
+            } else if (twin == dart || twin.getTwin() != dart) {
+                report(Type.TWIN_MISMATCH, dart, i);
+            } else if (!allDarts.contains(twin)) {
+                report(Type.OUTSIDE_GRAPH, dart, i);
+            }
+
+            if (next == null) {
+                report(Type.MISSING_NEXT, dart, i);
+            } else if (next == dart || next.getPrevious() != dart) {
+                report(Type.NEXT_MISMATCH, dart, i);
+            } else if (!allDarts.contains(next)) {
+                report(Type.OUTSIDE_GRAPH, dart, i);
+            }
+
+            if (prev == null) {
+                report(Type.MISSING_PREVIOUS, dart, i);
+            } else if (prev == dart || prev.getNext() != dart) {
+                report(Type.PREVIOUS_MISMATCH, dart, i);
+            } else if (!allDarts.contains(prev)) {
+                report(Type.OUTSIDE_GRAPH, dart, i);
+            }
+
+            if (dart.getOrigin() == null) {
+                report(Type.MISSING_ORIGIN, dart, i);
+            } else if (!graph.getVertices().contains(dart.getOrigin())) {
+                report(Type.OUTSIDE_GRAPH, dart, i);
+            } else if (twin != null && next != null && next.getOrigin() != twin.getOrigin()) {
+                report(Type.DISCONNECTED_NEXT, dart, i);
+            }
+
+            if (dart.getFace() == null) {
+                report(Type.MISSING_FACE, dart, i);
+            } else if (!graph.getFaces().contains(dart.getFace())) {
+                report(Type.OUTSIDE_GRAPH, dart, i);
+            } else if (next != null && next.getFace() != dart.getFace()) {
+                report(Type.FACE_MISMATCH, dart, i);
+            }
+        }
+
+        private void checkVertex(int i) {
+            EmbeddedVertex vertex = vertices[i];
+            HalfEdge start = vertex.getDart();
+
+            if (start == null || !graph.getDarts().contains(start)) {
+                report(Type.VERTEX_WITHOUT_DART, vertex, i);
+                return;
+            }
+
+            HalfEdge dart = start;
+
+            do {
+                if (dart.getOrigin() != vertex) {
+                    report(Type.WRONG_ORIGIN, dart, i);
+                }
+
+                walked++;
+                dart = dart.getTwin().getNext();
+            } while (dart != start);
+        }
+
+        private void checkFace(int i) {
+            Face face = faces[i];
+            HalfEdge start = face.getDart();
+
+            if (start == null || !graph.getDarts().contains(start)) {
+                report(Type.FACE_WITHOUT_DART, face, i);
+                return;
+            }
+
+            HalfEdge dart = start;
+
+            do {
+                if (dart.getFace() != face) {
+                    report(Type.WRONG_FACE, dart, i);
+                }
+
+                walked++;
+                dart = dart.getNext();
+            } while (dart != start);
+        }
+
+        void report(Type type, Object element, int position) {
+            counts[type.ordinal()]++;
+
+            // Each worker handles blocks in increasing order, so the first violations of each
+            // type overall are among the first ones of that type found by some worker
+            if (counts[type.ordinal()] <= maxViolations) {
+                violations.add(new Violation(type, element, position));
+            }
+        }
+    }
+
+    private static final Comparator<Violation> BY_TYPE_AND_POSITION = new Comparator<Violation>() {
+
+        @Override
+        public int compare(Violation v1, Violation v2) {
+            int compType = v1.type.compareTo(v2.type);
+
+            if (compType != 0) {
+                return compType;
+            } else {
+                return Integer.compare(v1.position, v2.position);
+            }
+        }
+    };
+}
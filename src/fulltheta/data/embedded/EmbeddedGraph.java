@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import fulltheta.data.graph.ClockwiseOrder;
 import fulltheta.data.graph.Edge;
@@ -79,9 +80,14 @@ public class EmbeddedGraph {
         // The next vertex in the cyclic order is the next of your twin
         // So we can compute the next of all incoming darts and the previous of all outgoing darts this way
         for (GraphVertex vertex : graph.getVertices()) {
-            // Sort the edges of this vertex in cyclic (clockwise) order
-            ArrayList<Edge> edges = new ArrayList<Edge>(vertex.getEdges());
-            Collections.sort(edges, new ClockwiseOrder(vertex));
+            // Sort the edges of this vertex in cyclic (clockwise) order, unless they already are, for example by SpannerBuilder
+            List<Edge> edges = vertex.getEdges();
+            ClockwiseOrder order = new ClockwiseOrder(vertex);
+
+            if (!order.isCyclicallySorted(edges)) {
+                edges = new ArrayList<Edge>(edges);
+                Collections.sort(edges, order);
+            }
 
             ArrayList<HalfEdge> outgoingDarts = new ArrayList<HalfEdge>(edges.size());
 
@@ -161,98 +167,13 @@ public class EmbeddedGraph {
         darts.add(d);
     }
 
+    /**
+     * Returns true if all twin, next, previous, origin and face pointers are
+     * consistent. Use DCELValidator for a list of the problems.
+     *
+     * @return
+     */
     public boolean verifyDCEL() {
-        System.out.println("Starting verification");
-        // for all darts, the twin of the twin must be the dart itself
-        // and the previous of the next must be itself
-        for (HalfEdge e : darts) {
-            HalfEdge t = e.getTwin();
-            if (t == null) {
-                System.out.println("----> No twin");
-                return false;
-            } else if (t.getTwin() != e) {
-                System.out.println("----> Twins twin is not edge");
-                return false;
-            } else if (t == e) {
-                System.out.println("----> edge is its own twin");
-                return false;
-            }
-
-            HalfEdge n = e.getNext();
-            if (n == null) {
-                System.out.println("----> No next");
-                return false;
-            } else if (n.getPrevious() != e) {
-                System.out.println("----> Nexts previous is not edge");
-                return false;
-            } else if (n == e) {
-                System.out.println("----> edge is its own next");
-                return false;
-            }
-
-            HalfEdge p = e.getPrevious();
-            if (p == null) {
-                System.out.println("----> No previous");
-                return false;
-            } else if (p.getNext() != e) {
-                System.out.println("----> Previous' next is not edge");
-                return false;
-            } else if (p == e) {
-                System.out.println("----> edge is its own previous");
-                return false;
-            }
-
-            if (!e.getOrigin().getEdges().contains(e)) {
-                System.out.println("----> origins edges do not contain edge");
-                return false;
-            }
-        }
-
-        // for each vertex, the source of its edge must be the vertex itself
-        // as for all other edges around
-        for (EmbeddedVertex v : vertices) {
-            HalfEdge e = v.getDart();
-
-            if (e == null) {
-                System.out.println("----> No edge for vertex");
-                return false;
-            } else {
-                HalfEdge d = e;
-
-                do {
-                    if (d.getOrigin() == null) {
-                        System.out.println("----> No origin");
-                        return false;
-                    } else if (d.getOrigin() != v) {
-                        System.out.println("----> Incorrect origin");
-                        return false;
-                    }
-
-                    d = d.getTwin().getNext();
-                } while (e != d);
-            }
-        }
-
-        // for each face, the face of its edge must be the face itself
-        // as for all other edge around the face
-        for (Face f : faces) {
-            HalfEdge e = f.getDart();
-            if (e == null) {
-                System.out.println("----> No edge for face");
-                return false;
-            } else {
-                HalfEdge d = e;
-                do {
-                    if (d.getFace() != f) {
-                        System.out.println("----> Incorrect face");
-                        return false;
-                    }
-                    d = d.getNext();
-                } while (e != d);
-            }
-        }
-
-        System.out.println("Verification succesful");
-        return true;
+        return DCELValidator.isValid(this);
     }
 }
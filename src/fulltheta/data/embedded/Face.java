@@ -31,11 +31,7 @@ import java.util.Set;
 public class Face {
 
     private HalfEdge dart;
-    private Set<Face> mergedFaces;
-
-    public Face() {
-        mergedFaces = new HashSet<Face>();
-    }
+    private Set<Face> mergedFaces = null; // Created on first use, as most faces are never merged
 
     public HalfEdge getDart() {
         return dart;
@@ -67,13 +63,18 @@ public class Face {
 
     public List<HalfEdge> getMergedDarts() {
         List<HalfEdge> darts = getDarts();
-        for (Face f: mergedFaces) {
-            darts.addAll(f.getDarts());
+        if (mergedFaces != null) {
+            for (Face f: mergedFaces) {
+                darts.addAll(f.getDarts());
+            }
         }
         return darts;
     }
 
     public Set<Face> getMergedFaces() {
+        if (mergedFaces == null) {
+            mergedFaces = new HashSet<Face>();
+        }
         return mergedFaces;
     }
 }
@@ -0,0 +1,249 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.data.embedded;
+
+import fulltheta.data.SegmentGrid;
+import fulltheta.data.graph.ClockwiseOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the face of a plane EmbeddedGraph that contains a query point.
+ *
+ * The edges are distributed over a SegmentGrid with about one cell per edge,
+ * every edge being stored in each cell it passes through. A query shoots a
+ * ray straight up from the point and scans the cells above it in its column
+ * until it finds the first edge or vertex that the ray hits; the face just
+ * below that edge or vertex is the answer. For well-distributed point sets
+ * only a few cells are scanned, so each query takes expected constant time.
+ *
+ * EmbeddedGraph does not link the boundaries of different components, so for
+ * a disconnected graph the face returned is the one whose boundary lies
+ * directly above the point. A point that does not lie below any edge is in
+ * the unbounded face, and the face above the topmost vertex is returned. A
+ * point on an edge or vertex can be assigned to any face incident to it.
+ * Queries do not modify the locator, so they can be made from several
+ * threads at once. Changes to the graph after construction are not
+ * reflected.
+ */
+public class PointLocator {
+
+    private final HalfEdge[] edgeDart; // The dart of each edge that goes from left to right, or upwards if it is vertical
+    private final double[] ax, ay, bx, by; // The origin and destination of each of these darts
+    private final Face outerFace;
+    private double minX, maxX, maxY;
+    private final SegmentGrid grid;
+
+    public PointLocator(EmbeddedGraph graph) {
+        List<HalfEdge> darts = new ArrayList<HalfEdge>(graph.getDarts().size() / 2);
+        EmbeddedVertex top = null;
+
+        for (HalfEdge dart : graph.getDarts()) {
+            EmbeddedVertex a = dart.getOrigin(), b = dart.getDestination();
+
+            if (a.getX() < b.getX() || (a.getX() == b.getX() && a.getY() < b.getY())) {
+                darts.add(dart);
+            }
+
+            // Every vertex with an edge is the origin of one of its darts
+            if (top == null || a.getY() > top.getY()) {
+                top = a;
+            }
+        }
+
+        int m = darts.size();
+        edgeDart = darts.toArray(new HalfEdge[m]);
+        ax = new double[m];
+        ay = new double[m];
+        bx = new double[m];
+        by = new double[m];
+
+        minX = Double.POSITIVE_INFINITY;
+        maxX = Double.NEGATIVE_INFINITY;
+        maxY = Double.NEGATIVE_INFINITY;
+
+        for (int e = 0; e < m; e++) {
+            ax[e] = edgeDart[e].getOrigin().getX();
+            ay[e] = edgeDart[e].getOrigin().getY();
+            bx[e] = edgeDart[e].getDestination().getX();
+            by[e] = edgeDart[e].getDestination().getY();
+
+            minX = Math.min(minX, ax[e]);
+            maxX = Math.max(maxX, bx[e]);
+            maxY = Math.max(maxY, Math.max(ay[e], by[e]));
+        }
+
+        // The topmost vertex is on the boundary of the unbounded face, right above it
+        outerFace = (top == null ? null : getFaceAround(top, 0, 1));
+
+        grid = new SegmentGrid(ax, ay, bx, by);
+    }
+
+    /**
+     * Returns the face that contains the point (x, y), or <code>null</code> if
+     * the graph has no edges.
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public Face locate(double x, double y) {
+        if (edgeDart.length == 0) {
+            return null;
+        }
+
+        if (x < minX || x > maxX || y > maxY) {
+            return outerFace;
+        }
+
+        int column = grid.getColumn(x);
+        double bestY = Double.POSITIVE_INFINITY;
+        int bestEdge = -1;
+        EmbeddedVertex bestVertex = null; // Set if the ray hits a vertex rather than the interior of an edge
+
+        for (int row = grid.getRow(y); row < grid.getRowCount(); row++) {
+            int cell = grid.getCell(column, row);
+
+            for (int i = grid.getFirstSegment(cell); i < grid.getFirstSegment(cell + 1); i++) {
+                int e = grid.getCellSegment(i);
+
+                if (x < ax[e] || x > bx[e]) {
+                    continue;
+                }
+
+                double hitY;
+                EmbeddedVertex hitVertex;
+
+                if (ax[e] == bx[e]) {
+                    // A vertical edge is hit at its lower endpoint, unless the point is on it
+                    if (y >= ay[e] && y <= by[e]) {
+                        return edgeDart[e].getFace();
+                    }
+
+                    hitY = ay[e];
+                    hitVertex = edgeDart[e].getOrigin();
+                } else if (x == ax[e]) {
+                    hitY = ay[e];
+                    hitVertex = edgeDart[e].getOrigin();
+                } else if (x == bx[e]) {
+                    hitY = by[e];
+                    hitVertex = edgeDart[e].getDestination();
+                } else {
+                    hitY = ay[e] + (x - ax[e]) * (by[e] - ay[e]) / (bx[e] - ax[e]);
+                    hitVertex = null;
+                }
+
+                if (hitY >= y && hitY < bestY) {
+                    bestY = hitY;
+                    bestEdge = e;
+                    bestVertex = hitVertex;
+                }
+            }
+
+            // Edges in higher rows can only be hit further up
+            if (bestEdge >= 0 && bestY <= grid.getRowTop(row)) {
+                break;
+            }
+        }
+
+        if (bestEdge < 0) {
+            return outerFace;
+        } else if (bestVertex != null) {
+            return getFaceAround(bestVertex, 0, -1);
+        } else {
+            // The left-to-right dart has the face above it on its left, so its twin has the face below
+            return edgeDart[bestEdge].getTwin().getFace();
+        }
+    }
+
+    /**
+     * Returns the faces that contain the points (x[i], y[i]).
+     *
+     * @param x
+     * @param y
+     * @return
+     */
+    public Face[] locate(double[] x, double[] y) {
+        if (x.length != y.length) {
+            throw new IllegalArgumentException("The number of x-coordinates (" + x.length + ") does not match the number of y-coordinates (" + y.length + ").");
+        }
+
+        Face[] faces = new Face[x.length];
+
+        for (int i = 0; i < x.length; i++) {
+            faces[i] = locate(x[i], y[i]);
+        }
+
+        return faces;
+    }
+
+    public Face getOuterFace() {
+        return outerFace;
+    }
+
+    /**
+     * Returns the face incident to v that contains the points just beyond v in
+     * the direction (dx, dy). Consecutive outgoing darts d and d' in clockwise
+     * order bound the face of the twin of d, so we look for the pair whose
+     * wedge contains the direction.
+     */
+    private static Face getFaceAround(EmbeddedVertex v, double dx, double dy) {
+        HalfEdge start = v.getDart();
+        HalfEdge dart = start;
+
+        do {
+            HalfEdge next = dart.getTwin().getNext();
+
+            if (next == dart || isInWedge(dart, next, dx, dy)) {
+                return dart.getTwin().getFace();
+            }
+
+            dart = next;
+        } while (dart != start);
+
+        // Only reachable through rounding errors
+        return start.getTwin().getFace();
+    }
+
+    /**
+     * Returns true if the direction (dx, dy) lies in the wedge swept clockwise
+     * from the first dart to the second, including the first dart itself.
+     */
+    private static boolean isInWedge(HalfEdge first, HalfEdge second, double dx, double dy) {
+        double ax = first.getDestination().getX() - first.getOrigin().getX();
+        double ay = first.getDestination().getY() - first.getOrigin().getY();
+        double bx = second.getDestination().getX() - second.getOrigin().getX();
+        double by = second.getDestination().getY() - second.getOrigin().getY();
+
+        boolean afterFirst = ClockwiseOrder.compare(ax, ay, dx, dy) <= 0;
+        boolean beforeSecond = ClockwiseOrder.compare(dx, dy, bx, by) < 0;
+
+        if (ClockwiseOrder.compare(ax, ay, bx, by) < 0) {
+            return afterFirst && beforeSecond;
+        } else {
+            // The wedge contains the negative y-axis, where the clockwise order starts
+            return afterFirst || beforeSecond;
+        }
+    }
+}
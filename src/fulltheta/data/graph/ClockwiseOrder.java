@@ -24,7 +24,14 @@
 package fulltheta.data.graph;
 
 import java.util.Comparator;
+import java.util.List;
 
+/**
+ * Orders the edges around a vertex clockwise, starting at the negative
+ * y-axis. Directions are compared by quadrant and then by the sign of their
+ * cross product, so no trigonometry is needed and edges in exactly the same
+ * direction compare as equal.
+ */
 public class ClockwiseOrder implements Comparator<Edge> {
 
     private GraphVertex center;
@@ -34,22 +41,86 @@ public class ClockwiseOrder implements Comparator<Edge> {
     }
 
     public int compare(Edge e1, Edge e2) {
-        // compare the angles of e1 and e2
-        return Double.compare(getAngle(e1), getAngle(e2));
+        GraphVertex d1 = (e1.getVA() == center ? e1.getVB() : e1.getVA());
+        GraphVertex d2 = (e2.getVA() == center ? e2.getVB() : e2.getVA());
+
+        return compare(d1.getX() - center.getX(), d1.getY() - center.getY(), d2.getX() - center.getX(), d2.getY() - center.getY());
     }
 
-    private double getAngle(Edge e) {
-        GraphVertex dest = (e.getVA() == center ? e.getVB() : e.getVA());
+    /**
+     * Returns true if the given edges are in clockwise order around the
+     * center, starting at any of them. This holds exactly when going around
+     * the list once, including the step from the last edge back to the first,
+     * passes the negative y-axis at most once.
+     *
+     * @param edges
+     * @return
+     */
+    public boolean isCyclicallySorted(List<Edge> edges) {
+        int n = edges.size();
+        int descents = 0;
+
+        for (int i = 0; i < n; i++) {
+            if (compare(edges.get(i), edges.get((i + 1) % n)) > 0) {
+                descents++;
+
+                if (descents > 1) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
 
-        double vx = dest.getX() - center.getX();
-        double vy = dest.getY() - center.getY();
+    /**
+     * Compares the directions of the vectors (dx1, dy1) and (dx2, dy2) by
+     * their clockwise angle from the negative y-axis. The zero vector comes
+     * after all others.
+     *
+     * @param dx1
+     * @param dy1
+     * @param dx2
+     * @param dy2
+     * @return
+     */
+    public static int compare(double dx1, double dy1, double dx2, double dy2) {
+        int q1 = getQuadrant(dx1, dy1);
+        int q2 = getQuadrant(dx2, dy2);
 
-        double angle = Math.acos(vy / Math.sqrt(vx * vx + vy * vy));
+        if (q1 != q2) {
+            return (q1 < q2 ? -1 : 1);
+        }
+
+        // Within a quadrant the angle between the vectors is less than pi/2,
+        // so the second is clockwise from the first if the cross product is negative
+        double cross = dx1 * dy2 - dy1 * dx2;
+
+        if (cross < 0) {
+            return -1;
+        } else if (cross > 0) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
 
-        if (vx > 0) {
-            return angle;
+    /**
+     * Returns the quadrant of the vector (dx, dy), numbered clockwise from 0
+     * starting at the negative y-axis. Each quadrant includes its first
+     * boundary. The zero vector is in quadrant 4.
+     */
+    private static int getQuadrant(double dx, double dy) {
+        if (dx <= 0 && dy < 0) {
+            return 0;
+        } else if (dx < 0 && dy >= 0) {
+            return 1;
+        } else if (dx >= 0 && dy > 0) {
+            return 2;
+        } else if (dx > 0 && dy <= 0) {
+            return 3;
         } else {
-            return -angle;
+            return 4;
         }
     }
 }
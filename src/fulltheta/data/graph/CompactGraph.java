@@ -0,0 +1,294 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.data.graph;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only snapshot of a graph in compressed sparse row form. Vertex i is
+ * the i-th vertex of the graph and its arcs are stored consecutively, so
+ * algorithms can iterate over neighbours without touching the object graph.
+ *
+ * Each arc remembers the index of the edge it came from, so results can be
+ * translated back to edges of the original graph. Changes to the graph after
+ * the snapshot was taken are not reflected.
+ */
+public class CompactGraph {
+
+    private final List<GraphVertex> vertices;
+    private final List<Edge> edges;
+    private final boolean directed;
+    private final double[] x, y;
+    private final int[] firstArc; // The arcs of vertex i are firstArc[i] .. firstArc[i + 1] - 1
+    private final int[] arcTarget;
+    private final int[] arcEdge;
+    private final double[] arcLength;
+    private final Map<GraphVertex, Integer> vertexIndex;
+
+    /**
+     * Creates a snapshot of the given graph. If <code>directed</code> is true,
+     * directed edges only give an arc from their first to their second vertex;
+     * otherwise every edge can be traversed in both directions.
+     *
+     * @param graph
+     * @param directed
+     */
+    public CompactGraph(Graph graph, boolean directed) {
+        this.directed = directed;
+        vertices = new ArrayList<GraphVertex>(graph.getVertices());
+        edges = new ArrayList<Edge>(graph.getEdges());
+
+        int n = vertices.size();
+        x = new double[n];
+        y = new double[n];
+
+        // GraphVertex.equals compares coordinates, so we need identity here
+        vertexIndex = new IdentityHashMap<GraphVertex, Integer>(2 * n);
+
+        for (int i = 0; i < n; i++) {
+            x[i] = vertices.get(i).getX();
+            y[i] = vertices.get(i).getY();
+            vertexIndex.put(vertices.get(i), i);
+        }
+
+        // Map each endpoint to its index once
+        int m = edges.size();
+        int[] edgeA = new int[m];
+        int[] edgeB = new int[m];
+
+        firstArc = new int[n + 1];
+
+        for (int e = 0; e < m; e++) {
+            Edge edge = edges.get(e);
+            edgeA[e] = vertexIndex.get(edge.getVA());
+            edgeB[e] = vertexIndex.get(edge.getVB());
+
+            firstArc[edgeA[e] + 1]++;
+
+            if (!directed || !edge.isDirected()) {
+                firstArc[edgeB[e] + 1]++;
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            firstArc[i + 1] += firstArc[i];
+        }
+
+        int nArcs = firstArc[n];
+        arcTarget = new int[nArcs];
+        arcEdge = new int[nArcs];
+        arcLength = new double[nArcs];
+
+        int[] fill = new int[n];
+        System.arraycopy(firstArc, 0, fill, 0, n);
+
+        for (int e = 0; e < m; e++) {
+            double length = edges.get(e).getLength();
+            int arc = fill[edgeA[e]]++;
+
+            arcTarget[arc] = edgeB[e];
+            arcEdge[arc] = e;
+            arcLength[arc] = length;
+
+            if (!directed || !edges.get(e).isDirected()) {
+                arc = fill[edgeB[e]]++;
+
+                arcTarget[arc] = edgeA[e];
+                arcEdge[arc] = e;
+                arcLength[arc] = length;
+            }
+        }
+    }
+
+    private CompactGraph(CompactGraph graph, int[] firstArc, int[] arcTarget, int[] arcEdge, double[] arcLength) {
+        this.vertices = graph.vertices;
+        this.edges = graph.edges;
+        this.directed = graph.directed;
+        this.x = graph.x;
+        this.y = graph.y;
+        this.vertexIndex = graph.vertexIndex;
+        this.firstArc = firstArc;
+        this.arcTarget = arcTarget;
+        this.arcEdge = arcEdge;
+        this.arcLength = arcLength;
+    }
+
+    /**
+     * Returns the approximate number of bytes used by a snapshot with the
+     * given number of vertices, edges and arcs. A snapshot that ignores
+     * directions has two arcs per edge.
+     *
+     * @param nVertices
+     * @param nEdges
+     * @param nArcs
+     * @return
+     */
+    public static long getMemoryUse(int nVertices, int nEdges, long nArcs) {
+        // Coordinates, arc offsets, both lists and the boxed entries of the vertex index
+        return 140L * nVertices + 8L * nEdges + 16 * nArcs;
+    }
+
+    /**
+     * Returns the snapshot with every arc reversed. For snapshots that ignore
+     * directions this is the snapshot itself.
+     *
+     * @return
+     */
+    public CompactGraph reverse() {
+        if (!directed) {
+            return this;
+        }
+
+        int n = x.length;
+        int nArcs = arcTarget.length;
+        int[] revFirstArc = new int[n + 1];
+        int[] revTarget = new int[nArcs];
+        int[] revEdge = new int[nArcs];
+        double[] revLength = new double[nArcs];
+
+        for (int arc = 0; arc < nArcs; arc++) {
+            revFirstArc[arcTarget[arc] + 1]++;
+        }
+
+        for (int i = 0; i < n; i++) {
+            revFirstArc[i + 1] += revFirstArc[i];
+        }
+
+        int[] fill = new int[n];
+        System.arraycopy(revFirstArc, 0, fill, 0, n);
+
+        for (int v = 0; v < n; v++) {
+            for (int arc = firstArc[v]; arc < firstArc[v + 1]; arc++) {
+                int rev = fill[arcTarget[arc]]++;
+                revTarget[rev] = v;
+                revEdge[rev] = arcEdge[arc];
+                revLength[rev] = arcLength[arc];
+            }
+        }
+
+        return new CompactGraph(this, revFirstArc, revTarget, revEdge, revLength);
+    }
+
+    public boolean isDirected() {
+        return directed;
+    }
+
+    public int getVertexCount() {
+        return x.length;
+    }
+
+    public int getEdgeCount() {
+        return edges.size();
+    }
+
+    public int getArcCount() {
+        return arcTarget.length;
+    }
+
+    public double getX(int v) {
+        return x[v];
+    }
+
+    public double getY(int v) {
+        return y[v];
+    }
+
+    /**
+     * Returns the Euclidean distance between vertices u and v.
+     *
+     * @param u
+     * @param v
+     * @return
+     */
+    public double getDistance(int u, int v) {
+        double dx = x[v] - x[u];
+        double dy = y[v] - y[u];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Returns the index of the first outgoing arc of v. The arcs of v are
+     * getFirstArc(v) .. getFirstArc(v + 1) - 1.
+     *
+     * @param v
+     * @return
+     */
+    public int getFirstArc(int v) {
+        return firstArc[v];
+    }
+
+    public int getOutDegree(int v) {
+        return firstArc[v + 1] - firstArc[v];
+    }
+
+    public int getArcTarget(int arc) {
+        return arcTarget[arc];
+    }
+
+    public double getArcLength(int arc) {
+        return arcLength[arc];
+    }
+
+    /**
+     * Returns the index in <code>getEdges()</code> of the edge this arc was
+     * created from.
+     *
+     * @param arc
+     * @return
+     */
+    public int getArcEdge(int arc) {
+        return arcEdge[arc];
+    }
+
+    public GraphVertex getVertex(int v) {
+        return vertices.get(v);
+    }
+
+    public List<GraphVertex> getVertices() {
+        return vertices;
+    }
+
+    public Edge getEdge(int e) {
+        return edges.get(e);
+    }
+
+    public List<Edge> getEdges() {
+        return edges;
+    }
+
+    /**
+     * Returns the index of the given vertex, or -1 if it is not part of this
+     * snapshot.
+     *
+     * @param v
+     * @return
+     */
+    public int indexOf(GraphVertex v) {
+        Integer i = vertexIndex.get(v);
+        return (i == null ? -1 : i);
+    }
+}
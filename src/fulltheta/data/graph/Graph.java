@@ -25,7 +25,9 @@ package fulltheta.data.graph;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -95,6 +97,29 @@ public class Graph {
         }
     }
 
+    /**
+     * Adds all given vertices at once. Unlike <code>addVertex</code>, this
+     * does not check whether they are already part of the graph, so it takes
+     * time linear in the number of new vertices.
+     *
+     * @param newVertices
+     */
+    public void addVertices(final Collection<GraphVertex> newVertices) {
+        vertices.addAll(newVertices);
+    }
+
+    /**
+     * Makes room for the given total number of vertices and edges, so that
+     * adding them one by one does not have to grow the underlying lists.
+     *
+     * @param nVertices
+     * @param nEdges
+     */
+    public void ensureCapacity(int nVertices, int nEdges) {
+        vertices.ensureCapacity(nVertices);
+        edges.ensureCapacity(nEdges);
+    }
+
     public void addEdge(final GraphVertex vA, final GraphVertex vB) {
         addEdge(vA, vB, false);
     }
@@ -213,6 +238,13 @@ public class Graph {
     public String toSaveString() {
         StringBuilder buffer = new StringBuilder();
 
+        // GraphVertex.equals compares coordinates, so we need identity here
+        Map<GraphVertex, Integer> vertexIndex = new IdentityHashMap<GraphVertex, Integer>(2 * vertices.size());
+
+        for (GraphVertex vertex : vertices) {
+            vertexIndex.put(vertex, vertexIndex.size());
+        }
+
         buffer.append("Vertices");
         buffer.append(NEWLINE);
 
@@ -233,9 +265,9 @@ public class Graph {
 
         for (Edge edge : edges) {
             // print the indices of the endpoints of this edge
-            buffer.append(vertices.indexOf(edge.getVA()));
+            buffer.append(getIndex(vertexIndex, edge.getVA()));
             buffer.append(" ");
-            buffer.append(vertices.indexOf(edge.getVB()));
+            buffer.append(getIndex(vertexIndex, edge.getVB()));
             buffer.append(NEWLINE);
         }
 
@@ -248,15 +280,20 @@ public class Graph {
 
         for (Constraint constraint : constraints) {
             // print the indices of the endpoints of this constraint
-            buffer.append(vertices.indexOf(constraint.getVA()));
+            buffer.append(getIndex(vertexIndex, constraint.getVA()));
             buffer.append(" ");
-            buffer.append(vertices.indexOf(constraint.getVB()));
+            buffer.append(getIndex(vertexIndex, constraint.getVB()));
             buffer.append(NEWLINE);
         }
 
         return buffer.toString();
     }
 
+    private static int getIndex(Map<GraphVertex, Integer> vertexIndex, GraphVertex v) {
+        Integer index = vertexIndex.get(v);
+        return (index == null ? -1 : index);
+    }
+
     public static Graph fromSaveString(String s) throws IOException {
         String[] lines = s.split("\n");
         Graph result = new Graph();
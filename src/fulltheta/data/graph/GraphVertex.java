@@ -24,6 +24,7 @@
 package fulltheta.data.graph;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -72,6 +73,29 @@ public class GraphVertex {
         edges.remove(e);
     }
 
+    /**
+     * Puts the edges of this vertex in clockwise order, as defined by
+     * ClockwiseOrder. Edges added later are appended at the end as usual.
+     */
+    public void sortEdgesClockwise() {
+        Collections.sort(edges, new ClockwiseOrder(this));
+    }
+
+    /**
+     * Puts the edges of this vertex in the given order. The list must contain
+     * exactly the edges of this vertex.
+     *
+     * @param order
+     */
+    public void setEdgeOrder(List<Edge> order) {
+        if (order.size() != edges.size()) {
+            throw new IllegalArgumentException("The order has " + order.size() + " edges, but this vertex has " + edges.size() + ".");
+        }
+
+        edges.clear();
+        edges.addAll(order);
+    }
+
     /**
      * Returns true if there is an edge from this vertex to the given vertex, taking direction into account, false otherwise.
      * @param v
@@ -0,0 +1,373 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.experiments;
+
+import fulltheta.algos.Cones;
+import fulltheta.algos.SpannerBuilder;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import fulltheta.ipe.IPEExporter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates random point sets, builds a cone spanner on each and exports the
+ * results as IPE files, in three stages that run concurrently. The stages are
+ * connected by bounded queues: when a later stage falls behind, the earlier
+ * ones wait, so only a limited number of graphs is in memory at any time.
+ *
+ * Every stage has its own number of threads. Building is usually the
+ * bottleneck, but for small graphs the disk can be, and then more export
+ * threads help. Instance i is generated from its own random seed, derived
+ * from the seed of the pipeline and i, so the output does not depend on the
+ * number of threads or on the order in which the instances are processed.
+ */
+public class SpannerPipeline {
+
+    private final int nInstances;
+    private final int nVertices;
+    private final Cones cones;
+    private final File outputDirectory;
+    private String prefix = "tSpanner_";
+    private long seed = new Random().nextLong();
+    private int nGenerateThreads = 1;
+    private int nBuildThreads = Runtime.getRuntime().availableProcessors();
+    private int nExportThreads = 1;
+    private int queueCapacity = 16;
+    private IPEExporter exporter = new IPEExporter();
+    private boolean useIPE6 = false;
+    // State of a run
+    private final List<Thread> threads = new ArrayList<Thread>();
+    private final List<Throwable> failures = new ArrayList<Throwable>(1);
+    private final AtomicInteger nExported = new AtomicInteger();
+
+    /**
+     * Creates a pipeline that writes the given number of spanners, each on the
+     * given number of points chosen uniformly at random from the unit square,
+     * to the given directory.
+     *
+     * @param nInstances
+     * @param nVertices
+     * @param cones
+     * @param outputDirectory
+     */
+    public SpannerPipeline(int nInstances, int nVertices, Cones cones, File outputDirectory) {
+        if (nInstances < 0 || nVertices < 0) {
+            throw new IllegalArgumentException("The number of instances and vertices cannot be negative.");
+        }
+
+        this.nInstances = nInstances;
+        this.nVertices = nVertices;
+        this.cones = cones;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Sets the start of the file names. Instance i is written to
+     * <code>prefix + i + ".ipe"</code>.
+     *
+     * @param prefix
+     */
+    public void setPrefix(String prefix) {
+        this.prefix = prefix;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public void setGenerateThreadCount(int nThreads) {
+        nGenerateThreads = checkThreadCount(nThreads);
+    }
+
+    public void setBuildThreadCount(int nThreads) {
+        nBuildThreads = checkThreadCount(nThreads);
+    }
+
+    public void setExportThreadCount(int nThreads) {
+        nExportThreads = checkThreadCount(nThreads);
+    }
+
+    /**
+     * Sets the number of graphs that can wait between two stages.
+     *
+     * @param capacity
+     */
+    public void setQueueCapacity(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The queue capacity must be positive.");
+        }
+
+        queueCapacity = capacity;
+    }
+
+    /**
+     * Sets the exporter that writes the spanners. It is shared by all export
+     * threads, so its settings should not change during a run.
+     *
+     * @param exporter
+     * @param useIPE6
+     */
+    public void setExporter(IPEExporter exporter, boolean useIPE6) {
+        this.exporter = exporter;
+        this.useIPE6 = useIPE6;
+    }
+
+    /**
+     * Returns the seed of the points of the given instance.
+     *
+     * @param instance
+     * @return
+     */
+    public long getInstanceSeed(int instance) {
+        // Spread the instances over the seeds, so that consecutive seeds do not give similar sequences
+        long z = seed + (instance + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the number of spanners written so far by the current or last
+     * run.
+     *
+     * @return
+     */
+    public int getExportedCount() {
+        return nExported.get();
+    }
+
+    /**
+     * Generates, builds and exports all instances and returns when they have
+     * been written. If any stage fails, the other threads are stopped and the
+     * first failure is rethrown.
+     *
+     * @throws IOException
+     */
+    public void run() throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Cannot create output directory " + outputDirectory + ".");
+        }
+
+        BlockingQueue<Instance> generated = new ArrayBlockingQueue<Instance>(queueCapacity);
+        BlockingQueue<Instance> built = new ArrayBlockingQueue<Instance>(queueCapacity);
+        AtomicInteger nextInstance = new AtomicInteger(0);
+        AtomicInteger generatorsLeft = new AtomicInteger(nGenerateThreads);
+        AtomicInteger buildersLeft = new AtomicInteger(nBuildThreads);
+
+        threads.clear();
+        failures.clear();
+        nExported.set(0);
+
+        for (int i = 0; i < nGenerateThreads; i++) {
+            threads.add(new Thread(new Generator(nextInstance, generated, generatorsLeft), "Generate " + i));
+        }
+
+        for (int i = 0; i < nBuildThreads; i++) {
+            threads.add(new Thread(new Builder(generated, built, buildersLeft), "Build " + i));
+        }
+
+        for (int i = 0; i < nExportThreads; i++) {
+            threads.add(new Thread(new Exporter(built), "Export " + i));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } catch (InterruptedException ex) {
+            stop(ex);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the pipeline.");
+        }
+
+        if (!failures.isEmpty()) {
+            Throwable first = failures.get(0);
+
+            if (first instanceof IOException) {
+                throw (IOException) first;
+            } else if (first instanceof RuntimeException) {
+                throw (RuntimeException) first;
+            } else if (first instanceof Error) {
+                throw (Error) first;
+            } else {
+                throw new RuntimeException(first);
+            }
+        }
+    }
+
+    private static int checkThreadCount(int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        return nThreads;
+    }
+
+    /**
+     * Records the failure and interrupts all threads, so that none of them
+     * stays blocked on a queue that is no longer served.
+     */
+    private void stop(Throwable failure) {
+        synchronized (failures) {
+            // Interruptions caused by an earlier failure are not failures themselves
+            if (failures.isEmpty() || !(failure instanceof InterruptedException)) {
+                failures.add(failure);
+            }
+        }
+
+        for (Thread thread : threads) {
+            if (thread != Thread.currentThread()) {
+                thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * A graph on its way through the pipeline. The instance with index -1
+     * tells a stage that no more graphs will follow.
+     */
+    private static class Instance {
+
+        private static final Instance END = new Instance(-1, null);
+        private final int index;
+        private final Graph graph;
+
+        Instance(int index, Graph graph) {
+            this.index = index;
+            this.graph = graph;
+        }
+    }
+
+    private class Generator implements Runnable {
+
+        private final AtomicInteger nextInstance;
+        private final BlockingQueue<Instance> out;
+        private final AtomicInteger generatorsLeft;
+
+        Generator(AtomicInteger nextInstance, BlockingQueue<Instance> out, AtomicInteger generatorsLeft) {
+            this.nextInstance = nextInstance;
+            this.out = out;
+            this.generatorsLeft = generatorsLeft;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = nextInstance.getAndIncrement(); i < nInstances; i = nextInstance.getAndIncrement()) {
+                    Random rand = new Random(getInstanceSeed(i));
+                    List<GraphVertex> vertices = new ArrayList<GraphVertex>(nVertices);
+
+                    for (int j = 0; j < nVertices; j++) {
+                        vertices.add(new GraphVertex(rand.nextDouble(), rand.nextDouble()));
+                    }
+
+                    Graph graph = new Graph();
+                    graph.addVertices(vertices);
+                    out.put(new Instance(i, graph));
+                }
+
+                // The last generator to finish tells every builder to stop
+                if (generatorsLeft.decrementAndGet() == 0) {
+                    for (int i = 0; i < nBuildThreads; i++) {
+                        out.put(Instance.END);
+                    }
+                }
+            } catch (Throwable t) {
+                stop(t);
+            }
+        }
+    }
+
+    private class Builder implements Runnable {
+
+        private final BlockingQueue<Instance> in;
+        private final BlockingQueue<Instance> out;
+        private final AtomicInteger buildersLeft;
+
+        Builder(BlockingQueue<Instance> in, BlockingQueue<Instance> out, AtomicInteger buildersLeft) {
+            this.in = in;
+            this.out = out;
+            this.buildersLeft = buildersLeft;
+        }
+
+        @Override
+        public void run() {
+            try {
+                // The cones hold the vertices they were last set to, so every builder needs its own
+                Cones threadCones = new Cones(cones);
+
+                for (Instance instance = in.take(); instance != Instance.END; instance = in.take()) {
+                    SpannerBuilder.buildConeSpanner(instance.graph, threadCones);
+                    out.put(instance);
+                }
+
+                // The last builder to finish tells every exporter to stop
+                if (buildersLeft.decrementAndGet() == 0) {
+                    for (int i = 0; i < nExportThreads; i++) {
+                        out.put(Instance.END);
+                    }
+                }
+            } catch (Throwable t) {
+                stop(t);
+            }
+        }
+    }
+
+    private class Exporter implements Runnable {
+
+        private final BlockingQueue<Instance> in;
+
+        Exporter(BlockingQueue<Instance> in) {
+            this.in = in;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (Instance instance = in.take(); instance != Instance.END; instance = in.take()) {
+                    exporter.exportGraph(new File(outputDirectory, prefix + instance.index + ".ipe"), instance.graph, useIPE6);
+                    nExported.incrementAndGet();
+                }
+            } catch (Throwable t) {
+                stop(t);
+            }
+        }
+    }
+}
@@ -52,6 +52,7 @@ public class ConeDrawPanel extends GraphDrawPanel {
         
         setCanonicalApex(a);
         setCanonicalEnd(b);
+        setDrawStretch(false);
         
         setSelectedVertex(a);
     }
@@ -26,6 +26,7 @@ package fulltheta.gui;
 import fulltheta.algos.Cone;
 import fulltheta.algos.Cones;
 import fulltheta.algos.SpannerBuilder;
+import fulltheta.algos.StretchQuery;
 import fulltheta.data.Pair;
 import fulltheta.data.graph.*;
 import java.awt.*;
@@ -58,11 +59,15 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
     private List<GraphVertex> negMarkedVertices;
     private GraphVertex canonicalApex;
     private GraphVertex canonicalEnd;
+    private double canonicalStretch = Double.NaN; // Stretch of the shortest path from canonicalApex to canonicalEnd
+    private List<Edge> canonicalPath; // The shortest path from canonicalApex to canonicalEnd
+    private StretchQuery stretchQuery; // Reused for canonical stretch queries until the graph changes
     private List<Edge> highlightPath;
     private List<List<Pair<Double, Double>>> emptyRegions;
     private boolean autoUpdate = true;
     private boolean directed = false;
     private boolean drawCones = true;
+    private boolean drawStretch = true;
 
     public GraphDrawPanel() {
         initialize();
@@ -108,6 +113,7 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
         highlightPath = null;
         canonicalApex = null;
         canonicalEnd = null;
+        graphChanged();
         emptyRegions = null;
         zoomToGraph();
 
@@ -139,6 +145,8 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
             highlightPath = null;
         }
 
+        graphChanged();
+
         if (updateView) {
             zoomToGraph();
         }
@@ -155,6 +163,7 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
         highlightPath = null;
 
         SpannerBuilder.buildConeSpanner(graph, cones, directed);
+        graphChanged();
 
         repaint();
     }
@@ -198,14 +207,23 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
             graph.removeVertex(selectedVertex);
             markedVertices.remove(selectedVertex); // Remove it if it is present
             negMarkedVertices.remove(selectedVertex);
+
+            if (selectedVertex == canonicalApex || selectedVertex == canonicalEnd) {
+                canonicalApex = null;
+                canonicalEnd = null;
+            }
+
             deselectVertex();
 
             if (cones != null) {
                 recomputeSpanner();
+            } else {
+                graphChanged();
             }
         } else if (selectedEdge != null) {
             graph.removeEdge(selectedEdge);
             deselectEdge();
+            graphChanged();
         } else if (selectedConstraint != null) {
             graph.removeConstraint(selectedConstraint);
             deselectConstraint();
@@ -254,6 +272,7 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
 
     public void setCanonicalApex(GraphVertex canonicalApex) {
         this.canonicalApex = canonicalApex;
+        updateCanonicalStretch();
     }
 
     public GraphVertex getCanonicalEnd() {
@@ -262,6 +281,63 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
 
     public void setCanonicalEnd(GraphVertex canonicalEnd) {
         this.canonicalEnd = canonicalEnd;
+        updateCanonicalStretch();
+    }
+
+    /**
+     * Returns the stretch of the shortest path from the canonical apex to the
+     * canonical end, or NaN if they are not both set.
+     *
+     * @return
+     */
+    public double getCanonicalStretch() {
+        return canonicalStretch;
+    }
+
+    /**
+     * Returns the shortest path from the canonical apex to the canonical end,
+     * or <code>null</code> if there is none. It is drawn in blue, on top of
+     * the highlighted path.
+     *
+     * @return
+     */
+    public List<Edge> getCanonicalPath() {
+        return canonicalPath;
+    }
+
+    /**
+     * Finds the shortest path from the canonical apex to the canonical end and
+     * remembers it with its stretch.
+     */
+    private void updateCanonicalStretch() {
+        canonicalPath = null;
+
+        if (canonicalApex == null || canonicalEnd == null || canonicalApex == canonicalEnd) {
+            canonicalStretch = Double.NaN;
+        } else {
+            // The graph can also be edited outside this panel, so check that the snapshot still has its size
+            if (stretchQuery == null
+                    || stretchQuery.getGraph().getVertexCount() != graph.getVertices().size()
+                    || stretchQuery.getGraph().getEdges().size() != graph.getEdges().size()) {
+                stretchQuery = new StretchQuery(graph);
+            }
+
+            if (stretchQuery.getGraph().indexOf(canonicalApex) < 0 || stretchQuery.getGraph().indexOf(canonicalEnd) < 0) {
+                canonicalStretch = Double.NaN; // One of them was removed from the graph
+            } else {
+                canonicalStretch = stretchQuery.query(canonicalApex, canonicalEnd);
+                canonicalPath = stretchQuery.getPath();
+            }
+        }
+    }
+
+    /**
+     * Drops the snapshot used for stretch queries and brings the canonical
+     * stretch up to date. Call this after every change to the graph.
+     */
+    private void graphChanged() {
+        stretchQuery = null;
+        updateCanonicalStretch();
     }
 
     public List<GraphVertex> getMarkedVertices() {
@@ -302,6 +378,11 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
         repaint();
     }
 
+    public void setDrawStretch(boolean draw) {
+        drawStretch = draw;
+        repaint();
+    }
+
     public void zoomToGraph() {
         if (graph != null && !graph.getVertices().isEmpty()) {
             int margin = 20;
@@ -451,6 +532,15 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
             }
         }
 
+        if (canonicalPath != null) {
+            g2.setStroke(new BasicStroke(2));
+            g.setColor(Color.BLUE);
+
+            for (Edge e : canonicalPath) {
+                drawEdge(g2, e);
+            }
+        }
+
         if (selectedEdge != null) {
             g2.setStroke(new BasicStroke(2));
             g.setColor(Color.RED);
@@ -492,6 +582,11 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
                 }
             }
         }
+
+        if (drawStretch && !Double.isNaN(canonicalStretch)) {
+            g.setColor(Color.BLUE);
+            g.drawString("Stretch: " + canonicalStretch, 10, 20);
+        }
     }
 
     private void drawEdge(Graphics2D g2, Edge e) {
@@ -680,7 +775,10 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
                                     recomputeSpanner();
                                 } else {
                                     cones.setVertices(graph.getVertices());
+                                    graphChanged();
                                 }
+                            } else {
+                                graphChanged();
                             }
                         }
                     } else {
@@ -713,6 +811,7 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
                     canonicalEnd = v;
                 }
 
+                updateCanonicalStretch();
                 repaint();
             }
         }
@@ -745,12 +844,14 @@ public class GraphDrawPanel extends JPanel implements MouseListener, MouseMotion
             selectedVertex.setX(xScreenToWorld(e.getX()));
             selectedVertex.setY(yScreenToWorld(e.getY()));
 
-            if (cones != null) {
-                if (autoUpdate) {
-                    recomputeSpanner();
-                } else {
+            if (cones != null && autoUpdate) {
+                recomputeSpanner();
+            } else {
+                if (cones != null) {
                     cones.setVertices(graph.getVertices());
                 }
+
+                graphChanged(); // The edges of the moved vertex have new lengths
             }
 
             repaint();
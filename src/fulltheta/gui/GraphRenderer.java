@@ -0,0 +1,807 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.gui;
+
+import fulltheta.algos.Cone;
+import fulltheta.algos.Cones;
+import fulltheta.data.graph.CanonicalTriangle;
+import fulltheta.data.graph.Constraint;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Arc2D;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * Draws a graph the way GraphDrawPanel does, but without a window, so that
+ * batch jobs can produce pictures with <code>java.awt.headless=true</code>.
+ * Besides the edges, with arrow heads on directed edges, it can draw the
+ * cones of marked vertices, a canonical triangle and a highlighted path.
+ *
+ * Pictures are written as SVG, which is streamed to the output, or as PNG.
+ * PNG images are split into horizontal bands that are drawn by several
+ * threads at once. Only the elements that overlap the picture, or the band
+ * being drawn, are drawn at all. By default the picture shows the whole
+ * graph; <code>setViewport</code> selects a part of it.
+ */
+public class GraphRenderer {
+
+    private static final int MARGIN = 20; // Pixels between the viewport and the border of the picture
+    private static final int VERTEX_SIZE = 5; // Radius in pixels of the vertices
+    private static final int ARROW_HEAD_SIZE = 8;
+    private static final int BANDS_PER_THREAD = 4;
+    private static final Color CONE_COLOR = Color.GRAY;
+    private static final Color CANONICAL_COLOR = Color.BLUE;
+    private static final Color HIGHLIGHT_COLOR = Color.ORANGE;
+    private final Graph graph;
+    private Cones cones = null;
+    private List<GraphVertex> markedVertices = Collections.emptyList();
+    private List<GraphVertex> negMarkedVertices = Collections.emptyList();
+    private GraphVertex canonicalApex = null;
+    private GraphVertex canonicalEnd = null;
+    private List<Edge> highlightPath = null;
+    private double[] viewport = null; // minX, minY, maxX, maxY in world coordinates, or null for the whole graph
+    private int nThreads = Runtime.getRuntime().availableProcessors();
+
+    public GraphRenderer(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Sets the cones used to draw the cones of marked vertices and the
+     * canonical triangle.
+     *
+     * @param cones
+     */
+    public void setCones(Cones cones) {
+        this.cones = cones;
+    }
+
+    /**
+     * Sets the vertices whose cones are drawn. Requires cones.
+     *
+     * @param markedVertices
+     */
+    public void setMarkedVertices(List<GraphVertex> markedVertices) {
+        this.markedVertices = (markedVertices == null ? Collections.<GraphVertex>emptyList() : markedVertices);
+    }
+
+    /**
+     * Sets the vertices whose cones are drawn upside down. Requires cones.
+     *
+     * @param negMarkedVertices
+     */
+    public void setNegMarkedVertices(List<GraphVertex> negMarkedVertices) {
+        this.negMarkedVertices = (negMarkedVertices == null ? Collections.<GraphVertex>emptyList() : negMarkedVertices);
+    }
+
+    /**
+     * Draws the canonical triangle, or the canonical sector for Yao graphs, of
+     * the given apex that contains the given end. Requires cones. Use
+     * <code>null</code> for both to draw no triangle.
+     *
+     * @param apex
+     * @param end
+     */
+    public void setCanonicalTriangle(GraphVertex apex, GraphVertex end) {
+        this.canonicalApex = apex;
+        this.canonicalEnd = end;
+    }
+
+    public void setHighlightPath(List<Edge> highlightPath) {
+        this.highlightPath = highlightPath;
+    }
+
+    /**
+     * Shows the given rectangle of the plane, scaled uniformly to fit the
+     * picture, instead of the whole graph.
+     *
+     * @param minX
+     * @param minY
+     * @param maxX
+     * @param maxY
+     */
+    public void setViewport(double minX, double minY, double maxX, double maxY) {
+        if (!(minX <= maxX && minY <= maxY)) {
+            throw new IllegalArgumentException("The viewport must have a non-negative width and height.");
+        }
+
+        viewport = new double[]{minX, minY, maxX, maxY};
+    }
+
+    /**
+     * Shows the whole graph again.
+     */
+    public void clearViewport() {
+        viewport = null;
+    }
+
+    public void setThreadCount(int nThreads) {
+        if (nThreads < 1) {
+            throw new IllegalArgumentException("At least one thread is required.");
+        }
+
+        this.nThreads = nThreads;
+    }
+
+    public void writePNG(File file, int width, int height) throws IOException {
+        if (!ImageIO.write(render(width, height), "png", file)) {
+            throw new IOException("No PNG writer is available.");
+        }
+    }
+
+    /**
+     * Draws the graph on a new image of the given size.
+     *
+     * @param width
+     * @param height
+     * @return
+     */
+    public BufferedImage render(int width, int height) {
+        final BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final View view = new View(width, height);
+        final int nBands = Math.max(1, Math.min(height, BANDS_PER_THREAD * nThreads));
+        final AtomicInteger nextBand = new AtomicInteger(0);
+        final List<Throwable> failures = new ArrayList<Throwable>(1);
+        List<Thread> threads = new ArrayList<Thread>(nThreads);
+
+        Runnable worker = new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    for (int band = nextBand.getAndIncrement(); band < nBands; band = nextBand.getAndIncrement()) {
+                        int top = (int) ((long) band * image.getHeight() / nBands);
+                        int bottom = (int) ((long) (band + 1) * image.getHeight() / nBands);
+
+                        if (bottom > top) {
+                            drawBand(image, view, top, bottom);
+                        }
+                    }
+                } catch (Throwable t) {
+                    synchronized (failures) {
+                        failures.add(t);
+                    }
+                }
+            }
+        };
+
+        for (int i = 1; i < Math.min(nThreads, nBands); i++) {
+            Thread thread = new Thread(worker);
+            thread.start();
+            threads.add(thread);
+        }
+
+        worker.run();
+
+        boolean interrupted = false;
+
+        for (Thread thread : threads) {
+            while (true) {
+                try {
+                    thread.join();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!failures.isEmpty()) {
+            Throwable first = failures.get(0);
+
+            if (first instanceof RuntimeException) {
+                throw (RuntimeException) first;
+            } else if (first instanceof Error) {
+                throw (Error) first;
+            } else {
+                throw new RuntimeException(first);
+            }
+        }
+
+        return image;
+    }
+
+    public void writeSVG(File file, int width, int height) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+
+        try {
+            writeSVG(out, width, height);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the graph as an SVG picture of the given size. The output is
+     * flushed, but not closed.
+     *
+     * @param out
+     * @param width
+     * @param height
+     * @throws IOException
+     */
+    public void writeSVG(OutputStream out, int width, int height) throws IOException {
+        SVGCanvas canvas = new SVGCanvas(new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 1 << 16), width, height);
+        draw(canvas, new View(width, height), 0, 0, width, height);
+        canvas.finish();
+    }
+
+    private void drawBand(BufferedImage image, View view, int top, int bottom) {
+        BufferedImage band = image.getSubimage(0, top, image.getWidth(), bottom - top);
+        Graphics2D g = band.createGraphics();
+
+        try {
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, band.getWidth(), band.getHeight());
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.translate(0, -top);
+
+            draw(new ImageCanvas(g), view, 0, top, image.getWidth(), bottom);
+        } catch (IOException ex) {
+            // Drawing on an image does not do any I/O
+            throw new IllegalStateException(ex);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Draws everything that overlaps the given rectangle in screen
+     * coordinates, in the same order as GraphDrawPanel.
+     */
+    private void draw(Canvas canvas, View view, double left, double top, double right, double bottom) throws IOException {
+        // Anything further from the rectangle than the widest stroke or mark cannot be visible
+        Clip clip = new Clip(left - 2 * ARROW_HEAD_SIZE, top - 2 * ARROW_HEAD_SIZE, right + 2 * ARROW_HEAD_SIZE, bottom + 2 * ARROW_HEAD_SIZE);
+
+        if (cones != null) {
+            // Draw cones for marked vertices, in thin grey lines
+            canvas.setStyle(CONE_COLOR, 1);
+
+            for (GraphVertex v : markedVertices) {
+                drawCones(canvas, view, v, true);
+            }
+
+            for (GraphVertex v : negMarkedVertices) {
+                drawCones(canvas, view, v, false);
+            }
+        }
+
+        // Draw constraints
+        canvas.setStyle(Color.BLACK, 4);
+
+        for (Constraint constraint : graph.getConstraints()) {
+            drawSegment(canvas, view, clip, constraint.getVA(), constraint.getVB());
+        }
+
+        // Draw the canonical triangle
+        if (cones != null && canonicalApex != null && canonicalEnd != null) {
+            Cone cone = cones.getCone(canonicalApex, canonicalEnd);
+
+            if (cone != null) {
+                canvas.setStyle(CANONICAL_COLOR, 2);
+                drawCanonicalRegion(canvas, view, cone);
+            }
+        }
+
+        // Draw all edges
+        canvas.setStyle(Color.BLACK, 1);
+
+        for (Edge e : graph.getEdges()) {
+            if (e.isVisible()) {
+                drawEdge(canvas, view, clip, e);
+            }
+        }
+
+        // Draw special edges
+        if (highlightPath != null) {
+            canvas.setStyle(HIGHLIGHT_COLOR, 2);
+
+            for (Edge e : highlightPath) {
+                drawEdge(canvas, view, clip, e);
+            }
+        }
+
+        // Draw the vertices, with the canonical apex and end on top in their own style
+        boolean drawApex = false, drawEnd = false;
+        canvas.setStyle(Color.BLACK, 1);
+
+        for (GraphVertex v : graph.getVertices()) {
+            if (!v.isVisible()) {
+                continue;
+            }
+
+            if (v == canonicalApex) {
+                drawApex = true;
+            } else if (v == canonicalEnd) {
+                drawEnd = true;
+            } else {
+                drawVertex(canvas, view, clip, v);
+            }
+        }
+
+        if (drawApex || drawEnd) {
+            canvas.setStyle(CANONICAL_COLOR, 2);
+
+            if (drawApex) {
+                drawVertex(canvas, view, clip, canonicalApex);
+            }
+
+            if (drawEnd) {
+                drawVertex(canvas, view, clip, canonicalEnd);
+            }
+        }
+    }
+
+    private void drawVertex(Canvas canvas, View view, Clip clip, GraphVertex v) throws IOException {
+        double x = view.toScreenX(v.getX());
+        double y = view.toScreenY(v.getY());
+
+        if (clip.contains(x, y)) {
+            canvas.drawVertex(x, y, VERTEX_SIZE);
+        }
+    }
+
+    private void drawSegment(Canvas canvas, View view, Clip clip, GraphVertex a, GraphVertex b) throws IOException {
+        double x1 = view.toScreenX(a.getX());
+        double y1 = view.toScreenY(a.getY());
+        double x2 = view.toScreenX(b.getX());
+        double y2 = view.toScreenY(b.getY());
+
+        if (clip.overlaps(x1, y1, x2, y2)) {
+            canvas.drawLine(x1, y1, x2, y2);
+        }
+    }
+
+    private void drawEdge(Canvas canvas, View view, Clip clip, Edge e) throws IOException {
+        double x1 = view.toScreenX(e.getVA().getX());
+        double y1 = view.toScreenY(e.getVA().getY());
+        double x2 = view.toScreenX(e.getVB().getX());
+        double y2 = view.toScreenY(e.getVB().getY());
+
+        if (!clip.overlaps(x1, y1, x2, y2)) {
+            return;
+        }
+
+        canvas.drawLine(x1, y1, x2, y2);
+
+        if (e.isDirected()) {
+            // Draw an arrowhead in the middle
+            double midX = 0.5 * (x1 + x2);
+            double midY = 0.5 * (y1 + y2);
+            double vx = midX - x1;
+            double vy = midY - y1;
+            double length = Math.sqrt(vx * vx + vy * vy);
+
+            if (length > 0) {
+                vx /= length;
+                vy /= length;
+
+                // The orthogonal vector to the right
+                double ox = vy;
+                double oy = -vx;
+
+                canvas.drawPolyline(new double[]{
+                    midX - ARROW_HEAD_SIZE * vx - ARROW_HEAD_SIZE * ox, midY - ARROW_HEAD_SIZE * vy - ARROW_HEAD_SIZE * oy,
+                    midX, midY,
+                    midX - ARROW_HEAD_SIZE * vx + ARROW_HEAD_SIZE * ox, midY - ARROW_HEAD_SIZE * vy + ARROW_HEAD_SIZE * oy
+                });
+            }
+        }
+    }
+
+    private void drawCones(Canvas canvas, View view, GraphVertex v, boolean positive) throws IOException {
+        double x = view.toScreenX(v.getX());
+        double y = view.toScreenY(v.getY());
+
+        // Long enough to leave the picture, even if the apex is not inside it. This
+        // must not depend on the clip, or bands would draw slightly different lines.
+        double length = Math.max(Math.abs(x), Math.abs(x - view.width)) + Math.max(Math.abs(y), Math.abs(y - view.height)) + MARGIN;
+
+        // Angles are clockwise from straight up, or from straight down for negative cones
+        double offset = (positive ? 0 : Math.PI);
+
+        for (Cone cone : cones.getCones()) {
+            double first = offset + cone.getBisector() - cone.getAperture() / 2;
+            double second = first + cone.getAperture();
+
+            canvas.drawLine(x, y, x + length * Math.sin(first), y - length * Math.cos(first));
+            canvas.drawLine(x, y, x + length * Math.sin(second), y - length * Math.cos(second));
+        }
+    }
+
+    private void drawCanonicalRegion(Canvas canvas, View view, Cone cone) throws IOException {
+        if (cones.isTheta()) {
+            CanonicalTriangle c = new CanonicalTriangle(canonicalApex, canonicalEnd, cones);
+            double apexX = view.toScreenX(c.getApex().getX());
+            double apexY = view.toScreenY(c.getApex().getY());
+
+            canvas.drawPolyline(new double[]{
+                view.toScreenX(c.getCorner1X()), view.toScreenY(c.getCorner1Y()),
+                apexX, apexY,
+                view.toScreenX(c.getCorner2X()), view.toScreenY(c.getCorner2Y()),
+                view.toScreenX(c.getCorner1X()), view.toScreenY(c.getCorner1Y())
+            });
+        } else {
+            double xA = view.toScreenX(canonicalApex.getX());
+            double yA = view.toScreenY(canonicalApex.getY());
+            double xB = view.toScreenX(canonicalEnd.getX());
+            double yB = view.toScreenY(canonicalEnd.getY());
+
+            double radius = Math.sqrt((xA - xB) * (xA - xB) + (yA - yB) * (yA - yB));
+
+            // Counterclockwise from the positive x-axis, as in Arc2D
+            double start = Math.PI / 2 - (cone.getBisector() + 0.5 * cone.getAperture());
+
+            if (start < 0) {
+                start += 2 * Math.PI;
+            }
+
+            canvas.drawSector(xA, yA, radius, start, cone.getAperture());
+        }
+    }
+
+    /**
+     * Maps world coordinates to screen coordinates, with the y-axis pointing
+     * down.
+     */
+    private class View {
+
+        private final double scale;
+        private final double centerX, centerY; // The world point at the center of the picture
+        private final double screenCenterX, screenCenterY;
+        private final int width, height;
+
+        View(int width, int height) {
+            if (width < 1 || height < 1) {
+                throw new IllegalArgumentException("The picture must be at least one pixel wide and high.");
+            }
+
+            this.width = width;
+            this.height = height;
+
+            double minX, minY, maxX, maxY;
+
+            if (viewport != null) {
+                minX = viewport[0];
+                minY = viewport[1];
+                maxX = viewport[2];
+                maxY = viewport[3];
+            } else {
+                minX = Double.POSITIVE_INFINITY;
+                minY = Double.POSITIVE_INFINITY;
+                maxX = Double.NEGATIVE_INFINITY;
+                maxY = Double.NEGATIVE_INFINITY;
+
+                for (GraphVertex vertex : graph.getVertices()) {
+                    minX = Math.min(minX, vertex.getX());
+                    minY = Math.min(minY, vertex.getY());
+                    maxX = Math.max(maxX, vertex.getX());
+                    maxY = Math.max(maxY, vertex.getY());
+                }
+
+                if (graph.getVertices().isEmpty()) {
+                    minX = minY = 0;
+                    maxX = maxY = 1;
+                }
+            }
+
+            double scaleX = Math.max(1, width - 2 * MARGIN) / (maxX - minX);
+            double scaleY = Math.max(1, height - 2 * MARGIN) / (maxY - minY);
+            double s = Math.min(scaleX, scaleY);
+
+            scale = (Double.isInfinite(s) ? 1 : s); // A single point
+            centerX = 0.5 * (minX + maxX);
+            centerY = 0.5 * (minY + maxY);
+            screenCenterX = 0.5 * width;
+            screenCenterY = 0.5 * height;
+        }
+
+        double toScreenX(double x) {
+            return screenCenterX + (x - centerX) * scale;
+        }
+
+        double toScreenY(double y) {
+            return screenCenterY - (y - centerY) * scale;
+        }
+    }
+
+    /**
+     * A rectangle in screen coordinates.
+     */
+    private static class Clip {
+
+        private final double minX, minY, maxX, maxY;
+
+        Clip(double minX, double minY, double maxX, double maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        boolean contains(double x, double y) {
+            return minX <= x && x <= maxX && minY <= y && y <= maxY;
+        }
+
+        /**
+         * Returns false if the segment certainly misses this rectangle.
+         */
+        boolean overlaps(double x1, double y1, double x2, double y2) {
+            return Math.min(x1, x2) <= maxX && Math.max(x1, x2) >= minX
+                    && Math.min(y1, y2) <= maxY && Math.max(y1, y2) >= minY;
+        }
+    }
+
+    /**
+     * The drawing operations shared by the image and SVG output. All
+     * coordinates are in pixels, with the y-axis pointing down.
+     */
+    private interface Canvas {
+
+        void setStyle(Color color, float width) throws IOException;
+
+        void drawLine(double x1, double y1, double x2, double y2) throws IOException;
+
+        void drawPolyline(double[] xy) throws IOException;
+
+        /**
+         * Draws a circle with a white interior.
+         */
+        void drawVertex(double x, double y, double radius) throws IOException;
+
+        /**
+         * Draws the outline of a circular sector. Angles are in radians,
+         * counterclockwise from the positive x-axis as seen on the screen.
+         */
+        void drawSector(double x, double y, double radius, double start, double extent) throws IOException;
+    }
+
+    private static class ImageCanvas implements Canvas {
+
+        private final Graphics2D g;
+        private final Line2D.Double line = new Line2D.Double();
+        private final Ellipse2D.Double circle = new Ellipse2D.Double();
+        private Color color;
+
+        ImageCanvas(Graphics2D g) {
+            this.g = g;
+        }
+
+        @Override
+        public void setStyle(Color color, float width) {
+            this.color = color;
+            g.setColor(color);
+            g.setStroke(new BasicStroke(width));
+        }
+
+        @Override
+        public void drawLine(double x1, double y1, double x2, double y2) {
+            line.setLine(x1, y1, x2, y2);
+            g.draw(line);
+        }
+
+        @Override
+        public void drawPolyline(double[] xy) {
+            GeneralPath path = new GeneralPath();
+            path.moveTo(xy[0], xy[1]);
+
+            for (int i = 2; i < xy.length; i += 2) {
+                path.lineTo(xy[i], xy[i + 1]);
+            }
+
+            g.draw(path);
+        }
+
+        @Override
+        public void drawVertex(double x, double y, double radius) {
+            circle.setFrame(x - radius, y - radius, 2 * radius, 2 * radius);
+            g.setColor(Color.WHITE);
+            g.fill(circle);
+            g.setColor(color);
+            g.draw(circle);
+        }
+
+        @Override
+        public void drawSector(double x, double y, double radius, double start, double extent) {
+            Arc2D arc = new Arc2D.Double();
+            arc.setArcByCenter(x, y, radius, Math.toDegrees(start), Math.toDegrees(extent), Arc2D.PIE);
+            g.draw(arc);
+        }
+    }
+
+    /**
+     * Writes SVG elements as they are drawn. Consecutive lines and polylines
+     * of the same style are combined into one path element.
+     */
+    private static class SVGCanvas implements Canvas {
+
+        private static final int MAX_PATH_LENGTH = 1 << 16; // Characters of path data before a new path is started
+        private final Writer out;
+        private final StringBuilder path = new StringBuilder();
+        private boolean groupOpen = false;
+
+        SVGCanvas(Writer out, int width, int height) throws IOException {
+            this.out = out;
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.1\" width=\"" + width + "\" height=\"" + height
+                    + "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+            out.write("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+        }
+
+        @Override
+        public void setStyle(Color color, float width) throws IOException {
+            flushPath();
+
+            if (groupOpen) {
+                out.write("</g>\n");
+            }
+
+            out.write("<g fill=\"none\" stroke=\"" + String.format("#%06x", color.getRGB() & 0xFFFFFF) + "\" stroke-width=\"" + width
+                    + "\" stroke-linecap=\"square\" stroke-linejoin=\"miter\">\n");
+            groupOpen = true;
+        }
+
+        @Override
+        public void drawLine(double x1, double y1, double x2, double y2) throws IOException {
+            path.append('M');
+            appendPoint(x1, y1);
+            path.append('L');
+            appendPoint(x2, y2);
+            checkPathLength();
+        }
+
+        @Override
+        public void drawPolyline(double[] xy) throws IOException {
+            path.append('M');
+            appendPoint(xy[0], xy[1]);
+
+            for (int i = 2; i < xy.length; i += 2) {
+                path.append('L');
+                appendPoint(xy[i], xy[i + 1]);
+            }
+
+            checkPathLength();
+        }
+
+        @Override
+        public void drawVertex(double x, double y, double radius) throws IOException {
+            flushPath();
+            path.append("<circle fill=\"white\" cx=\"");
+            appendNumber(x);
+            path.append("\" cy=\"");
+            appendNumber(y);
+            path.append("\" r=\"");
+            appendNumber(radius);
+            path.append("\"/>\n");
+            out.append(path);
+            path.setLength(0);
+        }
+
+        @Override
+        public void drawSector(double x, double y, double radius, double start, double extent) throws IOException {
+            path.append('M');
+            appendPoint(x, y);
+            path.append('L');
+            appendPoint(x + radius * Math.cos(start), y - radius * Math.sin(start));
+
+            // A counterclockwise arc on the screen has sweep flag 0
+            path.append('A');
+            appendPoint(radius, radius);
+            path.append(extent > Math.PI ? " 0 1 0 " : " 0 0 0 ");
+            appendPoint(x + radius * Math.cos(start + extent), y - radius * Math.sin(start + extent));
+            path.append('Z');
+            checkPathLength();
+        }
+
+        void finish() throws IOException {
+            flushPath();
+
+            if (groupOpen) {
+                out.write("</g>\n");
+            }
+
+            out.write("</svg>\n");
+            out.flush();
+        }
+
+        private void checkPathLength() throws IOException {
+            if (path.length() > MAX_PATH_LENGTH) {
+                flushPath();
+            }
+        }
+
+        private void flushPath() throws IOException {
+            if (path.length() > 0) {
+                out.write("<path d=\"");
+                out.append(path);
+                out.write("\"/>\n");
+                path.setLength(0);
+            }
+        }
+
+        private void appendPoint(double x, double y) {
+            appendNumber(x);
+            path.append(' ');
+            appendNumber(y);
+        }
+
+        /**
+         * Appends the number rounded to two decimals, without trailing zeros.
+         */
+        private void appendNumber(double d) {
+            if (Double.isNaN(d) || Math.abs(d) > 1e15) {
+                path.append(d > 0 ? "1e15" : (d < 0 ? "-1e15" : "0"));
+                return;
+            }
+
+            long hundredths = Math.round(Math.abs(d) * 100);
+
+            if (hundredths == 0) {
+                path.append('0');
+                return;
+            }
+
+            if (d < 0) {
+                path.append('-');
+            }
+
+            path.append(hundredths / 100);
+
+            int fraction = (int) (hundredths % 100);
+
+            if (fraction != 0) {
+                path.append('.');
+                path.append((char) ('0' + fraction / 10));
+
+                if (fraction % 10 != 0) {
+                    path.append((char) ('0' + fraction % 10));
+                }
+            }
+        }
+    }
+}
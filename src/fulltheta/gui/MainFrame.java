@@ -23,14 +23,20 @@
  */
 package fulltheta.gui;
 
-import fulltheta.algos.SpanningRatioComputer;
+import fulltheta.algos.DirectedSpanningRatioComputer;
+import fulltheta.algos.DynamicSpanningRatioComputer;
+import fulltheta.algos.HopDistanceComputer;
+import fulltheta.data.graph.Edge;
 import fulltheta.data.graph.Graph;
 import fulltheta.data.graph.GraphVertex;
+import fulltheta.io.GraphReader;
+import fulltheta.io.GraphWriter;
 import fulltheta.ipe.IPEExporter;
 import fulltheta.ipe.IPEImporter;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.io.*;
+import java.util.List;
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.filechooser.FileNameExtensionFilter;
@@ -49,6 +55,8 @@ public class MainFrame extends javax.swing.JFrame {
     private IPEExporter ipeExporter = new IPEExporter();
     private IPEImporter ipeImporter = new IPEImporter();
     private ConesDialog conesDialog;
+    private static final long DYNAMIC_SR_BUDGET = 256L << 20; // Keep all shortest paths between clicks only if they take at most this many bytes
+    private DynamicSpanningRatioComputer dynamicSR = null;
 
     /** Creates new form MainFrame */
     public MainFrame() {
@@ -72,43 +80,11 @@ public class MainFrame extends javax.swing.JFrame {
     }
 
     private Graph loadGraph(File file) throws IOException {
-        BufferedReader in = null;
-
-        try {
-            in = new BufferedReader(new FileReader(file));
-
-            StringBuilder text = new StringBuilder();
-            String line = in.readLine();
-
-            while (line != null) {
-                text.append(line);
-                text.append("\n");
-
-                line = in.readLine();
-            }
-
-            // Read the data
-            return Graph.fromSaveString(text.toString());
-        } finally {
-            if (in != null) {
-                in.close();
-            }
-        }
+        return GraphReader.read(file);
     }
 
     private void save(File file) throws IOException {
-        BufferedWriter out = null;
-
-        try {
-            out = new BufferedWriter(new FileWriter(file));
-
-            // Write the data
-            out.write(drawPanel.getGraph().toSaveString());
-        } finally {
-            if (out != null) {
-                out.close();
-            }
-        }
+        GraphWriter.write(drawPanel.getGraph(), file);
     }
 
     /** This method is called from within the constructor to
@@ -326,7 +302,7 @@ public class MainFrame extends javax.swing.JFrame {
                     }
                 }
 
-                drawPanel.setGraph(graph);
+                setGraph(graph);
 
                 saveFileChooser.setCurrentDirectory(selectedFile);
             } catch (IOException ioe) {
@@ -389,7 +365,7 @@ public class MainFrame extends javax.swing.JFrame {
     }//GEN-LAST:event_saveMenuItemActionPerformed
 
     private void newMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_newMenuItemActionPerformed
-        drawPanel.setGraph(new Graph());
+        setGraph(new Graph());
         
         if (lockMenuItem.isSelected()) {
             drawPanel.setLocked(false);
@@ -412,7 +388,7 @@ public class MainFrame extends javax.swing.JFrame {
             graph.addVertex(new GraphVertex(Math.random(), Math.random()));
         }
 
-        drawPanel.setGraph(graph);
+        setGraph(graph);
         drawPanel.recomputeSpanner();
 }//GEN-LAST:event_randomGraphMenuItemActionPerformed
 
@@ -439,11 +415,70 @@ public class MainFrame extends javax.swing.JFrame {
     }//GEN-LAST:event_clearMarksMenuItemActionPerformed
 
     private void spanningRatioMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_spanningRatioMenuItemActionPerformed
-        SpanningRatioComputer sr = new SpanningRatioComputer(drawPanel.getGraph());
+        Graph graph = drawPanel.getGraph();
+        Runtime runtime = Runtime.getRuntime();
+        long dynamicMemory = DynamicSpanningRatioComputer.getMemoryUse(graph.getVertices().size());
+
+        if (!directedMenuItem.isSelected() && dynamicMemory <= Math.min(DYNAMIC_SR_BUDGET, runtime.maxMemory() / 4)) {
+            // Small enough to keep the shortest paths around, so small edits only need a partial update
+            if (dynamicSR == null || dynamicSR.getGraph() != graph) {
+                dynamicSR = new DynamicSpanningRatioComputer(graph);
+            }
+
+            dynamicSR.update();
+            drawPanel.setHighlightPath(dynamicSR.getMaximalPath());
+            JOptionPane.showMessageDialog(this, "Spanning Ratio: " + dynamicSR.getSpanningRatio() + getHopDescription(dynamicSR.getMaximalPath()));
+            return;
+        }
+
+        // Release the shortest paths of a smaller version of the graph before we need the memory
+        dynamicSR = null;
+
+        // Stay within the memory we can still get, so large graphs do not run out
+        long available = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+        int nThreads;
+
+        try {
+            nThreads = DirectedSpanningRatioComputer.getThreadCount(graph, null, available);
+        } catch (IllegalArgumentException iae) {
+            // Nice error
+            JOptionPane.showMessageDialog(this,
+                    "Not enough memory to compute the spanning ratio of this graph:\n"
+                    + iae.getMessage(),
+                    "Error!", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+
+        // Undirected edges can be followed both ways, so this also handles undirected graphs, with memory linear in the number of vertices per thread
+        DirectedSpanningRatioComputer sr = new DirectedSpanningRatioComputer(graph, null, nThreads);
         drawPanel.setHighlightPath(sr.getMaximalPath());
-        JOptionPane.showMessageDialog(this, "Spanning Ratio: " + sr.getSpanningRatio());
+        JOptionPane.showMessageDialog(this, "Spanning Ratio: " + sr.getSpanningRatio() + getHopDescription(sr.getMaximalPath()));
     }//GEN-LAST:event_spanningRatioMenuItemActionPerformed
 
+    /**
+     * Shows the given graph and drops everything computed for the previous
+     * one.
+     *
+     * @param graph
+     */
+    private void setGraph(Graph graph) {
+        dynamicSR = null;
+        drawPanel.setGraph(graph);
+    }
+
+    private String getHopDescription(List<Edge> maximalPath) {
+        if (maximalPath == null || maximalPath.isEmpty()) {
+            return "";
+        }
+
+        // The breadth-first searches handle 64 sources at once, so this takes a fraction of the time of the spanning ratio
+        HopDistanceComputer hops = new HopDistanceComputer(drawPanel.getGraph());
+        int diameter = hops.getHopDiameter(); // First, so the single search below reuses its snapshot of the graph
+
+        return "\nHops on this path: " + maximalPath.size() + " (fewest possible: " + hops.getHopDistance(maximalPath) + ")"
+                + "\nHop diameter: " + diameter;
+    }
+
     private void removeEdgeMenuItemActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_removeEdgeMenuItemActionPerformed
         EdgeRemovalDialog erd = new EdgeRemovalDialog(this, drawPanel.getSelectedEdge(), drawPanel);
         erd.setVisible(true);
@@ -0,0 +1,283 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.io;
+
+/**
+ * Formats numbers as ASCII digits directly into a byte array, without
+ * creating a string for every number.
+ *
+ * Doubles are written as the shortest decimal that reads back as exactly the
+ * same double, in the plain notation of <code>Double.toString</code>. The
+ * number of digits after the decimal point is found by binary search, checking
+ * with an exact product whether the nearest decimal with that many digits lies
+ * within half a unit in the last place of the double. Values that
+ * <code>Double.toString</code> writes in scientific notation, below 10^-3 or
+ * from 10^7 on, and NaN and infinities, still go through
+ * <code>Double.toString</code>.
+ *
+ * Every method writes at most MAX_LENGTH bytes, starting at the given
+ * position, and returns the position after the last byte it wrote.
+ */
+public final class AsciiNumberFormat {
+
+    public static final int MAX_LENGTH = 32;
+    private static final double MIN_PLAIN = 1e-3; // Double.toString switches to scientific notation outside [10^-3, 10^7)
+    private static final double MAX_PLAIN = 1e7;
+    private static final double MAX_MANTISSA = 1e17; // More than 17 significant digits are never needed
+    private static final double MAX_SCALED = 1e15; // Larger values cannot be rounded exactly as a long
+    private static final double SPLIT = (1 << 27) + 1; // Splits a double into two halves of 26 bits
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private AsciiNumberFormat() {
+    }
+
+    /**
+     * Writes the decimal digits of the given value, preceded by a minus sign
+     * if it is negative.
+     *
+     * @param value
+     * @param buffer
+     * @param at
+     * @return
+     */
+    public static int writeLong(long value, byte[] buffer, int at) {
+        if (value == Long.MIN_VALUE) {
+            return writeAscii(Long.toString(value), buffer, at);
+        }
+
+        if (value < 0) {
+            buffer[at++] = '-';
+            value = -value;
+        }
+
+        return writeDigits(value, getDigitCount(value), buffer, at);
+    }
+
+    /**
+     * Writes the shortest decimal that reads back as the given double.
+     *
+     * @param d
+     * @param buffer
+     * @param at
+     * @return
+     */
+    public static int writeDouble(double d, byte[] buffer, int at) {
+        double x = Math.abs(d);
+
+        if (d == 0) {
+            // Negative zero must keep its sign
+            return writeAscii(1 / d > 0 ? "0.0" : "-0.0", buffer, at);
+        } else if (!(x >= MIN_PLAIN && x < MAX_PLAIN)) {
+            return writeAscii(Double.toString(d), buffer, at);
+        }
+
+        // Every decimal closer to x than this rounds to x. At powers of two the gap below is smaller.
+        double halfGap = 0.5 * Math.min(Math.nextUp(x) - x, x - Math.nextAfter(x, 0));
+
+        // If a decimal with e digits after the point rounds to x, so does one with e + 1 digits,
+        // so we look for the fewest digits by binary search, up to 17 significant digits
+        int low = 0;
+        int high = 0;
+
+        while (high + 1 < POWERS_OF_TEN.length && x * POWERS_OF_TEN[high + 1] < MAX_MANTISSA) {
+            high++;
+        }
+
+        long mHigh = getNearestDecimal(x, high, halfGap);
+
+        if (mHigh < 0) {
+            return writeAscii(Double.toString(d), buffer, at);
+        }
+
+        while (low < high) {
+            int mid = (low + high) / 2;
+            long m = getNearestDecimal(x, mid, halfGap);
+
+            if (m < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+                mHigh = m;
+            }
+        }
+
+        if (d < 0) {
+            buffer[at++] = '-';
+        }
+
+        return writeFraction(mHigh, high, buffer, at);
+    }
+
+    /**
+     * Writes the given double rounded to the given number of digits after the
+     * decimal point, with trailing zeros and a trailing decimal point removed.
+     * Values too large to round this way are written as by writeDouble.
+     *
+     * @param d
+     * @param precision at most 15
+     * @param buffer
+     * @param at
+     * @return
+     */
+    public static int writeFixed(double d, int precision, byte[] buffer, int at) {
+        double scale = POWERS_OF_TEN[precision];
+
+        if (!(Math.abs(d * scale) < MAX_SCALED)) {
+            return writeDouble(d, buffer, at);
+        }
+
+        long scaled = Math.round(Math.abs(d) * scale);
+
+        if (scaled == 0) {
+            buffer[at++] = '0';
+            return at;
+        }
+
+        if (d < 0) {
+            buffer[at++] = '-';
+        }
+
+        // Trailing zeros of the fraction are dropped, the leading ones are kept
+        int n = precision;
+
+        while (n > 0 && scaled % 10 == 0) {
+            scaled /= 10;
+            n--;
+        }
+
+        if (n == 0) {
+            return writeDigits(scaled, getDigitCount(scaled), buffer, at);
+        } else {
+            return writeFraction(scaled, n, buffer, at);
+        }
+    }
+
+    /**
+     * Writes m / 10^e with exactly e digits after the decimal point, or with
+     * ".0" if e is zero.
+     */
+    private static int writeFraction(long m, int e, byte[] buffer, int at) {
+        int nDigits = getDigitCount(m);
+
+        if (e == 0) {
+            at = writeDigits(m, nDigits, buffer, at);
+            buffer[at++] = '.';
+            buffer[at++] = '0';
+            return at;
+        }
+
+        if (nDigits <= e) {
+            buffer[at++] = '0';
+            buffer[at++] = '.';
+
+            for (int i = nDigits; i < e; i++) {
+                buffer[at++] = '0';
+            }
+
+            return writeDigits(m, nDigits, buffer, at);
+        }
+
+        // Write all digits shifted by one, then move the integer part forward over the gap for the point
+        int end = writeDigits(m, nDigits, buffer, at + 1);
+        int point = end - e - 1;
+        System.arraycopy(buffer, at + 1, buffer, at, point - at);
+        buffer[point] = '.';
+        return end;
+    }
+
+    /**
+     * Writes the given number of least significant digits of the
+     * non-negative value.
+     */
+    private static int writeDigits(long value, int nDigits, byte[] buffer, int at) {
+        int end = at + nDigits;
+
+        for (int i = end - 1; i >= at; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+
+        return end;
+    }
+
+    private static int getDigitCount(long value) {
+        int n = 1;
+
+        while (value >= 10) {
+            value /= 10;
+            n++;
+        }
+
+        return n;
+    }
+
+    private static int writeAscii(String s, byte[] buffer, int at) {
+        for (int i = 0; i < s.length(); i++) {
+            buffer[at++] = (byte) s.charAt(i);
+        }
+
+        return at;
+    }
+
+    /**
+     * Returns the integer m nearest to x * 10^e if m / 10^e rounds to x, and
+     * -1 otherwise.
+     */
+    private static long getNearestDecimal(double x, int e, double halfGap) {
+        double scale = POWERS_OF_TEN[e];
+        double hi = x * scale;
+        double lo = getProductError(x, scale, hi); // x * scale == hi + lo exactly
+
+        double floor = Math.floor(hi);
+        double diff = (hi - floor) + lo;
+        long adjust = (long) Math.floor(diff + 0.5);
+        diff -= adjust;
+
+        // The sum in diff is rounded, so stay a little away from the border of the gap
+        if (Math.abs(diff) < halfGap * scale * (1 - 1e-12)) {
+            return (long) floor + adjust;
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the rounding error of the product a * b, given that it was
+     * rounded to p. This is Dekker's exact product: both factors are split
+     * into halves whose products are exact.
+     */
+    private static double getProductError(double a, double b, double p) {
+        double ca = SPLIT * a;
+        double aHigh = ca - (ca - a);
+        double aLow = a - aHigh;
+        double cb = SPLIT * b;
+        double bHigh = cb - (cb - b);
+        double bLow = b - bHigh;
+
+        return ((aHigh * bHigh - p) + aHigh * bLow + aLow * bHigh) + aLow * bLow;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.io;
+
+import fulltheta.algos.Cone;
+import fulltheta.algos.Cones;
+import fulltheta.data.graph.Constraint;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes graphs in the binary format read by MappedGraph. The file is sized
+ * up front and every block is filled through a memory mapping, so the
+ * adjacency block can be written in place without building it in memory
+ * first.
+ */
+public class BinaryGraphWriter {
+
+    private BinaryGraphWriter() {
+    }
+
+    /**
+     * Writes the given graph, without cone orderings.
+     *
+     * @param graph
+     * @param file
+     * @throws IOException
+     */
+    public static void write(Graph graph, File file) throws IOException {
+        write(graph, null, file);
+    }
+
+    /**
+     * Writes the given graph, including the ordering of its vertices for each
+     * of the given cones, if they are not <code>null</code>. This sets the
+     * vertices of the cones to those of the graph.
+     *
+     * @param graph
+     * @param cones
+     * @param file
+     * @throws IOException
+     */
+    public static void write(Graph graph, Cones cones, File file) throws IOException {
+        List<GraphVertex> vertices = graph.getVertices();
+        List<Edge> edges = graph.getEdges();
+        List<Constraint> constraints = graph.getConstraints();
+        int n = vertices.size();
+        int m = edges.size();
+        int c = constraints.size();
+        int nCones = (cones == null ? 0 : cones.getCones().length);
+
+        // GraphVertex.equals compares coordinates, so we need identity here
+        Map<GraphVertex, Integer> vertexIndex = new IdentityHashMap<GraphVertex, Integer>(2 * n);
+
+        for (int i = 0; i < n; i++) {
+            vertexIndex.put(vertices.get(i), i);
+        }
+
+        // Lay out the blocks
+        long[] offsets = new long[MappedGraph.N_BLOCKS + 1];
+        long[] sizes = MappedGraph.getBlockSizes(n, m, c, nCones);
+        offsets[0] = MappedGraph.HEADER_SIZE;
+
+        for (int b = 0; b < MappedGraph.N_BLOCKS; b++) {
+            if (sizes[b] > Integer.MAX_VALUE) {
+                throw new IOException("The graph is too large for the binary format.");
+            }
+
+            offsets[b + 1] = MappedGraph.align(offsets[b] + sizes[b]);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+        try {
+            raf.setLength(0);
+            raf.setLength(offsets[MappedGraph.N_BLOCKS]);
+            FileChannel channel = raf.getChannel();
+
+            ByteBuffer header = map(channel, 0, MappedGraph.HEADER_SIZE);
+            header.putInt(MappedGraph.MAGIC);
+            header.putInt(MappedGraph.VERSION);
+            header.putLong(n);
+            header.putLong(m);
+            header.putLong(c);
+            header.putInt(nCones);
+            header.putInt(cones == null ? 0 : (cones.isTheta() ? MappedGraph.THETA : 0) | (cones.isSimple() ? MappedGraph.SIMPLE : 0));
+
+            for (int b = 0; b <= MappedGraph.N_BLOCKS; b++) {
+                header.putLong(offsets[b]);
+            }
+
+            // Coordinates and vertex flags
+            ByteBuffer coordinates = map(channel, offsets[MappedGraph.COORDINATES], sizes[MappedGraph.COORDINATES]);
+            ByteBuffer vertexFlags = map(channel, offsets[MappedGraph.VERTEX_FLAGS], sizes[MappedGraph.VERTEX_FLAGS]);
+
+            for (GraphVertex v : vertices) {
+                coordinates.putDouble(v.getX());
+                coordinates.putDouble(v.getY());
+                vertexFlags.put(v.isVisible() ? 0 : MappedGraph.INVISIBLE);
+            }
+
+            // Edges, counting the arcs of every vertex on the way
+            ByteBuffer edgeBlock = map(channel, offsets[MappedGraph.EDGES], sizes[MappedGraph.EDGES]);
+            ByteBuffer edgeFlags = map(channel, offsets[MappedGraph.EDGE_FLAGS], sizes[MappedGraph.EDGE_FLAGS]);
+            int[] firstArc = new int[n + 1];
+
+            for (Edge edge : edges) {
+                int a = getIndex(vertexIndex, edge.getVA());
+                int b = getIndex(vertexIndex, edge.getVB());
+
+                edgeBlock.putInt(a);
+                edgeBlock.putInt(b);
+                edgeFlags.put((byte) ((edge.isDirected() ? MappedGraph.DIRECTED : 0) | (edge.isVisible() ? 0 : MappedGraph.INVISIBLE)));
+
+                firstArc[a + 1]++;
+                firstArc[b + 1]++;
+            }
+
+            // Compressed sparse rows: every edge gives an arc in both directions
+            for (int i = 0; i < n; i++) {
+                firstArc[i + 1] += firstArc[i];
+            }
+
+            ByteBuffer adjacency = map(channel, offsets[MappedGraph.ADJACENCY], sizes[MappedGraph.ADJACENCY]);
+
+            for (int i = 0; i <= n; i++) {
+                adjacency.putInt(firstArc[i]);
+            }
+
+            ByteBuffer arcTargets = map(channel, offsets[MappedGraph.ARC_TARGETS], sizes[MappedGraph.ARC_TARGETS]);
+            ByteBuffer arcEdges = map(channel, offsets[MappedGraph.ARC_EDGES], sizes[MappedGraph.ARC_EDGES]);
+            int[] fill = firstArc; // We no longer need the offsets themselves
+
+            for (int e = 0; e < m; e++) {
+                int a = edgeBlock.getInt(8 * e);
+                int b = edgeBlock.getInt(8 * e + 4);
+
+                arcTargets.putInt(4 * fill[a], b);
+                arcEdges.putInt(4 * fill[a], e);
+                fill[a]++;
+
+                arcTargets.putInt(4 * fill[b], a);
+                arcEdges.putInt(4 * fill[b], e);
+                fill[b]++;
+            }
+
+            // Constraints
+            ByteBuffer constraintBlock = map(channel, offsets[MappedGraph.CONSTRAINTS], sizes[MappedGraph.CONSTRAINTS]);
+
+            for (Constraint constraint : constraints) {
+                constraintBlock.putInt(getIndex(vertexIndex, constraint.getVA()));
+                constraintBlock.putInt(getIndex(vertexIndex, constraint.getVB()));
+            }
+
+            // Cones and their orderings
+            if (cones != null) {
+                ByteBuffer coneBlock = map(channel, offsets[MappedGraph.CONES], sizes[MappedGraph.CONES]);
+                cones.setVertices(vertices);
+
+                for (Cone cone : cones.getCones()) {
+                    coneBlock.putDouble(cone.getAperture());
+                    coneBlock.putDouble(cone.getBisector());
+                }
+
+                for (Cone cone : cones.getCones()) {
+                    for (GraphVertex v : cones.getSortedVertices(cone)) {
+                        coneBlock.putInt(vertexIndex.get(v));
+                    }
+                }
+            }
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static int getIndex(Map<GraphVertex, Integer> vertexIndex, GraphVertex v) throws IOException {
+        Integer index = vertexIndex.get(v);
+
+        if (index == null) {
+            throw new IOException("An edge or constraint refers to a vertex that is not part of the graph.");
+        }
+
+        return index;
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.io;
+
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads graphs in the format written by <code>Graph.toSaveString</code>,
+ * streaming the input through a fixed-size buffer instead of loading it into
+ * memory first.
+ *
+ * Numbers are parsed directly from the bytes. Coordinates with at most about
+ * 16 significant digits are converted exactly without creating a string;
+ * longer ones fall back to <code>Double.parseDouble</code>. The vertex and
+ * edge counts in the file are used to presize the graph, and all vertices are
+ * added at once, without the duplicate check of <code>addVertex</code>, so
+ * every vertex in the file ends up in the graph, even if two of them have the
+ * same coordinates. As
+ * with <code>Graph.fromSaveString</code>, the counts themselves are not
+ * enforced: vertices are read up to the line "Edges" and edges up to the line
+ * "Constraints" or the end of the input.
+ */
+public class GraphReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int MAX_PRESIZE = 1 << 26; // Don't trust huge counts before we have seen the data
+    private static final int MAX_EXACT_DIGITS = 16; // Beyond this, the mantissa is certainly too large and might overflow
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    private static final byte[] VERTICES = "Vertices".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EDGES = "Edges".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CONSTRAINTS = "Constraints".getBytes(StandardCharsets.US_ASCII);
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final byte[] bytes; // The array behind the buffer
+    private int position = 0, limit = 0; // The unread bytes are bytes[position] .. bytes[limit - 1]
+    private boolean endOfInput = false;
+    private final byte[] token = new byte[MAX_TOKEN_LENGTH];
+    private int tokenLength = 0; // 0 if there are no more tokens
+    private int line = 1;
+    private int tokenLine = 1; // The line on which the current token starts
+
+    public GraphReader(File file) throws IOException {
+        this(new FileInputStream(file).getChannel());
+    }
+
+    public GraphReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.bytes = new byte[BUFFER_SIZE];
+        this.buffer = ByteBuffer.wrap(bytes);
+    }
+
+    public static Graph read(File file) throws IOException {
+        GraphReader reader = new GraphReader(file);
+
+        try {
+            return reader.read();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the graph from the rest of the input.
+     *
+     * @return
+     * @throws IOException
+     */
+    public Graph read() throws IOException {
+        Graph graph = new Graph();
+
+        // Skip everything up to "Vertices"
+        do {
+            nextToken();
+
+            if (tokenLength == 0) {
+                throw new IOException("Incorrect file format: no vertices found.");
+            }
+        } while (!tokenEquals(VERTICES));
+
+        int nVertices = readCount();
+        List<GraphVertex> vertices = new ArrayList<GraphVertex>(Math.min(nVertices, MAX_PRESIZE));
+        nextToken();
+
+        while (!tokenEquals(EDGES)) {
+            if (tokenLength == 0) {
+                throw new IOException("Incorrect file format: no edges found.");
+            }
+
+            double x = parseDouble();
+            nextToken();
+            double y = parseDouble();
+
+            vertices.add(new GraphVertex(x, y));
+            nextToken();
+        }
+
+        graph.addVertices(vertices);
+
+        int nEdges = readCount();
+        graph.ensureCapacity(vertices.size(), Math.min(nEdges, MAX_PRESIZE));
+        nextToken();
+
+        while (tokenLength > 0 && !tokenEquals(CONSTRAINTS)) {
+            GraphVertex a = vertices.get(parseIndex(vertices.size()));
+            nextToken();
+            GraphVertex b = vertices.get(parseIndex(vertices.size()));
+
+            graph.addEdge(a, b);
+            nextToken();
+        }
+
+        // Optional - read the constraints
+        if (tokenLength > 0) {
+            readCount();
+            nextToken();
+
+            while (tokenLength > 0) {
+                GraphVertex a = vertices.get(parseIndex(vertices.size()));
+                nextToken();
+                GraphVertex b = vertices.get(parseIndex(vertices.size()));
+
+                graph.addConstraint(a, b);
+                nextToken();
+            }
+        }
+
+        return graph;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private int readCount() throws IOException {
+        nextToken();
+        long count = parseLong();
+
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw formatError("invalid count");
+        }
+
+        return (int) count;
+    }
+
+    private int parseIndex(int nVertices) throws IOException {
+        long index = parseLong();
+
+        if (index < 0 || index >= nVertices) {
+            throw formatError("vertex index out of range");
+        }
+
+        return (int) index;
+    }
+
+    /**
+     * Reads the next run of non-whitespace bytes into the token buffer. At the
+     * end of the input, the token is empty.
+     */
+    private void nextToken() throws IOException {
+        tokenLength = 0;
+        int b = nextByte();
+
+        while (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+            if (b == '\n') {
+                line++;
+            }
+
+            b = nextByte();
+        }
+
+        tokenLine = line;
+
+        while (b >= 0 && b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+            if (tokenLength == MAX_TOKEN_LENGTH) {
+                throw formatError("token too long");
+            }
+
+            token[tokenLength++] = (byte) b;
+            b = nextByte();
+        }
+
+        if (b == '\n') {
+            line++;
+        }
+    }
+
+    private int nextByte() throws IOException {
+        if (position == limit) {
+            if (endOfInput) {
+                return -1;
+            }
+
+            buffer.clear();
+            int read = channel.read(buffer);
+
+            while (read == 0) {
+                read = channel.read(buffer);
+            }
+
+            if (read < 0) {
+                endOfInput = true;
+                return -1;
+            }
+
+            position = 0;
+            limit = read;
+        }
+
+        return bytes[position++];
+    }
+
+    private boolean tokenEquals(byte[] word) {
+        if (tokenLength != word.length) {
+            return false;
+        }
+
+        for (int i = 0; i < tokenLength; i++) {
+            if (token[i] != word[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private long parseLong() throws IOException {
+        int i = 0;
+        boolean negative = false;
+
+        if (tokenLength > 0 && (token[0] == '-' || token[0] == '+')) {
+            negative = (token[0] == '-');
+            i++;
+        }
+
+        if (i == tokenLength || tokenLength - i > 18) {
+            throw formatError("expected an integer");
+        }
+
+        long value = 0;
+
+        for (; i < tokenLength; i++) {
+            int digit = token[i] - '0';
+
+            if (digit < 0 || digit > 9) {
+                throw formatError("expected an integer");
+            }
+
+            value = 10 * value + digit;
+        }
+
+        return (negative ? -value : value);
+    }
+
+    /**
+     * Parses the current token as a double. Decimal numbers whose digits fit
+     * in 53 bits and whose exponent is small are exact after a single
+     * multiplication or division by a power of ten, which is also exactly
+     * representable.
+     */
+    private double parseDouble() throws IOException {
+        if (tokenLength == 0) {
+            throw formatError("expected a number");
+        }
+
+        int i = 0;
+        boolean negative = false;
+
+        if (token[0] == '-' || token[0] == '+') {
+            negative = (token[0] == '-');
+            i++;
+        }
+
+        long mantissa = 0;
+        int nDigits = 0; // Significant digits in the mantissa
+        int exponent = 0;
+        boolean anyDigits = false;
+        boolean exact = true;
+
+        for (; i < tokenLength && token[i] >= '0' && token[i] <= '9'; i++) {
+            anyDigits = true;
+
+            if (mantissa > 0 || token[i] != '0') {
+                exact &= (nDigits < MAX_EXACT_DIGITS);
+                mantissa = 10 * mantissa + (token[i] - '0');
+                nDigits++;
+            }
+        }
+
+        if (i < tokenLength && token[i] == '.') {
+            for (i++; i < tokenLength && token[i] >= '0' && token[i] <= '9'; i++) {
+                anyDigits = true;
+                exponent--;
+
+                if (mantissa > 0 || token[i] != '0') {
+                    exact &= (nDigits < MAX_EXACT_DIGITS);
+                    mantissa = 10 * mantissa + (token[i] - '0');
+                    nDigits++;
+                }
+            }
+        }
+
+        if (anyDigits && i < tokenLength && (token[i] == 'e' || token[i] == 'E')) {
+            int start = ++i;
+            boolean negativeExponent = false;
+
+            if (i < tokenLength && (token[i] == '-' || token[i] == '+')) {
+                negativeExponent = (token[i] == '-');
+                start = ++i;
+            }
+
+            int e = 0;
+
+            for (; i < tokenLength && token[i] >= '0' && token[i] <= '9' && i - start < 6; i++) {
+                e = 10 * e + (token[i] - '0');
+            }
+
+            exponent += (negativeExponent ? -e : e);
+
+            if (i == start) {
+                anyDigits = false;
+            }
+        }
+
+        if (!anyDigits || i < tokenLength || !exact || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+            // NaN, Infinity, too many digits, or malformed: leave it to the library
+            try {
+                return Double.parseDouble(new String(token, 0, tokenLength, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException ex) {
+                throw formatError("expected a number");
+            }
+        }
+
+        double value = (exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent]);
+        return (negative ? -value : value);
+    }
+
+    private IOException formatError(String problem) {
+        return new IOException("Incorrect file format: " + problem + " at line " + tokenLine + ".");
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.io;
+
+import fulltheta.data.graph.Constraint;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes graphs in the format of <code>Graph.toSaveString</code>, streaming
+ * the text to the output through a fixed-size buffer instead of building it
+ * in memory first.
+ *
+ * Vertex indices are assigned once, so writing takes time linear in the size
+ * of the graph. Numbers are formatted directly into the buffer by
+ * AsciiNumberFormat, which writes the shortest decimal that reads back as the
+ * same double, so every coordinate is read back exactly. Apart from the rare
+ * cases where <code>Double.toString</code> on older JDKs writes a digit more
+ * than needed, the output is identical to that of <code>toSaveString</code>.
+ */
+public class GraphWriter implements Closeable, Flushable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int size = 0;
+
+    public GraphWriter(File file) throws IOException {
+        this(new FileOutputStream(file));
+    }
+
+    public GraphWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public static void write(Graph graph, File file) throws IOException {
+        GraphWriter writer = new GraphWriter(file);
+
+        try {
+            writer.write(graph);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Writes the given graph. The output is flushed when this returns.
+     *
+     * @param graph
+     * @throws IOException
+     */
+    public void write(Graph graph) throws IOException {
+        List<GraphVertex> vertices = graph.getVertices();
+
+        // GraphVertex.equals compares coordinates, so we need identity here
+        Map<GraphVertex, Integer> vertexIndex = new IdentityHashMap<GraphVertex, Integer>(2 * vertices.size());
+
+        writeAscii("Vertices\n");
+        writeLong(vertices.size());
+        writeByte('\n');
+
+        for (GraphVertex vertex : vertices) {
+            vertexIndex.put(vertex, vertexIndex.size());
+
+            writeDouble(vertex.getX());
+            writeByte(' ');
+            writeDouble(vertex.getY());
+            writeByte('\n');
+        }
+
+        writeAscii("\nEdges\n");
+        writeLong(graph.getEdges().size());
+        writeByte('\n');
+
+        for (Edge edge : graph.getEdges()) {
+            writePair(vertexIndex, edge.getVA(), edge.getVB());
+        }
+
+        writeAscii("\nConstraints\n");
+        writeLong(graph.getConstraints().size());
+        writeByte('\n');
+
+        for (Constraint constraint : graph.getConstraints()) {
+            writePair(vertexIndex, constraint.getVA(), constraint.getVB());
+        }
+
+        flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.write(buffer, 0, size);
+        size = 0;
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Writes the indices of both vertices on one line. Vertices that are not
+     * part of the graph get index -1.
+     */
+    private void writePair(Map<GraphVertex, Integer> vertexIndex, GraphVertex a, GraphVertex b) throws IOException {
+        Integer indexA = vertexIndex.get(a);
+        Integer indexB = vertexIndex.get(b);
+
+        writeLong(indexA == null ? -1 : indexA);
+        writeByte(' ');
+        writeLong(indexB == null ? -1 : indexB);
+        writeByte('\n');
+    }
+
+    private void writeDouble(double d) throws IOException {
+        if (size + AsciiNumberFormat.MAX_LENGTH > BUFFER_SIZE) {
+            drain();
+        }
+
+        size = AsciiNumberFormat.writeDouble(d, buffer, size);
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (size + AsciiNumberFormat.MAX_LENGTH > BUFFER_SIZE) {
+            drain();
+        }
+
+        size = AsciiNumberFormat.writeLong(value, buffer, size);
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            writeByte(s.charAt(i));
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (size == BUFFER_SIZE) {
+            drain();
+        }
+
+        buffer[size++] = (byte) b;
+    }
+
+    /**
+     * Writes the buffer to the output, without flushing the output itself.
+     */
+    private void drain() throws IOException {
+        out.write(buffer, 0, size);
+        size = 0;
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.io;
+
+import fulltheta.algos.Cone;
+import fulltheta.algos.Cones;
+import fulltheta.data.graph.Edge;
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A read-only view of a graph stored in the binary format written by
+ * BinaryGraphWriter. Every block of the file is memory-mapped, so opening a
+ * file takes constant time and only the parts that are accessed are read from
+ * disk. Like CompactGraph, vertices, edges and arcs are identified by index.
+ * Accessors do not modify any state, so they can be used from several threads
+ * at once.
+ *
+ * All numbers are little-endian. The file starts with a header of 128 bytes:
+ * the magic number "FTGB", the format version, the numbers of vertices, edges
+ * and constraints (8 bytes each), the number of cones, cone flags (1 if the
+ * cones are Theta cones, 2 if they are simple), and the offsets of the nine
+ * blocks followed by the file size (8 bytes each). Each block starts at a
+ * multiple of 8 bytes.
+ * <ol>
+ * <li>Coordinates: x and y of every vertex, as doubles.</li>
+ * <li>Vertex flags: one byte per vertex, 1 if it is invisible.</li>
+ * <li>Adjacency: n + 1 ints; the arcs of vertex v are firstArc[v] ..
+ * firstArc[v + 1] - 1.</li>
+ * <li>Arc targets: the vertex each arc leads to, as ints.</li>
+ * <li>Arc edges: the edge each arc comes from, as ints.</li>
+ * <li>Edges: the indices of both endpoints of every edge, as ints.</li>
+ * <li>Edge flags: one byte per edge, 1 if it is invisible, plus 2 if it is
+ * directed from its first to its second endpoint.</li>
+ * <li>Constraints: the indices of both endpoints of every constraint.</li>
+ * <li>Cones: the aperture and bisector of every cone as doubles, followed for
+ * every cone by the vertex indices sorted by projection onto its bisector.</li>
+ * </ol>
+ * Every edge gives an arc in both directions, even if it is directed, in the
+ * order of the edges.
+ */
+public class MappedGraph {
+
+    static final int MAGIC = 0x42475446; // "FTGB" in little-endian order
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 128;
+    static final int COORDINATES = 0, VERTEX_FLAGS = 1, ADJACENCY = 2, ARC_TARGETS = 3, ARC_EDGES = 4, EDGES = 5, EDGE_FLAGS = 6, CONSTRAINTS = 7, CONES = 8;
+    static final int N_BLOCKS = 9;
+    static final byte INVISIBLE = 1, DIRECTED = 2;
+    static final int THETA = 1, SIMPLE = 2;
+    private final int nVertices, nEdges, nConstraints, nCones;
+    private final int coneFlags;
+    private final DoubleBuffer coordinates;
+    private final ByteBuffer vertexFlags;
+    private final IntBuffer firstArc;
+    private final IntBuffer arcTargets;
+    private final IntBuffer arcEdges;
+    private final IntBuffer edges;
+    private final ByteBuffer edgeFlags;
+    private final IntBuffer constraints;
+    private final ByteBuffer coneBlock;
+    private final IntBuffer coneOrders;
+
+    public MappedGraph(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = raf.getChannel();
+            long fileSize = channel.size();
+
+            if (fileSize < HEADER_SIZE) {
+                throw new IOException("Not a binary graph file.");
+            }
+
+            ByteBuffer header = map(channel, 0, HEADER_SIZE);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a binary graph file.");
+            }
+
+            int version = header.getInt();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported binary graph format version " + version + ".");
+            }
+
+            nVertices = getCount(header.getLong());
+            nEdges = getCount(header.getLong());
+            nConstraints = getCount(header.getLong());
+            nCones = getCount(header.getInt());
+            coneFlags = header.getInt();
+
+            long[] offsets = new long[N_BLOCKS + 1];
+
+            for (int b = 0; b <= N_BLOCKS; b++) {
+                offsets[b] = header.getLong();
+            }
+
+            long[] sizes = getBlockSizes(nVertices, nEdges, nConstraints, nCones);
+
+            for (int b = 0; b < N_BLOCKS; b++) {
+                if (offsets[b] < HEADER_SIZE || sizes[b] > Integer.MAX_VALUE || offsets[b] + sizes[b] > fileSize) {
+                    throw new IOException("The binary graph file is truncated or corrupt.");
+                }
+            }
+
+            coordinates = map(channel, offsets[COORDINATES], sizes[COORDINATES]).asDoubleBuffer();
+            vertexFlags = map(channel, offsets[VERTEX_FLAGS], sizes[VERTEX_FLAGS]);
+            firstArc = map(channel, offsets[ADJACENCY], sizes[ADJACENCY]).asIntBuffer();
+            arcTargets = map(channel, offsets[ARC_TARGETS], sizes[ARC_TARGETS]).asIntBuffer();
+            arcEdges = map(channel, offsets[ARC_EDGES], sizes[ARC_EDGES]).asIntBuffer();
+            edges = map(channel, offsets[EDGES], sizes[EDGES]).asIntBuffer();
+            edgeFlags = map(channel, offsets[EDGE_FLAGS], sizes[EDGE_FLAGS]);
+            constraints = map(channel, offsets[CONSTRAINTS], sizes[CONSTRAINTS]).asIntBuffer();
+            coneBlock = map(channel, offsets[CONES], sizes[CONES]);
+
+            ByteBuffer orders = coneBlock.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            orders.position(16 * nCones);
+            coneOrders = orders.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        } finally {
+            // The mappings stay valid after the file is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns the size in bytes of each block of a file with the given
+     * contents.
+     */
+    static long[] getBlockSizes(int nVertices, int nEdges, int nConstraints, int nCones) {
+        long[] sizes = new long[N_BLOCKS];
+
+        sizes[COORDINATES] = 16L * nVertices;
+        sizes[VERTEX_FLAGS] = nVertices;
+        sizes[ADJACENCY] = 4L * (nVertices + 1);
+        sizes[ARC_TARGETS] = 8L * nEdges;
+        sizes[ARC_EDGES] = 8L * nEdges;
+        sizes[EDGES] = 8L * nEdges;
+        sizes[EDGE_FLAGS] = nEdges;
+        sizes[CONSTRAINTS] = 8L * nConstraints;
+        sizes[CONES] = 16L * nCones + 4L * nCones * nVertices;
+
+        return sizes;
+    }
+
+    /**
+     * Rounds the given offset up to a multiple of 8.
+     */
+    static long align(long offset) {
+        return (offset + 7) & ~7L;
+    }
+
+    public int getVertexCount() {
+        return nVertices;
+    }
+
+    public int getEdgeCount() {
+        return nEdges;
+    }
+
+    public int getArcCount() {
+        return 2 * nEdges;
+    }
+
+    public int getConstraintCount() {
+        return nConstraints;
+    }
+
+    public double getX(int v) {
+        return coordinates.get(2 * v);
+    }
+
+    public double getY(int v) {
+        return coordinates.get(2 * v + 1);
+    }
+
+    public boolean isVisible(int v) {
+        return (vertexFlags.get(v) & INVISIBLE) == 0;
+    }
+
+    /**
+     * Returns the Euclidean distance between vertices u and v.
+     *
+     * @param u
+     * @param v
+     * @return
+     */
+    public double getDistance(int u, int v) {
+        double dx = getX(v) - getX(u);
+        double dy = getY(v) - getY(u);
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Returns the index of the first arc of v. The arcs of v are getFirstArc(v)
+     * .. getFirstArc(v + 1) - 1.
+     *
+     * @param v
+     * @return
+     */
+    public int getFirstArc(int v) {
+        return firstArc.get(v);
+    }
+
+    public int getDegree(int v) {
+        return firstArc.get(v + 1) - firstArc.get(v);
+    }
+
+    public int getArcTarget(int arc) {
+        return arcTargets.get(arc);
+    }
+
+    /**
+     * Returns the index of the edge this arc was created from.
+     *
+     * @param arc
+     * @return
+     */
+    public int getArcEdge(int arc) {
+        return arcEdges.get(arc);
+    }
+
+    public int getEdgeStart(int e) {
+        return edges.get(2 * e);
+    }
+
+    public int getEdgeEnd(int e) {
+        return edges.get(2 * e + 1);
+    }
+
+    /**
+     * Returns true if edge e is directed from its start to its end.
+     *
+     * @param e
+     * @return
+     */
+    public boolean isDirected(int e) {
+        return (edgeFlags.get(e) & DIRECTED) != 0;
+    }
+
+    public boolean isEdgeVisible(int e) {
+        return (edgeFlags.get(e) & INVISIBLE) == 0;
+    }
+
+    public int getConstraintStart(int c) {
+        return constraints.get(2 * c);
+    }
+
+    public int getConstraintEnd(int c) {
+        return constraints.get(2 * c + 1);
+    }
+
+    /**
+     * Returns true if the file contains cones and the ordering of the vertices
+     * for each of them.
+     *
+     * @return
+     */
+    public boolean hasCones() {
+        return nCones > 0;
+    }
+
+    public int getConeCount() {
+        return nCones;
+    }
+
+    /**
+     * Returns the index of the i-th vertex in order of projection onto the
+     * bisector of the given cone.
+     *
+     * @param cone
+     * @param i
+     * @return
+     */
+    public int getSortedVertex(int cone, int i) {
+        return coneOrders.get(cone * nVertices + i);
+    }
+
+    /**
+     * Builds a Graph with the vertices, edges and constraints of this file, in
+     * the same order.
+     *
+     * @return
+     */
+    public Graph toGraph() {
+        Graph graph = new Graph();
+        List<GraphVertex> vertices = new ArrayList<GraphVertex>(nVertices);
+
+        for (int v = 0; v < nVertices; v++) {
+            vertices.add(new GraphVertex(getX(v), getY(v), isVisible(v)));
+        }
+
+        graph.addVertices(vertices);
+        graph.ensureCapacity(nVertices, nEdges);
+
+        for (int e = 0; e < nEdges; e++) {
+            GraphVertex a = vertices.get(getEdgeStart(e));
+            GraphVertex b = vertices.get(getEdgeEnd(e));
+            graph.addEdge(a, b, isDirected(e));
+
+            if (!isEdgeVisible(e)) {
+                a.getEdgeTo(b).setVisible(false);
+            }
+        }
+
+        for (int c = 0; c < nConstraints; c++) {
+            graph.addConstraint(vertices.get(getConstraintStart(c)), vertices.get(getConstraintEnd(c)));
+        }
+
+        return graph;
+    }
+
+    /**
+     * Returns the cones stored in this file, set up for queries on the given
+     * vertices with the stored orderings, so they do not have to be sorted
+     * again. The vertices must be those of <code>toGraph</code>, in the same
+     * order. Returns <code>null</code> if the file has no cones.
+     *
+     * @param vertices
+     * @return
+     */
+    public Cones getCones(List<GraphVertex> vertices) {
+        if (nCones == 0) {
+            return null;
+        }
+
+        Cone[] coneArray = new Cone[nCones];
+
+        for (int i = 0; i < nCones; i++) {
+            coneArray[i] = new Cone(coneBlock.getDouble(16 * i), coneBlock.getDouble(16 * i + 8));
+        }
+
+        boolean theta = (coneFlags & THETA) != 0;
+        Cones cones;
+
+        if ((coneFlags & SIMPLE) != 0) {
+            // Simple cones all have the same aperture and are either all or every other cone
+            int nSimple = (int) Math.round(2 * Math.PI / coneArray[0].getAperture());
+            cones = new Cones(theta, nSimple != nCones, nSimple);
+        } else {
+            cones = new Cones(theta, coneArray);
+        }
+
+        int[][] orders = new int[nCones][nVertices];
+
+        for (int i = 0; i < nCones; i++) {
+            for (int j = 0; j < nVertices; j++) {
+                orders[i][j] = getSortedVertex(i, j);
+            }
+        }
+
+        cones.setVertices(vertices, orders);
+        return cones;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    private static int getCount(long count) throws IOException {
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IOException("The binary graph file is corrupt.");
+        }
+
+        return (int) count;
+    }
+}
@@ -0,0 +1,229 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.io;
+
+import fulltheta.data.graph.Graph;
+import fulltheta.data.graph.GraphVertex;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads point sets from an archive written by PointSetArchiveWriter. Only the
+ * index is read when the archive is opened; each point set is read from disk
+ * when it is requested, so any of them can be loaded without going through
+ * the others. Point sets can be read from several threads at once.
+ *
+ * All numbers are little-endian. The file starts with a header of 24 bytes:
+ * the magic number "FTPS", the format version, the number of point sets, four
+ * unused bytes, and the offset of the index. Each point set consists of its
+ * number of points as a variable-length integer and a byte with the number of
+ * bits per coordinate, 0 for exact coordinates. Quantized sets continue with
+ * the bounding box as four doubles (minimum and maximum x, then y). Then
+ * follow the differences between consecutive coordinates, x before y, as
+ * variable-length integers of seven bits per byte after zigzag encoding. The
+ * index at the end of the file holds the offset of every point set as 8
+ * bytes.
+ */
+public class PointSetArchive implements Closeable {
+
+    /**
+     * The number of bits per coordinate that indicates exact coordinates.
+     */
+    public static final int LOSSLESS = 0;
+    static final int MAGIC = 0x53505446; // "FTPS" in little-endian order
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long[] offsets; // Point set i is stored from offsets[i] up to offsets[i + 1]
+
+    public PointSetArchive(File file) throws IOException {
+        raf = new RandomAccessFile(file, "r");
+
+        try {
+            channel = raf.getChannel();
+            ByteBuffer header = read(0, HEADER_SIZE);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a point set archive.");
+            }
+
+            int version = header.getInt();
+
+            if (version != VERSION) {
+                throw new IOException("Unsupported point set archive version " + version + ".");
+            }
+
+            int nInstances = header.getInt();
+            header.getInt();
+            long indexOffset = header.getLong();
+
+            if (nInstances < 0 || indexOffset < HEADER_SIZE || indexOffset + 8L * nInstances > channel.size()) {
+                throw new IOException("The point set archive is truncated or corrupt.");
+            }
+
+            ByteBuffer index = read(indexOffset, 8 * nInstances);
+            offsets = new long[nInstances + 1];
+
+            for (int i = 0; i < nInstances; i++) {
+                offsets[i] = index.getLong();
+            }
+
+            offsets[nInstances] = indexOffset;
+
+            for (int i = 0; i < nInstances; i++) {
+                if (offsets[i] < HEADER_SIZE || offsets[i] > offsets[i + 1]) {
+                    throw new IOException("The point set archive is truncated or corrupt.");
+                }
+            }
+        } catch (IOException ex) {
+            raf.close();
+            throw ex;
+        }
+    }
+
+    public int getInstanceCount() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the points of the given point set, in the order in which they
+     * were stored.
+     *
+     * @param instance
+     * @return
+     * @throws IOException
+     */
+    public List<GraphVertex> getPoints(int instance) throws IOException {
+        if (instance < 0 || instance >= getInstanceCount()) {
+            throw new IndexOutOfBoundsException("Point set " + instance + " does not exist; the archive has " + getInstanceCount() + ".");
+        }
+
+        long length = offsets[instance + 1] - offsets[instance];
+
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Point set " + instance + " is too large to read at once.");
+        }
+
+        ByteBuffer data = read(offsets[instance], (int) length);
+
+        try {
+            long n = readVarLong(data);
+            int bits = data.get();
+
+            if (n < 0 || n > length || bits < 0 || bits > 31) {
+                throw new IOException("Point set " + instance + " is corrupt.");
+            }
+
+            List<GraphVertex> points = new ArrayList<GraphVertex>((int) n);
+
+            if (bits == LOSSLESS) {
+                long x = 0, y = 0;
+
+                for (int i = 0; i < n; i++) {
+                    x += unzigzag(readVarLong(data));
+                    y += unzigzag(readVarLong(data));
+                    points.add(new GraphVertex(Double.longBitsToDouble(x), Double.longBitsToDouble(y)));
+                }
+            } else if (n > 0) {
+                double minX = data.getDouble(), maxX = data.getDouble();
+                double minY = data.getDouble(), maxY = data.getDouble();
+                long steps = (1L << bits) - 1;
+                double stepX = (maxX - minX) / steps;
+                double stepY = (maxY - minY) / steps;
+                long qx = 0, qy = 0;
+
+                for (int i = 0; i < n; i++) {
+                    qx += unzigzag(readVarLong(data));
+                    qy += unzigzag(readVarLong(data));
+                    points.add(new GraphVertex(minX + qx * stepX, minY + qy * stepY));
+                }
+            }
+
+            return points;
+        } catch (RuntimeException ex) {
+            // Reading past the end of the data
+            throw new IOException("Point set " + instance + " is corrupt.", ex);
+        }
+    }
+
+    /**
+     * Returns a graph without edges on the given point set.
+     *
+     * @param instance
+     * @return
+     * @throws IOException
+     */
+    public Graph getGraph(int instance) throws IOException {
+        Graph graph = new Graph();
+        graph.addVertices(getPoints(instance));
+        return graph;
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+
+            if (read < 0) {
+                throw new IOException("The point set archive is truncated.");
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long readVarLong(ByteBuffer data) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = data.get();
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Invalid variable-length integer.");
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
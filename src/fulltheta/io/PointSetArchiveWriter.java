@@ -0,0 +1,309 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.io;
+
+import fulltheta.data.graph.GraphVertex;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes many point sets to one compact file that can be read back with
+ * PointSetArchive.
+ *
+ * The points of each set are sorted along a Hilbert curve, so consecutive
+ * points are close together, and their coordinates are stored as
+ * differences from the previous point in a variable-length encoding. In the
+ * default lossless mode the differences are taken between the bit patterns of
+ * the doubles, so every coordinate is restored exactly. In quantized mode the
+ * coordinates are first rounded to a grid with 2^bits - 1 steps across the
+ * bounding box of the set, which makes the differences much smaller. The
+ * original order of the points is not kept.
+ */
+public class PointSetArchiveWriter implements Closeable {
+
+    private static final int ORDER_BITS = 16; // Resolution of the grid used to sort the points
+    private final FileChannel channel;
+    private final RandomAccessFile raf;
+    private final int bits;
+    private long position = PointSetArchive.HEADER_SIZE;
+    private long[] offsets = new long[16];
+    private int nInstances = 0;
+    private byte[] data = new byte[1024];
+    private int size;
+
+    /**
+     * Creates an archive that stores coordinates exactly.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public PointSetArchiveWriter(File file) throws IOException {
+        this(file, PointSetArchive.LOSSLESS);
+    }
+
+    /**
+     * Creates an archive that rounds coordinates to the given number of bits
+     * per axis, between 1 and 31, or stores them exactly if
+     * <code>bits</code> is <code>PointSetArchive.LOSSLESS</code>.
+     *
+     * @param file
+     * @param bits
+     * @throws IOException
+     */
+    public PointSetArchiveWriter(File file, int bits) throws IOException {
+        if (bits != PointSetArchive.LOSSLESS && (bits < 1 || bits > 31)) {
+            throw new IllegalArgumentException("The number of bits must be between 1 and 31.");
+        }
+
+        this.bits = bits;
+        raf = new RandomAccessFile(file, "rw");
+        raf.setLength(0);
+        channel = raf.getChannel();
+    }
+
+    /**
+     * Adds a point set to the archive and returns its index.
+     *
+     * @param points
+     * @return
+     * @throws IOException
+     */
+    public int add(List<GraphVertex> points) throws IOException {
+        int n = points.size();
+        double[] x = new double[n];
+        double[] y = new double[n];
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < n; i++) {
+            x[i] = points.get(i).getX();
+            y[i] = points.get(i).getY();
+
+            if (Double.isNaN(x[i]) || Double.isNaN(y[i]) || Double.isInfinite(x[i]) || Double.isInfinite(y[i])) {
+                throw new IllegalArgumentException("Only finite coordinates can be archived.");
+            }
+
+            minX = Math.min(minX, x[i]);
+            minY = Math.min(minY, y[i]);
+            maxX = Math.max(maxX, x[i]);
+            maxY = Math.max(maxY, y[i]);
+        }
+
+        size = 0;
+        writeVarLong(n);
+        writeByte(bits);
+
+        if (n > 0) {
+            int gridBits = (bits == PointSetArchive.LOSSLESS ? ORDER_BITS : bits);
+            long[] qx = quantize(x, minX, maxX, gridBits);
+            long[] qy = quantize(y, minY, maxY, gridBits);
+            int[] order = sortAlongHilbertCurve(qx, qy, gridBits);
+
+            if (bits == PointSetArchive.LOSSLESS) {
+                long prevX = 0, prevY = 0;
+
+                for (int i : order) {
+                    long bx = Double.doubleToLongBits(x[i]);
+                    long by = Double.doubleToLongBits(y[i]);
+                    writeVarLong(zigzag(bx - prevX));
+                    writeVarLong(zigzag(by - prevY));
+                    prevX = bx;
+                    prevY = by;
+                }
+            } else {
+                writeDouble(minX);
+                writeDouble(maxX);
+                writeDouble(minY);
+                writeDouble(maxY);
+
+                long prevX = 0, prevY = 0;
+
+                for (int i : order) {
+                    writeVarLong(zigzag(qx[i] - prevX));
+                    writeVarLong(zigzag(qy[i] - prevY));
+                    prevX = qx[i];
+                    prevY = qy[i];
+                }
+            }
+        }
+
+        if (nInstances == offsets.length) {
+            offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+        }
+
+        offsets[nInstances] = position;
+        writeFully(ByteBuffer.wrap(data, 0, size), position);
+        position += size;
+
+        return nInstances++;
+    }
+
+    /**
+     * Writes the index and closes the file.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            ByteBuffer index = ByteBuffer.allocate(8 * nInstances).order(ByteOrder.LITTLE_ENDIAN);
+
+            for (int i = 0; i < nInstances; i++) {
+                index.putLong(offsets[i]);
+            }
+
+            index.flip();
+            writeFully(index, position);
+
+            ByteBuffer header = ByteBuffer.allocate(PointSetArchive.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(PointSetArchive.MAGIC);
+            header.putInt(PointSetArchive.VERSION);
+            header.putInt(nInstances);
+            header.putInt(0);
+            header.putLong(position);
+            header.flip();
+            writeFully(header, 0);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Rounds the coordinates to integers between 0 and 2^bits - 1, spread
+     * evenly over [min, max].
+     */
+    static long[] quantize(double[] c, double min, double max, int bits) {
+        long steps = (1L << bits) - 1;
+        double scale = (max > min ? steps / (max - min) : 0);
+        long[] q = new long[c.length];
+
+        for (int i = 0; i < c.length; i++) {
+            q[i] = Math.min(steps, Math.round((c[i] - min) * scale));
+        }
+
+        return q;
+    }
+
+    /**
+     * Returns the indices of the points in the order in which a Hilbert curve
+     * through a grid of 2^16 x 2^16 cells visits them.
+     */
+    private static int[] sortAlongHilbertCurve(long[] qx, long[] qy, int bits) {
+        int n = qx.length;
+        long[] keys = new long[n];
+
+        for (int i = 0; i < n; i++) {
+            int px = (int) (bits >= ORDER_BITS ? qx[i] >> (bits - ORDER_BITS) : qx[i] << (ORDER_BITS - bits));
+            int py = (int) (bits >= ORDER_BITS ? qy[i] >> (bits - ORDER_BITS) : qy[i] << (ORDER_BITS - bits));
+
+            // The position on the curve is less than 2^32, so the index fits in the lower half
+            keys[i] = (getHilbertIndex(px, py) << 32) | i;
+        }
+
+        Arrays.sort(keys);
+        int[] order = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            order[i] = (int) keys[i];
+        }
+
+        return order;
+    }
+
+    /**
+     * Returns the position of (px, py) along a Hilbert curve through a grid of
+     * 2^16 x 2^16 cells.
+     */
+    private static long getHilbertIndex(int px, int py) {
+        int size = 1 << ORDER_BITS;
+        long d = 0;
+
+        for (int s = size / 2; s > 0; s /= 2) {
+            int rx = ((px & s) > 0 ? 1 : 0);
+            int ry = ((py & s) > 0 ? 1 : 0);
+            d += (long) s * s * ((3 * rx) ^ ry);
+
+            // Rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    px = size - 1 - px;
+                    py = size - 1 - py;
+                }
+
+                int t = px;
+                px = py;
+                py = t;
+            }
+        }
+
+        return d;
+    }
+
+    /**
+     * Maps signed values to unsigned ones, so that values close to zero have
+     * few significant bits: 0, -1, 1, -2, ... become 0, 1, 2, 3, ...
+     */
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeVarLong(long value) {
+        // Seven bits per byte, with the high bit set on all but the last
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        writeByte((int) value);
+    }
+
+    private void writeDouble(double d) {
+        long bitsOfD = Double.doubleToLongBits(d);
+
+        for (int i = 0; i < 8; i++) {
+            writeByte((int) (bitsOfD >>> (8 * i)));
+        }
+    }
+
+    private void writeByte(int b) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, 2 * data.length);
+        }
+
+        data[size++] = (byte) b;
+    }
+
+    private void writeFully(ByteBuffer buffer, long at) throws IOException {
+        while (buffer.hasRemaining()) {
+            at += channel.write(buffer, at);
+        }
+    }
+}
@@ -23,6 +23,7 @@
  */
 package fulltheta.ipe;
 
+import fulltheta.data.embedded.CompactEmbeddedGraph;
 import fulltheta.data.embedded.EmbeddedGraph;
 import fulltheta.data.embedded.EmbeddedVertex;
 import fulltheta.data.embedded.HalfEdge;
@@ -31,9 +32,7 @@ import fulltheta.data.graph.Edge;
 import fulltheta.data.graph.Graph;
 import fulltheta.data.graph.GraphVertex;
 import java.awt.geom.Line2D;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashSet;
 
@@ -291,99 +290,249 @@ public class IPEExporter {
     private static final String POST_TAGS =
             "</page>\n</ipe>";
 
+    private static final int SEGMENTS_PER_PATH = 1000; // Segments combined into one path in grouped mode
+    private int precision = IPEOutput.EXACT;
+    private boolean grouped = false;
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Rounds all coordinates to the given number of digits after the decimal
+     * point, between 0 and 15. The default, -1, writes every coordinate
+     * exactly.
+     *
+     * @param precision
+     */
+    public void setPrecision(int precision) {
+        if (precision != IPEOutput.EXACT && (precision < 0 || precision > 15)) {
+            throw new IllegalArgumentException("The precision must be -1 or between 0 and 15.");
+        }
+
+        this.precision = precision;
+    }
+
+    public boolean isGrouped() {
+        return grouped;
+    }
+
+    /**
+     * Places the contents of each layer in one group, with up to 1000 edges
+     * per path, instead of writing every vertex and edge as a separate object.
+     * This makes the files of large graphs much smaller.
+     *
+     * @param grouped
+     */
+    public void setGrouped(boolean grouped) {
+        this.grouped = grouped;
+    }
+
     public void exportGraph(File file, Graph graph, boolean useIPE6) throws IOException {
-        BufferedWriter out = null;
+        IPEOutput out = new IPEOutput(file, precision);
 
         try {
-            out = new BufferedWriter(new FileWriter(file));
+            writeHeader(out, useIPE6);
 
-            if (useIPE6) {
-                out.write(IPE6HEADER);
-            } else {
-                out.write(IPE7HEADER);
-            }
-
-            out.write(LAYERS);
+            LayerWriter constraints = new LayerWriter(out, "Constraints", "fat");
 
             for (Constraint c : graph.getConstraints()) {
-                exportConstraint(out, c);
+                constraints.writeSegment(c.getVA().getX(), c.getVA().getY(), c.getVB().getX(), c.getVB().getY());
             }
 
+            constraints.close();
+            LayerWriter edges = new LayerWriter(out, "Edges", "normal");
+
             for (Edge e : graph.getEdges()) {
-                exportEdge(out, e.getVA().getX(), e.getVA().getY(), e.getVB().getX(), e.getVB().getY());
+                edges.writeSegment(e.getVA().getX(), e.getVA().getY(), e.getVB().getX(), e.getVB().getY());
             }
 
+            edges.close();
+
             // Vertices last, so they appear on top
+            LayerWriter vertices = new LayerWriter(out, "Vertices", null);
+
             for (GraphVertex v : graph.getVertices()) {
-                exportVertex(out, v.getX(), v.getY(), useIPE6);
+                vertices.writeVertex(v.getX(), v.getY(), useIPE6);
             }
 
-            out.write(POST_TAGS);
+            vertices.close();
+            out.writeAscii(POST_TAGS);
         } finally {
-            if (out != null) {
-                out.close();
-            }
+            out.close();
         }
     }
 
     public void exportEmbeddedGraph(File file, EmbeddedGraph graph, boolean useIPE6) throws IOException {
-        BufferedWriter out = null;
+        IPEOutput out = new IPEOutput(file, precision);
 
         try {
-            out = new BufferedWriter(new FileWriter(file));
-
-            if (useIPE6) {
-                out.write(IPE6HEADER);
-            } else {
-                out.write(IPE7HEADER);
-            }
-
-            out.write(LAYERS);
+            writeHeader(out, useIPE6);
 
             // Keep track of which edges we already exported
             HashSet<HalfEdge> drawnHalfEdges = new HashSet<HalfEdge>(graph.getDarts().size());
+            LayerWriter edges = new LayerWriter(out, "Edges", "normal");
 
             for (HalfEdge e : graph.getDarts()) {
                 if (!drawnHalfEdges.contains(e)) {
-                    exportEdge(out, e.getOrigin().getX(), e.getOrigin().getY(), e.getDestination().getX(), e.getDestination().getY());
+                    edges.writeSegment(e.getOrigin().getX(), e.getOrigin().getY(), e.getDestination().getX(), e.getDestination().getY());
 
                     drawnHalfEdges.add(e);
                     drawnHalfEdges.add(e.getTwin());
                 }
             }
 
+            edges.close();
+
             // Vertices last, so they appear on top
+            LayerWriter vertices = new LayerWriter(out, "Vertices", null);
+
             for (EmbeddedVertex v : graph.getVertices()) {
-                exportVertex(out, v.getX(), v.getY(), useIPE6);
+                vertices.writeVertex(v.getX(), v.getY(), useIPE6);
             }
 
-            out.write(POST_TAGS);
+            vertices.close();
+            out.writeAscii(POST_TAGS);
         } finally {
-            if (out != null) {
-                out.close();
+            out.close();
+        }
+    }
+
+    public void exportEmbeddedGraph(File file, CompactEmbeddedGraph graph, boolean useIPE6) throws IOException {
+        IPEOutput out = new IPEOutput(file, precision);
+
+        try {
+            writeHeader(out, useIPE6);
+
+            // Dart 2e and its twin 2e + 1 form edge e, so every edge is drawn once
+            LayerWriter edges = new LayerWriter(out, "Edges", "normal");
+
+            for (int d = 0; d < graph.getDartCount(); d += 2) {
+                int u = graph.getOrigin(d);
+                int v = graph.getDestination(d);
+                edges.writeSegment(graph.getX(u), graph.getY(u), graph.getX(v), graph.getY(v));
+            }
+
+            edges.close();
+
+            // Vertices last, so they appear on top
+            LayerWriter vertices = new LayerWriter(out, "Vertices", null);
+
+            for (int v = 0; v < graph.getVertexCount(); v++) {
+                vertices.writeVertex(graph.getX(v), graph.getY(v), useIPE6);
             }
+
+            vertices.close();
+            out.writeAscii(POST_TAGS);
+        } finally {
+            out.close();
         }
     }
 
-    private void exportVertex(BufferedWriter out, double x, double y, boolean useIPE6) throws IOException {
+    private void writeHeader(IPEOutput out, boolean useIPE6) throws IOException {
         if (useIPE6) {
-            out.write("<mark layer=\"Vertices\" type=\"1\" pos=\"" + x + " " + y + "\" size=\"large\" stroke=\"black\" fill=\"blue\"/>\n");
+            out.writeAscii(IPE6HEADER);
         } else {
-            out.write("<use layer=\"Vertices\" name=\"mark/fdisk(sfx)\" pos=\"" + x + " " + y + "\" size=\"large\" stroke=\"black\" fill=\"blue\"/>\n");
+            out.writeAscii(IPE7HEADER);
         }
-    }
 
-    private void exportEdge(BufferedWriter out, double x1, double y1, double x2, double y2) throws IOException {
-        out.write("<path layer=\"Edges\" pen=\"normal\" stroke=\"black\">\n");
-        out.write(x1 + " " + y1 + " m\n");
-        out.write(x2 + " " + y2 + " l\n");
-        out.write("</path>\n");
+        out.writeAscii(LAYERS);
     }
 
-    private void exportConstraint(BufferedWriter out, Constraint c) throws IOException {
-        out.write("<path layer=\"Constraints\" pen=\"fat\" stroke=\"black\">\n");
-        out.write(c.getVA().getX() + " " + c.getVA().getY() + " m\n");
-        out.write(c.getVB().getX() + " " + c.getVB().getY() + " l\n");
-        out.write("</path>\n");
+    /**
+     * Writes the objects of one layer. Without grouping, every object gets
+     * its own layer attribute; with grouping, the objects are wrapped in a
+     * group on the layer and consecutive segments share a path.
+     */
+    private class LayerWriter {
+
+        private final IPEOutput out;
+        private final String layer;
+        private final String pathTag;
+        private boolean groupOpen = false;
+        private int pathSegments = 0; // The number of segments in the open path, if grouped
+
+        LayerWriter(IPEOutput out, String layer, String pen) {
+            this.out = out;
+            this.layer = layer;
+
+            if (grouped) {
+                pathTag = "<path pen=\"" + pen + "\" stroke=\"black\">\n";
+            } else {
+                pathTag = "<path layer=\"" + layer + "\" pen=\"" + pen + "\" stroke=\"black\">\n";
+            }
+        }
+
+        void writeSegment(double x1, double y1, double x2, double y2) throws IOException {
+            if (grouped) {
+                openGroup();
+
+                if (pathSegments == SEGMENTS_PER_PATH) {
+                    out.writeAscii("</path>\n");
+                    pathSegments = 0;
+                }
+
+                if (pathSegments == 0) {
+                    out.writeAscii(pathTag);
+                }
+
+                pathSegments++;
+            } else {
+                out.writeAscii(pathTag);
+            }
+
+            out.writePoint(x1, y1);
+            out.writeAscii(" m\n");
+            out.writePoint(x2, y2);
+            out.writeAscii(" l\n");
+
+            if (!grouped) {
+                out.writeAscii("</path>\n");
+            }
+        }
+
+        void writeVertex(double x, double y, boolean useIPE6) throws IOException {
+            if (grouped) {
+                openGroup();
+            }
+
+            if (useIPE6) {
+                out.writeAscii("<mark ");
+            } else {
+                out.writeAscii("<use ");
+            }
+
+            if (!grouped) {
+                out.writeAscii("layer=\"");
+                out.writeAscii(layer);
+                out.writeAscii("\" ");
+            }
+
+            if (useIPE6) {
+                out.writeAscii("type=\"1\" pos=\"");
+            } else {
+                out.writeAscii("name=\"mark/fdisk(sfx)\" pos=\"");
+            }
+
+            out.writePoint(x, y);
+            out.writeAscii("\" size=\"large\" stroke=\"black\" fill=\"blue\"/>\n");
+        }
+
+        void close() throws IOException {
+            if (pathSegments > 0) {
+                out.writeAscii("</path>\n");
+            }
+
+            if (groupOpen) {
+                out.writeAscii("</group>\n");
+            }
+        }
+
+        private void openGroup() throws IOException {
+            if (!groupOpen) {
+                out.writeAscii("<group layer=\"" + layer + "\">\n");
+                groupOpen = true;
+            }
+        }
     }
 }
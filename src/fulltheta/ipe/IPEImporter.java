@@ -26,130 +26,314 @@ package fulltheta.ipe;
 import fulltheta.data.graph.Edge;
 import fulltheta.data.graph.Graph;
 import fulltheta.data.graph.GraphVertex;
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
-
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Imports the marks and paths of an IPE file as a graph. Marks become
+ * vertices and every straight segment of a path becomes an edge, or a
+ * constraint if the path is on the "Constraints" layer. Curved segments are
+ * replaced by a straight segment between their endpoints, and ellipses and
+ * closed splines are ignored. Points within 0.01 of an earlier vertex are
+ * merged with it, to undo rounding errors in the transformations.
+ *
+ * The file is read with a streaming XML parser, so attributes may span
+ * several lines, and the transformations of nested groups are applied to
+ * their contents. Nearby vertices are found through a hash grid with cells the
+ * size of the merging distance, and duplicate edges through a hash set of the
+ * indices of their endpoints, so the import takes linear time.
+ */
 public class IPEImporter {
 
+    private static final double PRECISION = 0.01; // Low accuracy due to rounding errors in transformation =(
+    private static final double[] IDENTITY = new double[]{1, 0, 0, 1, 0, 0};
     private String currentLayer = null;
+    private Graph graph;
+    private List<GraphVertex> vertices; // All imported vertices, in order
+    private Map<Long, List<Integer>> grid; // The indices of the vertices in each cell
+    private Set<Long> edgeKeys; // The indices of the endpoints of every edge, smallest first
 
     public Graph importGraph(File file) throws IOException {
-        BufferedReader in = null;
-        Graph graph = new Graph();
+        InputStream in = null;
+        XMLStreamReader reader = null;
+
+        currentLayer = null;
+        graph = new Graph();
+        vertices = new ArrayList<GraphVertex>();
+        grid = new HashMap<Long, List<Integer>>();
+        edgeKeys = new HashSet<Long>();
 
         try {
-            in = new BufferedReader(new FileReader(file));
+            in = new BufferedInputStream(new FileInputStream(file));
 
-            String line = in.readLine();
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            // IPE files refer to ipe.dtd, which is usually not next to the file
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            reader = factory.createXMLStreamReader(in);
 
-            while (line != null) {
-                // Skip the ipestyle
-                if (line.contains("<ipestyle")) {
-                    while (!line.contains("</ipestyle>")) {
-                        line = in.readLine();
-                    }
+            importElements(reader);
+            graph.addVertices(vertices);
+
+            return graph;
+        } catch (XMLStreamException ex) {
+            throw new IOException("Incorrect IPE file: " + ex.getMessage(), ex);
+        } finally {
+            graph = null;
+            vertices = null;
+            grid = null;
+            edgeKeys = null;
+
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException ex) {
+                    // The stream is closed below
                 }
+            }
 
-                if (line.contains("layer=")) {
-                    setLayer(line);
+            if (in != null) {
+                in.close();
+            }
+        }
+    }
+
+    private void importElements(XMLStreamReader reader) throws XMLStreamException {
+        // The transformation of every open element, combined with those of its ancestors
+        Deque<double[]> transforms = new ArrayDeque<double[]>();
+        transforms.push(IDENTITY);
+        StringBuilder pathData = null; // The text of the current path, if any
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String name = reader.getLocalName();
+
+                if (name.equals("ipestyle")) {
+                    // Skip the ipestyle, as its symbols contain paths
+                    skipElement(reader);
+                    continue;
                 }
 
-                if (line.contains("<path")) {
+                String layer = reader.getAttributeValue(null, "layer");
+
+                if (layer != null) {
+                    currentLayer = layer;
+                }
+
+                double[] transform = combine(transforms.peek(), getMatrix(reader.getAttributeValue(null, "matrix")));
+                transforms.push(transform);
+
+                if (name.equals("path")) {
                     // This is a path consisting of one or more edges
-                    importEdges(graph, in, getMatrix(line));
-                } else if (line.contains("<mark") || (line.contains("<use") && line.contains("name=\"mark"))) {
+                    pathData = new StringBuilder();
+                } else if (name.equals("mark") || (name.equals("use") && startsWith(reader.getAttributeValue(null, "name"), "mark"))) {
                     // This is a vertex
-                    if (line.contains("pos=")) {
-                        // Isolate the substring that contains the position
-                        int startIndex = line.indexOf("pos=") + "pos=\"".length();
-                        String pos = line.substring(startIndex, line.indexOf('"', startIndex));
+                    String pos = reader.getAttributeValue(null, "pos");
 
-                        importVertex(graph, pos, getMatrix(line));
-                    } else {
+                    if (pos == null) {
                         // No pos information - origin is default
-                        importVertex(graph, "0 0", getMatrix(line));
+                        importVertex(0, 0, transform);
+                    } else {
+                        double[] coords = parseNumbers(pos);
+                        importVertex(coords[0], coords[1], transform);
                     }
                 }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                if (pathData != null) {
+                    pathData.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                double[] transform = transforms.pop();
 
-                line = in.readLine();
-            }
-        } finally {
-            if (in != null) {
-                in.close();
+                if (pathData != null && reader.getLocalName().equals("path")) {
+                    importEdges(pathData, transform);
+                    pathData = null;
+                }
             }
         }
-
-        return graph;
     }
 
-    private void importEdges(Graph graph, BufferedReader in, double[] transform) throws IOException {
-        String line = in.readLine();
-        GraphVertex prev = null;
-        GraphVertex first = null;
+    private void importEdges(CharSequence data, double[] transform) throws XMLStreamException {
+        double[] operands = new double[8];
+        int nOperands = 0;
+        int prev = -1; // The index of the current vertex of the path
+        int first = -1;
+        int n = data.length();
+        int i = 0;
+
+        while (i < n) {
+            // Find the next token
+            while (i < n && Character.isWhitespace(data.charAt(i))) {
+                i++;
+            }
 
-        while (!line.contains("</path>")) {
-            GraphVertex v;
+            int start = i;
 
-            if (line.equals("h")) {
-                // Return to the start
-                v = first;
-            } else {
-                v = importVertex(graph, line, transform);
+            while (i < n && !Character.isWhitespace(data.charAt(i))) {
+                i++;
+            }
+
+            if (start == i) {
+                break;
             }
 
-            if (prev != null) {
-                if ("Constraints".equals(currentLayer)) {
-                    graph.addConstraint(prev, v);
-                } else {
-                    Edge e = new Edge(prev, v);
+            char c = data.charAt(start);
 
-                    if (prev != v && !graph.getEdges().contains(e)) {
-                        graph.addEdge(prev, v);
+            if (Character.isLetter(c) && i == start + 1) {
+                // An operator, which uses the preceding operands
+                if (c == 'm' || c == 'l' || c == 'c' || c == 'q' || c == 's' || c == 'a') {
+                    if (nOperands < 2) {
+                        throw new XMLStreamException("Path operator '" + c + "' without coordinates.");
                     }
+
+                    // Curves are replaced by a segment to their endpoint
+                    int v = importVertex(operands[nOperands - 2], operands[nOperands - 1], transform);
+
+                    if (c == 'm') {
+                        first = v;
+                    } else {
+                        addSegment(prev, v);
+                    }
+
+                    prev = v;
+                } else if (c == 'h') {
+                    // Return to the start
+                    addSegment(prev, first);
+                    prev = first;
                 }
-            } else {
-                first = v;
-            }
 
-            prev = v;
+                nOperands = 0;
+            } else {
+                if (nOperands == operands.length) {
+                    operands = Arrays.copyOf(operands, 2 * operands.length);
+                }
 
-            line = in.readLine();
+                try {
+                    operands[nOperands++] = Double.parseDouble(data.subSequence(start, i).toString());
+                } catch (NumberFormatException ex) {
+                    throw new XMLStreamException("Invalid number in path: " + data.subSequence(start, i));
+                }
+            }
         }
     }
 
-    private GraphVertex importVertex(Graph graph, String line, double[] transform) {
-        String[] coords = line.split(" ");
+    private void addSegment(int a, int b) {
+        if (a < 0 || b < 0) {
+            return;
+        }
+
+        GraphVertex vA = vertices.get(a);
+        GraphVertex vB = vertices.get(b);
 
-        assert coords.length == 2;
+        if ("Constraints".equals(currentLayer)) {
+            graph.addConstraint(vA, vB);
+        } else if (a != b && edgeKeys.add(getKey(Math.min(a, b), Math.max(a, b)))) {
+            // A new edge that is not a self-loop, so the adjacency check of Graph.addEdge is not needed
+            Edge e = new Edge(vA, vB);
 
-        double x = Double.parseDouble(coords[0]);
-        double y = Double.parseDouble(coords[1]);
+            vA.addEdge(e);
+            vB.addEdge(e);
+            graph.getEdges().add(e);
+        }
+    }
 
+    /**
+     * Returns the index of the vertex at the transformed position, adding one
+     * if there is no vertex near it yet.
+     */
+    private int importVertex(double x, double y, double[] transform) {
         // Apply the transformation
         double xt = transform[0] * x + transform[2] * y + transform[4];
         double yt = transform[1] * x + transform[3] * y + transform[5];
 
-        GraphVertex v = graph.getVertexAt(xt, yt, 0.01); // Low accuracy due to rounding errors in transformation =(
+        // Look for the first vertex within PRECISION in the surrounding cells
+        long cx = (long) Math.floor(xt / PRECISION);
+        long cy = (long) Math.floor(yt / PRECISION);
+        int found = -1;
+
+        for (long i = cx - 1; i <= cx + 1; i++) {
+            for (long j = cy - 1; j <= cy + 1; j++) {
+                List<Integer> cell = grid.get(getKey(i, j));
+
+                if (cell != null) {
+                    for (int index : cell) {
+                        if ((found < 0 || index < found) && vertices.get(index).isNear(xt, yt, PRECISION)) {
+                            found = index;
+                        }
+                    }
+                }
+            }
+        }
+
+        if (found >= 0) {
+            return found;
+        }
+
+        GraphVertex v = new GraphVertex(xt, yt);
+        Long key = getKey(cx, cy);
+        List<Integer> cell = grid.get(key);
+
+        if (cell == null) {
+            cell = new ArrayList<Integer>(2);
+            grid.put(key, cell);
+        }
+
+        cell.add(vertices.size());
+        vertices.add(v);
+
+        return vertices.size() - 1;
+    }
+
+    private static Long getKey(long cx, long cy) {
+        // Different cells may share a key; this only adds candidates. Pairs of vertex indices never do.
+        return (cx << 32) ^ (cy & 0xFFFFFFFFL);
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+
+        while (depth > 0) {
+            int event = reader.next();
 
-        if (v == null) {
-            v = new GraphVertex(xt, yt);
-            graph.addVertex(v);
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
         }
+    }
 
-        return v;
+    private static boolean startsWith(String value, String prefix) {
+        return value != null && value.startsWith(prefix);
     }
 
     /**
-     * Parses and returns the transformation matrix of this element.
+     * Parses and returns the transformation matrix of an element.
      *
      * The matrix consists of 6 double values: {a, b, c, d, e, f}
      *
      * It has to be read as
      *
-     * | a b e |
-     * | c d f |
+     * | a c e |
+     * | b d f |
      * | 0 0 1 |
      *
      * Every point (x, y) is treated as a column vector
@@ -160,39 +344,67 @@ public class IPEImporter {
      *
      * The resulting point is the matrix multiplication of the two:
      *
-     * | a b e | . | x | . | ax + by + e |
-     * | c d f | x | y | = | cx + dy + f |
+     * | a c e | . | x | . | ax + cy + e |
+     * | b d f | x | y | = | bx + dy + f |
      * | 0 0 1 | . | 1 | . |           1 |
      *
      * As per standard matrix-multiplication rules.
      *
-     * @param line
+     * @param matrix the value of the matrix attribute, or <code>null</code>
      * @return
      */
-    private double[] getMatrix(String line) {
-        double[] transform = new double[]{1, 0, 0, 1, 0, 0}; // Identity matrix
+    private static double[] getMatrix(String matrix) throws XMLStreamException {
+        if (matrix == null) {
+            return IDENTITY;
+        }
 
-        if (line.contains("matrix=")) {
-            // Get the substring that contains the matrix
-            int startIndex = line.indexOf("matrix") + "matrix=\"".length();
-            String matrix = line.substring(startIndex, line.indexOf('"', startIndex));
+        double[] transform = parseNumbers(matrix);
 
-            // Split to obtain the 6 double values
-            String[] parts = matrix.split(" ");
+        if (transform.length != 6) {
+            throw new XMLStreamException("A matrix needs 6 values: " + matrix);
+        }
 
-            assert parts.length == 6;
+        return transform;
+    }
 
-            for (int i = 0; i < parts.length; i++) {
-                transform[i] = Double.parseDouble(parts[i]);
-            }
+    /**
+     * Returns the transformation that applies <code>inner</code> first and
+     * then <code>outer</code>.
+     */
+    private static double[] combine(double[] outer, double[] inner) {
+        if (outer == IDENTITY) {
+            return inner;
+        } else if (inner == IDENTITY) {
+            return outer;
         }
 
-        return transform;
+        return new double[]{
+            outer[0] * inner[0] + outer[2] * inner[1],
+            outer[1] * inner[0] + outer[3] * inner[1],
+            outer[0] * inner[2] + outer[2] * inner[3],
+            outer[1] * inner[2] + outer[3] * inner[3],
+            outer[0] * inner[4] + outer[2] * inner[5] + outer[4],
+            outer[1] * inner[4] + outer[3] * inner[5] + outer[5]
+        };
     }
 
-    private void setLayer(String line) {
-        // Get the substring that contains the layer
-        int startIndex = line.indexOf("layer") + "layer=\"".length();
-        currentLayer = line.substring(startIndex, line.indexOf('"', startIndex));
+    private static double[] parseNumbers(String value) throws XMLStreamException {
+        String[] parts = value.trim().split("\\s+");
+
+        if (parts.length < 2) {
+            throw new XMLStreamException("Expected coordinates: " + value);
+        }
+
+        double[] numbers = new double[parts.length];
+
+        try {
+            for (int i = 0; i < parts.length; i++) {
+                numbers[i] = Double.parseDouble(parts[i]);
+            }
+        } catch (NumberFormatException ex) {
+            throw new XMLStreamException("Invalid number: " + value);
+        }
+
+        return numbers;
     }
 }
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2019 Sander Verdonschot.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package fulltheta.ipe;
+
+import fulltheta.io.AsciiNumberFormat;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes ASCII text and coordinates to a file through one large buffer,
+ * without creating a string for every number.
+ *
+ * Coordinates are written exactly, like <code>Double.toString</code>, or
+ * rounded to a fixed number of digits after the decimal point, with trailing
+ * zeros removed. AsciiNumberFormat does the formatting.
+ */
+class IPEOutput implements Closeable {
+
+    static final int EXACT = -1;
+    private static final int BUFFER_SIZE = 1 << 20;
+    private final FileOutputStream stream;
+    private final FileChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+    private int size = 0;
+    private final int precision;
+
+    /**
+     * Opens the given file for writing. The precision is the number of digits
+     * after the decimal point, or EXACT.
+     *
+     * @param file
+     * @param precision
+     * @throws IOException
+     */
+    IPEOutput(File file, int precision) throws IOException {
+        this.precision = precision;
+        stream = new FileOutputStream(file);
+        channel = stream.getChannel();
+    }
+
+    void writePoint(double x, double y) throws IOException {
+        writeDouble(x);
+        writeByte(' ');
+        writeDouble(y);
+    }
+
+    void writeDouble(double d) throws IOException {
+        if (size + AsciiNumberFormat.MAX_LENGTH > BUFFER_SIZE) {
+            drain();
+        }
+
+        if (precision == EXACT) {
+            size = AsciiNumberFormat.writeDouble(d, buffer, size);
+        } else {
+            size = AsciiNumberFormat.writeFixed(d, precision, buffer, size);
+        }
+    }
+
+    void writeLong(long value) throws IOException {
+        if (size + AsciiNumberFormat.MAX_LENGTH > BUFFER_SIZE) {
+            drain();
+        }
+
+        size = AsciiNumberFormat.writeLong(value, buffer, size);
+    }
+
+    void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            writeByte(s.charAt(i));
+        }
+    }
+
+    void writeByte(int b) throws IOException {
+        if (size == BUFFER_SIZE) {
+            drain();
+        }
+
+        buffer[size++] = (byte) b;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void drain() throws IOException {
+        wrapped.clear();
+        wrapped.limit(size);
+
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+
+        size = 0;
+    }
+}